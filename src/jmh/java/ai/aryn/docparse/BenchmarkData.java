@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Synthetic documents and partitioner responses shared by the benchmarks. Seeded, so every run measures the
+ * same bytes.
+ */
+final class BenchmarkData {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] TYPES = { "Title", "Section-header", "Text", "Text", "Text", "Table", "Picture", "Caption" };
+
+    private BenchmarkData() {}
+
+    /**
+     * A PDF header followed by random bytes, {@code size} bytes in total.
+     */
+    static byte[] document(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        byte[] header = "%PDF-1.7\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, bytes, 0, Math.min(header.length, size));
+        return bytes;
+    }
+
+    /**
+     * A partitioner response with {@code elements} elements of about 400 chars each, spread over pages of 20
+     * elements, and {@code properties} extracted properties, some of them nested.
+     */
+    static byte[] response(int elements, int properties) {
+        Random random = new Random(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(elements * 600 + 1024);
+        try (JsonGenerator json = MAPPER.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("status", "ok");
+            json.writeArrayFieldStart("elements");
+            for (int i = 0; i < elements; i++) {
+                json.writeStartObject();
+                json.writeStringField("type", TYPES[random.nextInt(TYPES.length)]);
+                json.writeArrayFieldStart("bbox");
+                for (int j = 0; j < 4; j++) {
+                    json.writeNumber(random.nextDouble());
+                }
+                json.writeEndArray();
+                json.writeObjectFieldStart("properties");
+                json.writeNumberField("score", random.nextDouble());
+                json.writeNumberField("page_number", i / 20 + 1);
+                json.writeEndObject();
+                json.writeStringField("text_representation", text(random, 400));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            if (properties > 0) {
+                json.writeObjectFieldStart("properties");
+                for (int i = 0; i < properties; i++) {
+                    if (i % 4 == 3) {
+                        json.writeObjectFieldStart("property_" + i);
+                        json.writeStringField("value", text(random, 20));
+                        json.writeNumberField("confidence", random.nextDouble());
+                        json.writeEndObject();
+                    } else {
+                        json.writeStringField("property_" + i, text(random, 30));
+                    }
+                }
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            int word = 2 + random.nextInt(9);
+            for (int i = 0; i < word; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the options json per document: serializing from scratch (what {@code buildOptionJson} does), the
+ * precompiled bytes, a per document override and a page range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PartitionOptionsBenchmark {
+
+    private static final String SCHEMA = "{\"properties\":[{\"name\":\"property_name\",\"type\":{\"type\":\"string\"}}]}";
+
+    private PartitionOptions options;
+    private Map<String, Object> overrides;
+
+    @Setup
+    public void setUp() {
+        options = new PartitionOptions("auto", "auto", "standard", false, false, SCHEMA);
+        overrides = Map.of("table_mode", "vision", "threshold", 0.35);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return new PartitionOptions("auto", "auto", "standard", false, false, SCHEMA).toJson();
+    }
+
+    @Benchmark
+    public byte[] precompiled() {
+        return options.toJson();
+    }
+
+    @Benchmark
+    public byte[] override() {
+        return options.resolve(overrides);
+    }
+
+    @Benchmark
+    public byte[] selectedPages() {
+        return PartitionOptions.withSelectedPages(options.toJson(), 101, 200);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.ingest.IngestDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The response side of the hot path: parsing, turning elements into the output field (the text join that used
+ * to be {@code joinAllTextRepresentations}, element lists and chunks), converting the extracted properties
+ * into document fields, and serializing a result for the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class PartitionResultBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int elementCount;
+
+    @Param({ "0", "50" })
+    public int propertyCount;
+
+    private byte[] response;
+    private PartitionResult result;
+    private ElementFormatter elements;
+    private ElementFormatter chunks;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = BenchmarkData.response(elementCount, propertyCount);
+        result = parse();
+        elements = new ElementFormatter(ElementFormatter.OutputMode.ELEMENTS, null, null, ElementFormatter.DEFAULT_CHUNK_SIZE);
+        chunks = new ElementFormatter(ElementFormatter.OutputMode.CHUNKS, null, null, ElementFormatter.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public PartitionResult parse() throws IOException {
+        return PartitionResult.parse(BenchmarkData.MAPPER, new ByteArrayInputStream(response), -1);
+    }
+
+    @Benchmark
+    public Object formatText() {
+        return ElementFormatter.TEXT.format(result.getElements());
+    }
+
+    @Benchmark
+    public Object formatElements() {
+        return elements.format(result.getElements());
+    }
+
+    @Benchmark
+    public Object formatChunks() {
+        return chunks.format(result.getElements());
+    }
+
+    @Benchmark
+    public IngestDocument convertProperties() {
+        IngestDocument document = new IngestDocument("benchmark", "1", null, null, null, new HashMap<>());
+        for (Map.Entry<String, Object> property : result.getProperties().entrySet()) {
+            document.appendFieldValue(property.getKey(), property.getValue());
+        }
+        return document;
+    }
+
+    @Benchmark
+    public byte[] toCacheJson() throws IOException {
+        return result.toJson(BenchmarkData.MAPPER);
+    }
+}
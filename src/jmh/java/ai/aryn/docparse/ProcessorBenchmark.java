@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.opensearch.ingest.IngestDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArynIngestProcessor#execute(IngestDocument)} end to end against a {@link StubPartitioner}: reading the
+ * base64 field, serializing options, uploading the multipart body, parsing the response and writing the output
+ * and properties into the document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+
+    @Param({ "10240", "1048576", "10485760", "104857600" })
+    public int documentBytes;
+
+    @Param({ "10", "1000" })
+    public int elementCount;
+
+    @Param({ "true", "false" })
+    public boolean streamInput;
+
+    private StubPartitioner partitioner;
+    private ArynIngestProcessor processor;
+    private String encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        partitioner = new StubPartitioner(BenchmarkData.response(elementCount, 10));
+        ApiClient apiClient = new ApiClient(HttpClients.createDefault());
+        apiClient.setBasePath(partitioner.url());
+        PartitionClient partitionClient = new PartitionClient(apiClient, "benchmark", ArynIngestProcessor.USER_AGENT);
+        processor = ArynIngestProcessor.builder("benchmark", null)
+                .inputField("data").outputField("text").apiKey("benchmark").threshold("auto")
+                .textMode("auto").tableMode("standard").arynUrl(partitioner.url())
+                .streamInput(streamInput).partitionClient(partitionClient).build();
+        encoded = Base64.getEncoder().encodeToString(BenchmarkData.document(documentBytes));
+    }
+
+    @TearDown
+    public void tearDown() {
+        partitioner.close();
+    }
+
+    @Benchmark
+    public IngestDocument execute() throws Exception {
+        Map<String, Object> source = new HashMap<>();
+        source.put("data", encoded);
+        return processor.execute(new IngestDocument("benchmark", "1", null, null, null, source));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.test.rest.OpenSearchRestTestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives {@code _bulk} through an aryn_ingest pipeline whose {@code aryn_url} points at a {@link MockArynServer},
+ * and reports throughput, bulk latency percentiles and node heap. Run with {@code ./gradlew loadTest}; the
+ * {@code loadtest.*} and {@code mock.aryn.*} system properties set the load and the mock's behavior.
+ */
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class BulkLoadIT extends OpenSearchRestTestCase {
+
+    private static final String INDEX = "aryn_loadtest";
+    private static final String PIPELINE = "aryn_loadtest";
+    private static final String TAG = "loadtest";
+
+    private final int documents = Integer.getInteger("loadtest.documents", 2000);
+    private final int bulkSize = Integer.getInteger("loadtest.bulk_size", 50);
+    private final int clients = Integer.getInteger("loadtest.clients", 4);
+    private final int documentBytes = Integer.getInteger("loadtest.document_bytes", 100 * 1024);
+    private final int maxRetries = Integer.getInteger("loadtest.max_retries", 3);
+    private final String report = System.getProperty("loadtest.report");
+
+    public void testBulkLoad() throws Exception {
+        MockArynServer.Config config = MockArynServer.Config.fromSystemProperties();
+        try (MockArynServer mock = new MockArynServer(config)) {
+            createPipeline(mock.url());
+            Request createIndex = new Request("PUT", "/" + INDEX);
+            createIndex.setJsonEntity("{\"settings\":{\"index.default_pipeline\":\"" + PIPELINE + "\"}}");
+            client().performRequest(createIndex);
+
+            String bulkBody = bulkBody();
+            int batches = (documents + bulkSize - 1) / bulkSize;
+            AtomicInteger nextBatch = new AtomicInteger();
+            AtomicLong failedDocuments = new AtomicLong();
+            LatencyHistogram bulkLatency = new LatencyHistogram();
+            HeapSampler heap = new HeapSampler();
+
+            long started = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            try {
+                List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < clients; i++) {
+                    workers.add(executor.submit(() -> {
+                        while (nextBatch.getAndIncrement() < batches) {
+                            long start = System.nanoTime();
+                            Request bulk = new Request("POST", "/" + INDEX + "/_bulk");
+                            bulk.setJsonEntity(bulkBody);
+                            failedDocuments.addAndGet(failedItems(client().performRequest(bulk)));
+                            bulkLatency.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } finally {
+                executor.shutdown();
+                heap.close();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            long sent = (long) batches * bulkSize;
+            LatencyHistogram.Snapshot latency = bulkLatency.snapshot();
+            Map<String, Object> processor = processorStats();
+            String result = String.format(Locale.ROOT,
+                    "Aryn bulk load test: %d documents of %d bytes, %d per bulk, %d clients%n"
+                            + "  mock: %s%n"
+                            + "  throughput: %.1f docs/sec over %.1fs, %d documents failed%n"
+                            + "  bulk latency: p50 %.0fms, p99 %.0fms, max %.0fms%n"
+                            + "  aryn calls: %d to the mock (%d throttled, %d failed), processor stats %s%n"
+                            + "  heap: peak %dmb of %dmb, last %dmb%n",
+                    sent, documentBytes, bulkSize, clients, config,
+                    (sent - failedDocuments.get()) / seconds, seconds, failedDocuments.get(),
+                    latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.getMax() / 1000.0,
+                    mock.getRequests(), mock.getThrottled(), mock.getFailed(), processor,
+                    heap.peak / (1024 * 1024), heap.max / (1024 * 1024), heap.last / (1024 * 1024));
+            logger.info(result);
+            if (report != null) {
+                Path path = Path.of(report);
+                Files.createDirectories(path.getParent());
+                Files.writeString(path, result, StandardCharsets.UTF_8);
+            }
+            assertTrue("no document was indexed", failedDocuments.get() < sent);
+        }
+    }
+
+    private void createPipeline(String arynUrl) throws IOException {
+        Request request = new Request("PUT", "/_ingest/pipeline/" + PIPELINE);
+        request.setJsonEntity("{\"processors\":[{\"aryn_ingest\":{"
+                + "\"tag\":\"" + TAG + "\","
+                + "\"input_field\":\"data\","
+                + "\"output_field\":\"extracted\","
+                + "\"aryn_api_key\":\"mock\","
+                + "\"aryn_url\":\"" + arynUrl + "\","
+                + "\"cache\":false,"
+                + "\"stream_input\":true,"
+                + "\"max_retries\":" + maxRetries
+                + "}}]}");
+        client().performRequest(request);
+    }
+
+    private String bulkBody() {
+        byte[] document = new byte[documentBytes];
+        new Random(42).nextBytes(document);
+        byte[] header = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, document, 0, Math.min(header.length, document.length));
+        String source = "{\"data\":\"" + Base64.getEncoder().encodeToString(document) + "\"}\n";
+        StringBuilder body = new StringBuilder(bulkSize * (source.length() + 16));
+        for (int i = 0; i < bulkSize; i++) {
+            body.append("{\"index\":{}}\n").append(source);
+        }
+        return body.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long failedItems(Response response) throws IOException {
+        Map<String, Object> body = entityAsMap(response);
+        if (!Boolean.TRUE.equals(body.get("errors"))) {
+            return 0;
+        }
+        long failed = 0;
+        for (Object item : (List<Object>) body.get("items")) {
+            Map<String, Object> index = (Map<String, Object>) ((Map<String, Object>) item).get("index");
+            if (index != null && index.containsKey("error")) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> processorStats() throws IOException {
+        Map<String, Object> stats = entityAsMap(client().performRequest(new Request("GET", "/_plugins/_aryn/stats")));
+        Map<String, Object> processors = (Map<String, Object>) stats.get("processors");
+        return processors == null ? Map.of() : (Map<String, Object>) processors.get(TAG);
+    }
+
+    /**
+     * Polls the heap of every node once a second while the load runs and keeps the highest sum seen.
+     */
+    private static final class HeapSampler implements AutoCloseable {
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        volatile long peak;
+        volatile long last;
+        volatile long max;
+
+        HeapSampler() {
+            scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void sample() {
+            try {
+                Map<String, Object> stats = entityAsMap(client().performRequest(new Request("GET", "/_nodes/stats/jvm")));
+                long used = 0;
+                long total = 0;
+                for (Object node : ((Map<String, Object>) stats.get("nodes")).values()) {
+                    Map<String, Object> mem = (Map<String, Object>) ((Map<String, Object>) ((Map<String, Object>) node).get("jvm")).get("mem");
+                    used += ((Number) mem.get("heap_used_in_bytes")).longValue();
+                    total += ((Number) mem.get("heap_max_in_bytes")).longValue();
+                }
+                last = used;
+                max = total;
+                peak = Math.max(peak, used);
+            } catch (IOException | RuntimeException e) {
+                // a missed sample only makes the peak less precise
+            }
+        }
+
+        @Override
+        public void close() {
+            sample();
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the DocParse partition endpoint, for load tests that should not spend Aryn quota. Each
+ * request waits for a log-normally distributed latency, then fails with a 429 or a 500 at the configured
+ * rates, or answers with a canned response of the configured size.
+ * <p>
+ * Runs inside a test, or standalone with {@code ./gradlew mockAryn -Dmock.aryn.port=8765}.
+ */
+public class MockArynServer implements Closeable {
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final byte[] response;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public MockArynServer(Config config) throws IOException {
+        this.config = config;
+        this.response = response(config.elements, config.elementChars);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.port), 0);
+        server.setExecutor(executor);
+        server.createContext(PartitionClient.PARTITION_PATH, this::handle);
+        server.start();
+    }
+
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        long received;
+        try (InputStream in = exchange.getRequestBody()) {
+            received = in.transferTo(OutputStream.nullOutputStream());
+        }
+        bytesReceived.addAndGet(received);
+        try {
+            Thread.sleep(latencyMillis(received));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return;
+        }
+        double outcome = ThreadLocalRandom.current().nextDouble();
+        if (outcome < config.throttleRate) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(config.retryAfterSeconds));
+            send(exchange, 429, "{\"detail\":\"mock rate limit\"}".getBytes(StandardCharsets.UTF_8));
+        } else if (outcome < config.throttleRate + config.errorRate) {
+            failed.incrementAndGet();
+            send(exchange, 500, "{\"detail\":\"mock failure\"}".getBytes(StandardCharsets.UTF_8));
+        } else {
+            exchange.getResponseHeaders().add(ArynIngestProcessor.ARYN_CALL_ID, UUID.randomUUID().toString());
+            exchange.getResponseHeaders().add(ArynIngestProcessor.ARYN_API_VERSION, "mock");
+            send(exchange, 200, response);
+        }
+    }
+
+    private long latencyMillis(long uploadedBytes) {
+        double latency = config.latencyMedianMillis;
+        if (config.latencySigma > 0) {
+            latency *= Math.exp(config.latencySigma * ThreadLocalRandom.current().nextGaussian());
+        }
+        latency += config.latencyPerMbMillis * uploadedBytes / (1024.0 * 1024.0);
+        return Math.max(0, Math.round(latency));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * A response of {@code elements} text elements of about {@code elementChars} chars, 20 per page.
+     */
+    static byte[] response(int elements, int elementChars) {
+        Random random = new Random(7);
+        StringBuilder json = new StringBuilder(elements * (elementChars + 120) + 64);
+        json.append("{\"status\":[\"mock\"],\"elements\":[");
+        for (int i = 0; i < elements; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Text\",\"bbox\":[0.1,0.1,0.9,0.2],\"properties\":{\"score\":0.9,\"page_number\":")
+                    .append(i / 20 + 1)
+                    .append("},\"text_representation\":\"");
+            int start = json.length();
+            while (json.length() - start < elementChars) {
+                json.append((char) ('a' + random.nextInt(26)));
+                if (random.nextInt(6) == 0) {
+                    json.append(' ');
+                }
+            }
+            json.append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Behavior of the mock. Read from {@code mock.aryn.*} system properties, so the Gradle tasks can pass them
+     * through from the command line.
+     */
+    public static class Config {
+        public int port = 0;
+        public double latencyMedianMillis = 2000;
+        public double latencySigma = 0.5;
+        public double latencyPerMbMillis = 200;
+        public double throttleRate = 0;
+        public double errorRate = 0;
+        public int retryAfterSeconds = 1;
+        public int elements = 200;
+        public int elementChars = 400;
+
+        public static Config fromSystemProperties() {
+            Config config = new Config();
+            config.port = Integer.getInteger("mock.aryn.port", config.port);
+            config.latencyMedianMillis = doubleProperty("mock.aryn.latency_median_ms", config.latencyMedianMillis);
+            config.latencySigma = doubleProperty("mock.aryn.latency_sigma", config.latencySigma);
+            config.latencyPerMbMillis = doubleProperty("mock.aryn.latency_per_mb_ms", config.latencyPerMbMillis);
+            config.throttleRate = doubleProperty("mock.aryn.throttle_rate", config.throttleRate);
+            config.errorRate = doubleProperty("mock.aryn.error_rate", config.errorRate);
+            config.retryAfterSeconds = Integer.getInteger("mock.aryn.retry_after_seconds", config.retryAfterSeconds);
+            config.elements = Integer.getInteger("mock.aryn.elements", config.elements);
+            config.elementChars = Integer.getInteger("mock.aryn.element_chars", config.elementChars);
+            if (config.throttleRate + config.errorRate > 1) {
+                throw new IllegalArgumentException("mock.aryn.throttle_rate + mock.aryn.error_rate must not exceed 1");
+            }
+            return config;
+        }
+
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "latency median %.0fms sigma %.2f +%.0fms/mb, 429 rate %.3f, 500 rate %.3f, "
+                    + "%d elements of %d chars", latencyMedianMillis, latencySigma, latencyPerMbMillis, throttleRate, errorRate,
+                    elements, elementChars);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.fromSystemProperties();
+        MockArynServer server = new MockArynServer(config);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        System.out.println("Mock Aryn partitioner listening on " + server.url() + " (" + config + ")");
+        stopped.await();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the partition calls in flight to one endpoint and API key, and adapts the limit to how the endpoint
+ * copes (AIMD). Every successful call at normal latency raises the limit by {@code 1/limit}, about one per round
+ * of calls. A 429 or 503, or a short-term latency above {@code latencyTolerance} times the long-term latency,
+ * halves it, at most once per round trip. A call over the limit waits up to {@code queueTimeout} for a slot
+ * and is then rejected, so bulk clients see back pressure instead of a flood of 429s from Aryn.
+ * <p>
+ * Uses a {@link ReentrantLock} rather than monitors so waiting virtual threads do not pin their carrier.
+ */
+@Log4j2
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Outcome {
+        /** The call succeeded, its latency counts. */
+        SUCCESS,
+        /** The endpoint pushed back with 429 or 503. */
+        OVERLOAD,
+        /** Any other failure, the limit is left alone. */
+        IGNORE
+    }
+
+    static final int MIN_LIMIT = 1;
+    private static final double SHORT_RTT_WEIGHT = 0.2;
+    private static final double LONG_RTT_WEIGHT = 0.02;
+
+    private final String name;
+    private final int maxLimit;
+    private final long queueTimeoutNanos;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private double shortRttNanos;
+    private double longRttNanos;
+    private long lastDecreaseNanos;
+    private long rejected;
+
+    AdaptiveConcurrencyLimiter(String name, int initialLimit, int maxLimit, TimeValue queueTimeout, double latencyTolerance) {
+        this.name = name;
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.queueTimeoutNanos = queueTimeout.nanos();
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Takes a slot, waiting up to the queue timeout for one. Returns the start time to pass to
+     * {@link #release(long, Outcome)}.
+     *
+     * @throws OpenSearchRejectedExecutionException if no slot freed up in time
+     */
+    public long acquire() {
+        lock.lock();
+        try {
+            long remaining = queueTimeoutNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    rejected++;
+                    throw new OpenSearchRejectedExecutionException("rejected execution of Aryn partition call to [" + name
+                            + "]: " + inFlight + " calls in flight at concurrency limit " + (int) limit);
+                }
+                try {
+                    remaining = released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new OpenSearchRejectedExecutionException("interrupted while waiting for an Aryn partition slot");
+                }
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(long startNanos, Outcome outcome) {
+        long now = System.nanoTime();
+        onSample(now - startNanos, outcome, now);
+    }
+
+    void onSample(long latencyNanos, Outcome outcome, long nowNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS:
+                    if (longRttNanos == 0) {
+                        shortRttNanos = latencyNanos;
+                        longRttNanos = latencyNanos;
+                    } else {
+                        shortRttNanos += SHORT_RTT_WEIGHT * (latencyNanos - shortRttNanos);
+                        longRttNanos += LONG_RTT_WEIGHT * (latencyNanos - longRttNanos);
+                    }
+                    if (shortRttNanos > latencyTolerance * longRttNanos) {
+                        decrease(nowNanos, "latency");
+                    } else if (limit < maxLimit) {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                    break;
+                case OVERLOAD:
+                    decrease(nowNanos, "overload");
+                    break;
+                default:
+                    break;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long nowNanos, String reason) {
+        // calls that were in flight together report the same congestion, count it once per round trip
+        if (lastDecreaseNanos != 0 && nowNanos - lastDecreaseNanos < (long) longRttNanos) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(MIN_LIMIT, limit / 2);
+        lastDecreaseNanos = nowNanos;
+        log.debug("Lowering Aryn concurrency limit of [{}] from {} to {} on {}", name, (int) previous, (int) limit, reason);
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    static Outcome outcomeOf(ApiException e) {
+        return e.getCode() == 429 || e.getCode() == 503 ? Outcome.OVERLOAD : Outcome.IGNORE;
+    }
+
+    /**
+     * Node level registry, one limiter per endpoint and API key shared by every processor using them.
+     */
+    public static class Registry {
+        private final Map<Key, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+        private final int initialLimit;
+        private final int maxLimit;
+        private final TimeValue queueTimeout;
+        private final double latencyTolerance;
+
+        public Registry(Settings settings) {
+            this(ArynSettings.LIMITER_INITIAL_LIMIT.get(settings), ArynSettings.LIMITER_MAX_LIMIT.get(settings),
+                    ArynSettings.LIMITER_QUEUE_TIMEOUT.get(settings), ArynSettings.LIMITER_LATENCY_TOLERANCE.get(settings));
+        }
+
+        Registry(int initialLimit, int maxLimit, TimeValue queueTimeout, double latencyTolerance) {
+            this.initialLimit = initialLimit;
+            this.maxLimit = maxLimit;
+            this.queueTimeout = queueTimeout;
+            this.latencyTolerance = latencyTolerance;
+        }
+
+        public AdaptiveConcurrencyLimiter get(String endpoint, String apiKey) {
+            return limiters.computeIfAbsent(new Key(String.valueOf(endpoint), apiKey),
+                    k -> new AdaptiveConcurrencyLimiter(k.endpoint, initialLimit, maxLimit, queueTimeout, latencyTolerance));
+        }
+
+        public Collection<AdaptiveConcurrencyLimiter> getLimiters() {
+            return Collections.unmodifiableCollection(limiters.values());
+        }
+    }
+
+    private static final class Key {
+        final String endpoint;
+        final String apiKey;
+
+        Key(String endpoint, String apiKey) {
+            this.endpoint = endpoint;
+            this.apiKey = apiKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return endpoint.equals(other.endpoint) && Objects.equals(apiKey, other.apiKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, apiKey);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node level registry of partition clients. Processors with the same endpoint, API key and timeouts share one
+ * client and its pool of keep-alive connections; processors with a different configuration get their own, so
+ * pipelines no longer overwrite each other's base path or key on a global {@link ApiClient}.
+ * <p>
+ * The registry only holds its clients weakly. Once no processor references a client any more, e.g. after its
+ * pipeline was replaced with a rotated key or deleted, the connection pool of the client is closed the next
+ * time the registry is used.
+ */
+@Log4j2
+public class ArynClientRegistry implements Closeable {
+
+    private final Map<Key, ClientRef> clients = new ConcurrentHashMap<>();
+    private final ReferenceQueue<PartitionClient> unreferenced = new ReferenceQueue<>();
+    private final int maxConnections;
+    private final TimeValue keepAlive;
+
+    public ArynClientRegistry(Settings settings) {
+        this(ArynSettings.CLIENT_MAX_CONNECTIONS.get(settings), ArynSettings.CLIENT_KEEP_ALIVE.get(settings));
+    }
+
+    ArynClientRegistry(int maxConnections, TimeValue keepAlive) {
+        this.maxConnections = maxConnections;
+        this.keepAlive = keepAlive;
+    }
+
+    public synchronized PartitionClient get(String arynUrl, String apiKey, TimeValue connectTimeout, TimeValue readTimeout) {
+        closeUnreferenced();
+        Key key = new Key(arynUrl, apiKey, connectTimeout, readTimeout);
+        ClientRef ref = clients.get(key);
+        PartitionClient client = ref == null ? null : ref.get();
+        if (client == null) {
+            client = create(key);
+        }
+        return client;
+    }
+
+    private PartitionClient create(Key key) {
+        log.info("Creating Aryn client for [{}], connect timeout [{}], read timeout [{}]",
+                key.arynUrl, key.connectTimeout, key.readTimeout);
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnections)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofMilliseconds(key.connectTimeout.millis()))
+                                .setSocketTimeout(Timeout.ofMilliseconds(key.readTimeout.millis()))
+                                .setTimeToLive(org.apache.hc.core5.util.TimeValue.ofMilliseconds(keepAlive.millis()))
+                                .build())
+                        .build())
+                .evictIdleConnections(org.apache.hc.core5.util.TimeValue.ofMilliseconds(keepAlive.millis()))
+                .build();
+        ApiClient apiClient = new ApiClient(httpClient);
+        apiClient.setBasePath(key.arynUrl);
+        PartitionClient client = new PartitionClient(apiClient, key.apiKey, ArynIngestProcessor.USER_AGENT);
+        clients.put(key, new ClientRef(key, client, httpClient, unreferenced));
+        return client;
+    }
+
+    /**
+     * Closes the connection pools of clients that no processor references any more.
+     */
+    private void closeUnreferenced() {
+        Reference<? extends PartitionClient> reference;
+        while ((reference = unreferenced.poll()) != null) {
+            ClientRef ref = (ClientRef) reference;
+            // a new client may already have taken the key
+            clients.remove(ref.key, ref);
+            log.info("Closing unused Aryn client for [{}]", ref.key.arynUrl);
+            ref.closeHttpClient();
+        }
+    }
+
+    public synchronized int size() {
+        closeUnreferenced();
+        return clients.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ClientRef ref : clients.values()) {
+            ref.closeHttpClient();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Weak reference to a client, holding on to the http client to close once the partition client is collected.
+     */
+    private static final class ClientRef extends WeakReference<PartitionClient> {
+        final Key key;
+        final CloseableHttpClient httpClient;
+
+        ClientRef(Key key, PartitionClient client, CloseableHttpClient httpClient, ReferenceQueue<PartitionClient> queue) {
+            super(client, queue);
+            this.key = key;
+            this.httpClient = httpClient;
+        }
+
+        void closeHttpClient() {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("Unable to close Aryn client for [{}]", key.arynUrl, e);
+            }
+        }
+    }
+
+    private static final class Key {
+        final String arynUrl;
+        final String apiKey;
+        final TimeValue connectTimeout;
+        final TimeValue readTimeout;
+
+        Key(String arynUrl, String apiKey, TimeValue connectTimeout, TimeValue readTimeout) {
+            this.arynUrl = arynUrl;
+            this.apiKey = apiKey;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(arynUrl, other.arynUrl) && Objects.equals(apiKey, other.apiKey)
+                    && connectTimeout.millis() == other.connectTimeout.millis()
+                    && readTimeout.millis() == other.readTimeout.millis();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(arynUrl, apiKey, connectTimeout.millis(), readTimeout.millis());
+        }
+    }
+}
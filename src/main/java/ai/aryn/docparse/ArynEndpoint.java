@@ -0,0 +1,270 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Node level state of one partitioner endpoint, shared by every processor calling it: the calls in flight,
+ * exponentially weighted averages of the call latency, overall and per upload size bucket, and whether the endpoint
+ * is ejected. An ejected endpoint
+ * gets no calls from an {@link EndpointPool} while other members are left. Endpoints are ejected for
+ * {@code ejection_duration} when they are much slower than the rest of their pool, and for as long as their
+ * active health check fails.
+ */
+@Log4j2
+public class ArynEndpoint {
+
+    // weight of the newest call in the latency average
+    static final double LATENCY_WEIGHT = 0.2;
+    // upper bounds of the upload size buckets, the last bucket takes everything larger
+    static final long[] SIZE_BUCKET_BOUNDS = { 256L << 10, 2L << 20, 16L << 20 };
+
+    private final String url;
+    private final LongSupplier clock;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong ejections = new AtomicLong();
+
+    private double latencyMicros;
+    private long latencySamples;
+    private final double[] bucketLatencyMicros = new double[SIZE_BUCKET_BOUNDS.length + 1];
+    private final long[] bucketSamples = new long[SIZE_BUCKET_BOUNDS.length + 1];
+    private volatile long ejectedUntil;
+    private volatile boolean unhealthy;
+    private volatile PartitionClient healthClient;
+    private volatile String healthPath;
+
+    ArynEndpoint(String url, LongSupplier clock) {
+        this.url = url;
+        this.clock = clock;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Records the start of a call routed to this endpoint and returns its start time for {@link #onCallDone}.
+     */
+    public long onCallStart() {
+        outstanding.incrementAndGet();
+        calls.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the end of a call that uploaded {@code uploadBytes}, -1 for calls without an upload such as polls.
+     * Only successful calls feed the latency averages, failures often return early.
+     */
+    public void onCallDone(long started, boolean failed, long uploadBytes) {
+        outstanding.decrementAndGet();
+        if (failed) {
+            failures.increment();
+            return;
+        }
+        recordLatency(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started), uploadBytes);
+    }
+
+    synchronized void recordLatency(long micros, long uploadBytes) {
+        latencyMicros = latencySamples == 0 ? micros : latencyMicros + LATENCY_WEIGHT * (micros - latencyMicros);
+        latencySamples++;
+        if (uploadBytes >= 0) {
+            int bucket = sizeBucket(uploadBytes);
+            bucketLatencyMicros[bucket] = bucketSamples[bucket] == 0 ? micros
+                    : bucketLatencyMicros[bucket] + LATENCY_WEIGHT * (micros - bucketLatencyMicros[bucket]);
+            bucketSamples[bucket]++;
+        }
+    }
+
+    static int sizeBucket(long uploadBytes) {
+        int bucket = 0;
+        while (bucket < SIZE_BUCKET_BOUNDS.length && uploadBytes >= SIZE_BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    /**
+     * Average latency of the recent successful calls in microseconds, -1 before {@code minSamples} calls were timed
+     * since the endpoint was added or last ejected.
+     */
+    public synchronized long getLatencyMicros(long minSamples) {
+        return latencySamples < Math.max(1, minSamples) ? -1 : (long) latencyMicros;
+    }
+
+    /**
+     * Average latency of the recent successful uploads in size bucket {@code bucket} (see {@link #sizeBucket}), -1
+     * before {@code minSamples} of them were timed since the endpoint was added or last ejected.
+     */
+    synchronized long getLatencyMicros(int bucket, long minSamples) {
+        return bucketSamples[bucket] < Math.max(1, minSamples) ? -1 : (long) bucketLatencyMicros[bucket];
+    }
+
+    public boolean isEjected() {
+        return unhealthy || clock.getAsLong() < ejectedUntil;
+    }
+
+    /**
+     * Ejects the endpoint for {@code durationMillis}. The latency average starts over, so the endpoint is judged
+     * on fresh calls once it is back. Returns false when it was already ejected.
+     */
+    synchronized boolean eject(long durationMillis, String reason) {
+        if (isEjected()) {
+            return false;
+        }
+        ejectedUntil = clock.getAsLong() + durationMillis;
+        resetLatency();
+        ejections.incrementAndGet();
+        log.warn("Ejecting Aryn endpoint [{}] for {}ms: {}", url, durationMillis, reason);
+        return true;
+    }
+
+    private void resetLatency() {
+        latencySamples = 0;
+        Arrays.fill(bucketSamples, 0);
+    }
+
+    /**
+     * Makes the endpoint checked by the node's health checks. Processors configuring different paths for the same
+     * endpoint share the last one.
+     */
+    void setHealthCheck(PartitionClient client, String path) {
+        this.healthClient = client;
+        this.healthPath = path;
+    }
+
+    boolean hasHealthCheck() {
+        return healthClient != null;
+    }
+
+    /**
+     * Runs the active health check: any 2xx status is healthy. An unhealthy endpoint stays ejected until a
+     * check succeeds again.
+     */
+    void checkHealth(TimeValue timeout) {
+        PartitionClient client = healthClient;
+        if (client == null) {
+            return;
+        }
+        String failure;
+        try {
+            int status = AccessController.doPrivileged(
+                    (PrivilegedExceptionAction<Integer>) () -> client.checkHealth(healthPath, timeout));
+            failure = status >= 200 && status < 300 ? null : "health check returned status " + status;
+        } catch (PrivilegedActionException e) {
+            failure = "health check failed: " + e.getException().getMessage();
+        }
+        onHealthCheck(failure);
+    }
+
+    synchronized void onHealthCheck(String failure) {
+        if (failure == null) {
+            if (unhealthy) {
+                log.info("Aryn endpoint [{}] passed its health check, taking calls again", url);
+                resetLatency();
+            }
+            unhealthy = false;
+        } else if (!unhealthy) {
+            log.warn("Ejecting Aryn endpoint [{}] until it passes its health check: {}", url, failure);
+            ejections.incrementAndGet();
+            unhealthy = true;
+        }
+    }
+
+    /**
+     * Node level registry, one endpoint per url shared by every processor calling it. Also runs the health checks
+     * of the endpoints that have one.
+     */
+    public static class Registry {
+        private final Map<String, ArynEndpoint> endpoints = new ConcurrentHashMap<>();
+        private final TimeValue ejectionDuration;
+        private final double slowFactor;
+        private final TimeValue healthCheckTimeout;
+        private final LongSupplier clock;
+
+        public Registry(Settings settings) {
+            this(ArynSettings.ENDPOINT_EJECTION_DURATION.get(settings), ArynSettings.ENDPOINT_SLOW_FACTOR.get(settings),
+                    ArynSettings.ENDPOINT_HEALTH_CHECK_TIMEOUT.get(settings), System::currentTimeMillis);
+        }
+
+        Registry(TimeValue ejectionDuration, double slowFactor, TimeValue healthCheckTimeout, LongSupplier clock) {
+            this.ejectionDuration = ejectionDuration;
+            this.slowFactor = slowFactor;
+            this.healthCheckTimeout = healthCheckTimeout;
+            this.clock = clock;
+        }
+
+        public ArynEndpoint get(String url) {
+            return endpoints.computeIfAbsent(String.valueOf(url), u -> new ArynEndpoint(u, clock));
+        }
+
+        public Collection<ArynEndpoint> getEndpoints() {
+            return endpoints.values();
+        }
+
+        public TimeValue getEjectionDuration() {
+            return ejectionDuration;
+        }
+
+        public double getSlowFactor() {
+            return slowFactor;
+        }
+
+        /**
+         * Checks every endpoint that has a health check, one after the other.
+         */
+        public void checkHealth() {
+            for (ArynEndpoint endpoint : endpoints.values()) {
+                endpoint.checkHealth(healthCheckTimeout);
+            }
+        }
+    }
+}
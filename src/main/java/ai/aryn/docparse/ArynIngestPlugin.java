@@ -17,15 +17,171 @@
  */
 package ai.aryn.docparse;
 
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.support.ActionFilter;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.node.DiscoveryNodes;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.IndexScopedSettings;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.io.stream.NamedWriteableRegistry;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.env.Environment;
+import org.opensearch.env.NodeEnvironment;
+import org.opensearch.indices.SystemIndexDescriptor;
+import org.opensearch.indices.breaker.BreakerSettings;
 import org.opensearch.ingest.Processor;
+import org.opensearch.plugins.ActionPlugin;
+import org.opensearch.plugins.CircuitBreakerPlugin;
 import org.opensearch.plugins.IngestPlugin;
 import org.opensearch.plugins.Plugin;
+import org.opensearch.plugins.SystemIndexPlugin;
+import org.opensearch.repositories.RepositoriesService;
+import org.opensearch.rest.RestController;
+import org.opensearch.rest.RestHandler;
+import org.opensearch.script.ScriptService;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.client.Client;
+import org.opensearch.watcher.ResourceWatcherService;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+
+public class ArynIngestPlugin extends Plugin implements IngestPlugin, ActionPlugin, SystemIndexPlugin, CircuitBreakerPlugin {
+
+    // created up front: processors are built before components, and both need the same instance
+    private final ArynStats stats = new ArynStats();
+    private final PartitionMemoryBreaker memoryBreaker = new PartitionMemoryBreaker();
+    private PartitionExecutor partitionExecutor;
+    private ArynClientRegistry clientRegistry;
+    private PartitionResultStore resultStore;
+    private ArynEndpoint.Registry endpoints;
+    private Scheduler.Cancellable healthChecks;
+    private ArynSlowLog slowLog;
+    private DeferredJobQueue deferredQueue;
+    private SimulateActionFilter simulateFilter;
 
-public class ArynIngestPlugin extends Plugin implements IngestPlugin {
     @Override
     public Map<String, Processor.Factory> getProcessors(Processor.Parameters parameters) {
-        return Map.of(ArynIngestProcessor.TYPE, new ArynIngestProcessorFactory());
+        Settings settings = parameters.env.settings();
+        partitionExecutor = new PartitionExecutor(settings, parameters.threadContext);
+        PartitionCache partitionCache = null;
+        if (ArynSettings.CACHE_ENABLED.get(settings)) {
+            Path[] dataFiles = parameters.env.dataFiles();
+            partitionCache = new PartitionCache(settings, dataFiles.length > 0 ? dataFiles[0] : null);
+        }
+        EndpointCircuitBreaker.Registry circuitBreakers = new EndpointCircuitBreaker.Registry(settings);
+        clientRegistry = new ArynClientRegistry(settings);
+        AsyncPartitionPoller asyncPoller = new AsyncPartitionPoller(parameters.scheduler, partitionExecutor);
+        AdaptiveConcurrencyLimiter.Registry limiters = null;
+        if (ArynSettings.LIMITER_ENABLED.get(settings)) {
+            limiters = new AdaptiveConcurrencyLimiter.Registry(settings);
+        }
+        if (ArynSettings.RESULT_STORE_ENABLED.get(settings)) {
+            resultStore = new PartitionResultStore(settings, parameters.client, parameters.threadContext);
+        }
+        endpoints = new ArynEndpoint.Registry(settings);
+        slowLog = new ArynSlowLog(settings);
+        deferredQueue = new DeferredJobQueue(settings, parameters.client, parameters.threadContext);
+        simulateFilter = new SimulateActionFilter(parameters.threadContext);
+        stats.register(partitionExecutor, partitionCache, limiters, endpoints, deferredQueue);
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(partitionExecutor, partitionCache,
+                circuitBreakers, clientRegistry, asyncPoller, limiters, stats, resultStore, memoryBreaker, parameters.env, parameters.client,
+                endpoints, slowLog, deferredQueue);
+        deferredQueue.setProcessorFactory(factory);
+        return Map.of(ArynIngestProcessor.TYPE, factory);
+    }
+
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry, Environment environment,
+                                               NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry,
+                                               IndexNameExpressionResolver indexNameExpressionResolver,
+                                               Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        if (resultStore != null) {
+            resultStore.setThreadPool(threadPool);
+            clusterService.addLocalNodeClusterManagerListener(resultStore);
+        }
+        if (slowLog != null) {
+            slowLog.watch(clusterService.getClusterSettings());
+        }
+        if (deferredQueue != null) {
+            deferredQueue.start(threadPool);
+        }
+        if (endpoints != null) {
+            healthChecks = threadPool.scheduleWithFixedDelay(endpoints::checkHealth,
+                    ArynSettings.ENDPOINT_HEALTH_CHECK_INTERVAL.get(environment.settings()), ThreadPool.Names.GENERIC);
+        }
+        return List.of(stats);
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return List.of(new ActionHandler<>(ArynStatsAction.INSTANCE, TransportArynStatsAction.class));
+    }
+
+    @Override
+    public List<ActionFilter> getActionFilters() {
+        // processors, and with them the filter, exist before the action filters are asked for
+        return simulateFilter == null ? List.of() : List.of(simulateFilter);
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings,
+                                             IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+                                             IndexNameExpressionResolver indexNameExpressionResolver,
+                                             Supplier<DiscoveryNodes> nodesInCluster) {
+        return List.of(new RestArynStatsAction());
+    }
+
+    @Override
+    public Collection<SystemIndexDescriptor> getSystemIndexDescriptors(Settings settings) {
+        return List.of(new SystemIndexDescriptor(PartitionResultStore.INDEX, "Aryn partition results shared by all nodes"),
+                new SystemIndexDescriptor(DeferredJobQueue.INDEX, "Aryn deferred partition jobs"));
+    }
+
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        return new BreakerSettings(PartitionMemoryBreaker.NAME,
+                ArynSettings.BREAKER_LIMIT.get(settings).getBytes(),
+                ArynSettings.BREAKER_OVERHEAD.get(settings),
+                CircuitBreaker.Type.MEMORY, CircuitBreaker.Durability.TRANSIENT);
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        memoryBreaker.setBreaker(circuitBreaker);
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return ArynSettings.getAllSettings();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (healthChecks != null) {
+            healthChecks.cancel();
+        }
+        if (deferredQueue != null) {
+            deferredQueue.close();
+        }
+        if (partitionExecutor != null) {
+            partitionExecutor.close();
+        }
+        if (clientRegistry != null) {
+            clientRegistry.close();
+        }
     }
 }
@@ -17,28 +17,35 @@
  */
 package ai.aryn.docparse;
 
-import ai.aryn.docparse.api.PartitionApi;
-import ai.aryn.docparse.auth.HttpBearerAuth;
-import ai.aryn.docparse.model.Element;
-import ai.aryn.docparse.model.PartitionerResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import lombok.extern.log4j.Log4j2;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.common.UUIDs;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.AtomicArray;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.core.rest.RestStatus;
 import org.opensearch.ingest.AbstractProcessor;
 import org.opensearch.ingest.IngestDocument;
 import org.opensearch.ingest.IngestDocumentWrapper;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.security.AccessController;
+import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -46,11 +53,13 @@ import java.util.function.Consumer;
 public class ArynIngestProcessor extends AbstractProcessor {
 
     public static final String TYPE = "aryn_ingest";
-    private static final Gson gson = new GsonBuilder().create();
 
     public static final String USER_AGENT = "ArynOpenSearchPlugin_v0.1.0";
     public static final String ARYN_CALL_ID = "x-aryn-call-id";
     public static final String ARYN_API_VERSION = "x-aryn-api-version";
+    public static final int DEFAULT_MAX_CONCURRENCY = 10;
+    // below this many timed calls the latency percentiles are too noisy to hedge on
+    static final long HEDGE_MIN_CALLS = 20;
     private final String inputField;
     private final String outputField;
     private final boolean ignoreMissing;
@@ -62,109 +71,1386 @@ public class ArynIngestProcessor extends AbstractProcessor {
     private final String schema;
     //private final String schemaPath;
     private final String arynUrl;
+    private final int maxConcurrency;
+    private final PartitionExecutor partitionExecutor;
+    private final PartitionCache partitionCache;
+    private final TimeValue cacheTtl;
+    private final boolean streamInput;
+    private final long maxInputBytes;
+    private final long maxResponseBytes;
+    private final RetryPolicy retryPolicy;
+    private final boolean asyncMode;
+    private final TimeValue asyncPollInterval;
+    private final TimeValue asyncTimeout;
+    private final AsyncPartitionPoller asyncPoller;
+    private final String optionsField;
+    private final PartitionOptions partitionOptions;
+    private final ElementFormatter elementFormatter;
+    private final int splitPages;
+    private final int splitMaxParallelism;
+    private final ProcessorStats stats;
+    private final ImageStore imageStore;
+    private final String imagesField;
+    private final PartitionResultStore resultStore;
+    private final PartitionMemoryBreaker memoryBreaker;
+    private final TimeValue timeout;
+    private final double hedgePercentile;
+    private final PartitionClient hedgeClient;
+    private final EndpointPool endpoints;
+    private final ArynSlowLog slowLog;
+    private final String timingsField;
+    private final ContentSniffer contentSniffer;
+    private final DeferredJobQueue deferredQueue;
+    private final Map<String, Object> deferredConfig;
+    private final String statusField;
 
-    final HttpBearerAuth HTTPBearer;
-    final PartitionApi api;
-
-    final ApiClient defaultClient = Configuration.getDefaultApiClient();
+    final PartitionClient partitionClient;
 
     protected ArynIngestProcessor(String tag, String description,
                                   String inputField, String outputField,
                                   String apiKey, boolean ignoreMissing, String threshold,
                                   boolean extractImages, boolean summarizeImages, String textMode, String tableMode,
                                   String schema, String arynUrl) {
-        super(tag, description);
-        this.inputField = inputField;
-        this.outputField = outputField;
-        this.ignoreMissing = ignoreMissing;
-        this.threshold = threshold;
-        this.extractImages = extractImages;
-        this.summarizeImages = summarizeImages;
-        this.textMode = textMode;
-        this.tableMode = tableMode;
-        this.schema = schema;
+        this(builder(tag, description).inputField(inputField).outputField(outputField).apiKey(apiKey)
+                .ignoreMissing(ignoreMissing).threshold(threshold).extractImages(extractImages)
+                .summarizeImages(summarizeImages).textMode(textMode).tableMode(tableMode).schema(schema).arynUrl(arynUrl));
+    }
+
+    protected ArynIngestProcessor(Builder builder) {
+        super(builder.tag, builder.description);
+        this.inputField = builder.inputField;
+        this.outputField = builder.outputField;
+        this.ignoreMissing = builder.ignoreMissing;
+        this.threshold = builder.threshold;
+        this.extractImages = builder.extractImages;
+        this.summarizeImages = builder.summarizeImages;
+        this.textMode = builder.textMode;
+        this.tableMode = builder.tableMode;
+        this.schema = builder.schema;
         //this.schemaPath = schemaPath;
-        this.arynUrl = arynUrl;
+        this.arynUrl = builder.arynUrl;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.partitionExecutor = builder.partitionExecutor;
+        this.partitionCache = builder.partitionCache;
+        this.cacheTtl = builder.cacheTtl;
+        this.streamInput = builder.streamInput;
+        this.maxInputBytes = builder.maxInputBytes;
+        this.maxResponseBytes = builder.maxResponseBytes;
+        this.elementFormatter = builder.elementFormatter == null ? ElementFormatter.TEXT : builder.elementFormatter;
+        this.splitPages = builder.splitPages;
+        this.splitMaxParallelism = builder.splitMaxParallelism;
+        // processors built outside the plugin still record, into stats nobody reads
+        this.stats = builder.stats == null ? new ProcessorStats() : builder.stats;
+        this.imageStore = builder.imageStore;
+        this.imagesField = builder.imagesField;
+        this.resultStore = builder.resultStore;
+        this.memoryBreaker = builder.memoryBreaker;
+        this.timeout = builder.timeout;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.slowLog = builder.slowLog;
+        this.timingsField = builder.timingsField;
+        this.contentSniffer = builder.contentSniffer;
+        this.deferredQueue = builder.deferredQueue;
+        this.deferredConfig = builder.deferredConfig;
+        this.statusField = builder.statusField;
+        this.retryPolicy = builder.retryPolicy;
+        this.asyncMode = builder.asyncMode;
+        this.asyncPollInterval = builder.asyncPollInterval;
+        this.asyncTimeout = builder.asyncTimeout;
+        this.asyncPoller = builder.asyncPoller;
+        this.optionsField = builder.optionsField;
+        // the configured options never change, serialize them once
+        this.partitionOptions = new PartitionOptions(threshold, textMode, tableMode, extractImages, summarizeImages, schema);
+
+        PartitionClient partitionClient = builder.partitionClient;
+        if (builder.endpoints != null) {
+            partitionClient = builder.endpoints.getMembers().get(0).client;
+        } else if (partitionClient == null) {
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath(arynUrl);
+            partitionClient = new PartitionClient(apiClient, builder.apiKey, USER_AGENT);
+        }
+        this.partitionClient = partitionClient;
+        this.endpoints = builder.endpoints != null ? builder.endpoints
+                : EndpointPool.single(arynUrl, partitionClient, builder.circuitBreaker, builder.limiter);
+        // hedges go to another member of the pool unless a secondary endpoint is configured
+        this.hedgeClient = builder.hedgeClient;
+    }
+
+    static Builder builder(String tag, String description) {
+        return new Builder(tag, description);
+    }
+
+    /**
+     * Options and node collaborators of a processor. Anything left unset keeps the behavior of a processor without
+     * that option: no executor, cache, limits, retries, splitting or hedging.
+     */
+    static class Builder {
+        private final String tag;
+        private final String description;
+        private String inputField;
+        private String outputField;
+        private String apiKey;
+        private boolean ignoreMissing;
+        private String threshold;
+        private boolean extractImages;
+        private boolean summarizeImages;
+        private String textMode;
+        private String tableMode;
+        private String schema;
+        private String arynUrl;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private PartitionExecutor partitionExecutor;
+        private PartitionCache partitionCache;
+        private TimeValue cacheTtl;
+        private boolean streamInput;
+        private long maxInputBytes = -1;
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+        private EndpointCircuitBreaker circuitBreaker;
+        private PartitionClient partitionClient;
+        private boolean asyncMode;
+        private TimeValue asyncPollInterval;
+        private TimeValue asyncTimeout;
+        private AsyncPartitionPoller asyncPoller;
+        private String optionsField;
+        private long maxResponseBytes = -1;
+        private ElementFormatter elementFormatter;
+        private int splitPages;
+        private int splitMaxParallelism = 1;
+        private AdaptiveConcurrencyLimiter limiter;
+        private ProcessorStats stats;
+        private ImageStore imageStore;
+        private String imagesField;
+        private PartitionResultStore resultStore;
+        private PartitionMemoryBreaker memoryBreaker;
+        private TimeValue timeout;
+        private double hedgePercentile;
+        private PartitionClient hedgeClient;
+        private EndpointPool endpoints;
+        private ArynSlowLog slowLog;
+        private String timingsField;
+        private ContentSniffer contentSniffer;
+        private DeferredJobQueue deferredQueue;
+        private Map<String, Object> deferredConfig;
+        private String statusField;
+
+        private Builder(String tag, String description) {
+            this.tag = tag;
+            this.description = description;
+        }
+
+        Builder inputField(String inputField) {
+            this.inputField = inputField;
+            return this;
+        }
+
+        Builder outputField(String outputField) {
+            this.outputField = outputField;
+            return this;
+        }
+
+        Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        Builder ignoreMissing(boolean ignoreMissing) {
+            this.ignoreMissing = ignoreMissing;
+            return this;
+        }
+
+        Builder threshold(String threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        Builder extractImages(boolean extractImages) {
+            this.extractImages = extractImages;
+            return this;
+        }
+
+        Builder summarizeImages(boolean summarizeImages) {
+            this.summarizeImages = summarizeImages;
+            return this;
+        }
+
+        Builder textMode(String textMode) {
+            this.textMode = textMode;
+            return this;
+        }
+
+        Builder tableMode(String tableMode) {
+            this.tableMode = tableMode;
+            return this;
+        }
+
+        Builder schema(String schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        Builder arynUrl(String arynUrl) {
+            this.arynUrl = arynUrl;
+            return this;
+        }
+
+        Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        Builder partitionExecutor(PartitionExecutor partitionExecutor) {
+            this.partitionExecutor = partitionExecutor;
+            return this;
+        }
+
+        Builder partitionCache(PartitionCache partitionCache) {
+            this.partitionCache = partitionCache;
+            return this;
+        }
+
+        Builder cacheTtl(TimeValue cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        Builder streamInput(boolean streamInput) {
+            this.streamInput = streamInput;
+            return this;
+        }
+
+        Builder maxInputBytes(long maxInputBytes) {
+            this.maxInputBytes = maxInputBytes;
+            return this;
+        }
+
+        Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        Builder circuitBreaker(EndpointCircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        Builder partitionClient(PartitionClient partitionClient) {
+            this.partitionClient = partitionClient;
+            return this;
+        }
+
+        Builder asyncMode(boolean asyncMode) {
+            this.asyncMode = asyncMode;
+            return this;
+        }
+
+        Builder asyncPollInterval(TimeValue asyncPollInterval) {
+            this.asyncPollInterval = asyncPollInterval;
+            return this;
+        }
+
+        Builder asyncTimeout(TimeValue asyncTimeout) {
+            this.asyncTimeout = asyncTimeout;
+            return this;
+        }
+
+        Builder asyncPoller(AsyncPartitionPoller asyncPoller) {
+            this.asyncPoller = asyncPoller;
+            return this;
+        }
+
+        Builder optionsField(String optionsField) {
+            this.optionsField = optionsField;
+            return this;
+        }
+
+        Builder maxResponseBytes(long maxResponseBytes) {
+            this.maxResponseBytes = maxResponseBytes;
+            return this;
+        }
+
+        Builder elementFormatter(ElementFormatter elementFormatter) {
+            this.elementFormatter = elementFormatter;
+            return this;
+        }
+
+        Builder splitPages(int splitPages) {
+            this.splitPages = splitPages;
+            return this;
+        }
+
+        Builder splitMaxParallelism(int splitMaxParallelism) {
+            this.splitMaxParallelism = splitMaxParallelism;
+            return this;
+        }
+
+        Builder limiter(AdaptiveConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+            return this;
+        }
+
+        Builder stats(ProcessorStats stats) {
+            this.stats = stats;
+            return this;
+        }
+
+        Builder imageStore(ImageStore imageStore) {
+            this.imageStore = imageStore;
+            return this;
+        }
+
+        Builder imagesField(String imagesField) {
+            this.imagesField = imagesField;
+            return this;
+        }
+
+        Builder resultStore(PartitionResultStore resultStore) {
+            this.resultStore = resultStore;
+            return this;
+        }
+
+        Builder memoryBreaker(PartitionMemoryBreaker memoryBreaker) {
+            this.memoryBreaker = memoryBreaker;
+            return this;
+        }
+
+        Builder timeout(TimeValue timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        Builder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        Builder hedgeClient(PartitionClient hedgeClient) {
+            this.hedgeClient = hedgeClient;
+            return this;
+        }
+
+        Builder endpoints(EndpointPool endpoints) {
+            this.endpoints = endpoints;
+            return this;
+        }
+
+        Builder slowLog(ArynSlowLog slowLog) {
+            this.slowLog = slowLog;
+            return this;
+        }
+
+        Builder timingsField(String timingsField) {
+            this.timingsField = timingsField;
+            return this;
+        }
+
+        Builder contentSniffer(ContentSniffer contentSniffer) {
+            this.contentSniffer = contentSniffer;
+            return this;
+        }
+
+        Builder deferredQueue(DeferredJobQueue deferredQueue) {
+            this.deferredQueue = deferredQueue;
+            return this;
+        }
 
-        defaultClient.setBasePath(arynUrl);
-        // Configure HTTP bearer authorization: HTTPBearer
-        HTTPBearer = (HttpBearerAuth) defaultClient.getAuthentication("HTTPBearer");
-        HTTPBearer.setBearerToken(apiKey);
-        api = new PartitionApi(defaultClient);
+        /**
+         * The processor's configuration as given to the factory, stored with every job so any node can rebuild it.
+         */
+        Builder deferredConfig(Map<String, Object> deferredConfig) {
+            this.deferredConfig = deferredConfig;
+            return this;
+        }
+
+        Builder statusField(String statusField) {
+            this.statusField = statusField;
+            return this;
+        }
+
+        ArynIngestProcessor build() {
+            return new ArynIngestProcessor(this);
+        }
     }
 
     @Override
     public void execute(IngestDocument ingestDocument, BiConsumer<IngestDocument, Exception> handler) {
-        super.execute(ingestDocument, handler);
+        if (deferredQueue != null) {
+            enqueueDeferred(ingestDocument, handler);
+            return;
+        }
+        if (partitionExecutor == null) {
+            super.execute(ingestDocument, handler);
+            return;
+        }
+        if (asyncMode && asyncPoller != null) {
+            executeAsync(ingestDocument, handler);
+            return;
+        }
+        // The partition call takes seconds, keep it off the ingest/write thread.
+        StageTimings timings = new StageTimings();
+        long queued = System.nanoTime();
+        try {
+            partitionExecutor.execute(() -> {
+                timings.record(StageTimings.Stage.QUEUE, queued);
+                ImageStore.Batch images = imageBatch();
+                IngestDocument result;
+                try {
+                    result = execute(ingestDocument, timings, images);
+                } catch (Exception e) {
+                    handler.accept(null, e);
+                    return;
+                }
+                flushImages(images, ActionListener.wrap(r -> handler.accept(result, null), e -> handler.accept(null, e)));
+            }, inputBytes(ingestDocument));
+        } catch (OpenSearchRejectedExecutionException e) {
+            stats.onRejected();
+            handler.accept(null, e);
+        }
     }
 
     @Override
     public IngestDocument execute(IngestDocument ingestDocument) throws Exception {
-        byte[] input = ingestDocument.getFieldValueAsBytes(inputField, ignoreMissing);
-
-        if (input == null && ignoreMissing) {
+        if (deferredQueue != null) {
+            DeferredJob job = deferredJob(ingestDocument);
+            if (job != null && !deferredQueue.inSimulation()) {
+                deferredQueue.enqueue(getTag(), deferredConfig, job.index, job.docId, job.routing, job.size);
+            }
             return ingestDocument;
-        } else if (input == null) {
+        }
+        ImageStore.Batch images = imageBatch();
+        IngestDocument result = execute(ingestDocument, new StageTimings(), images);
+        // the blocking variant of the processor, waiting here is what its caller asked for
+        PlainActionFuture<Void> stored = PlainActionFuture.newFuture();
+        flushImages(images, stored);
+        stored.actionGet();
+        return result;
+    }
+
+    /**
+     * Deferred mode: the document is indexed right away with a pending status once its job is stored, and
+     * partitioned later by the {@link DeferredJobQueue}. Documents of {@code _simulate} are never indexed, so they
+     * show the pending status but get no job, see {@link SimulateActionFilter}.
+     */
+    private void enqueueDeferred(IngestDocument ingestDocument, BiConsumer<IngestDocument, Exception> handler) {
+        DeferredJob job;
+        try {
+            job = deferredJob(ingestDocument);
+        } catch (Exception e) {
+            handler.accept(null, e);
+            return;
+        }
+        if (job == null || deferredQueue.inSimulation()) {
+            handler.accept(ingestDocument, null);
+            return;
+        }
+        deferredQueue.enqueue(getTag(), deferredConfig, job.index, job.docId, job.routing, job.size, ActionListener.wrap(r -> handler.accept(ingestDocument, null), e -> handler.accept(null, e)));
+    }
+
+    /**
+     * Reads what the job of a document needs and marks the document as pending. Documents without an id get one,
+     * since the job must find them again. The input is only checked here, not decoded: the job reads it from the
+     * indexed document. Returns null for a missing input with {@code ignore_missing}.
+     */
+    private DeferredJob deferredJob(IngestDocument ingestDocument) {
+        Object value = ingestDocument.getFieldValue(inputField, Object.class, ignoreMissing);
+        if (value == null && ignoreMissing) {
+            return null;
+        } else if (value == null) {
             throw new IllegalArgumentException("field [" + inputField + "] is null, cannot parse.");
         }
+        long size = inputSize(value);
+        String idField = IngestDocument.Metadata.ID.getFieldName();
+        String docId = ingestDocument.getFieldValue(idField, String.class, true);
+        if (docId == null) {
+            docId = UUIDs.base64UUID();
+            ingestDocument.setFieldValue(idField, docId);
+        }
+        Map<String, Object> options = optionsField == null ? null : ingestDocument.getFieldValue(optionsField, Map.class, true);
+        // fail on bad overrides now rather than in every attempt of the job
+        partitionOptions.resolve(options);
+        DeferredJob job = new DeferredJob(ingestDocument.getFieldValue(IngestDocument.Metadata.INDEX.getFieldName(), String.class),
+                docId, ingestDocument.getFieldValue(IngestDocument.Metadata.ROUTING.getFieldName(), String.class, true),
+                size);
+        ingestDocument.setFieldValue(statusField, DeferredJobQueue.STATUS_PENDING);
+        return job;
+    }
+
+    /**
+     * Partitions a deferred job on the partition executor, through the same stages as an ingested document, and
+     * returns the fields its document is updated with. {@code source} holds the {@link #getDeferredFields()} of the
+     * indexed document.
+     */
+    void partitionDeferred(DeferredJobQueue.Job job, Map<String, Object> source, ActionListener<Map<String, Object>> listener) {
+        IngestDocument scratch = new IngestDocument(job.index, job.docId, job.routing, null, null,
+                source == null ? new HashMap<>() : new HashMap<>(source));
+        Runnable task = () -> {
+            ImageStore.Batch images = imageBatch();
+            Map<String, Object> fields;
+            try {
+                execute(scratch, new StageTimings(), images);
+                if (!inputField.equals(outputField)) {
+                    scratch.removeField(inputField);
+                }
+                if (optionsField != null && scratch.hasField(optionsField)) {
+                    scratch.removeField(optionsField);
+                }
+                fields = new HashMap<>(scratch.getSourceAndMetadata());
+                for (IngestDocument.Metadata metadata : IngestDocument.Metadata.values()) {
+                    fields.remove(metadata.getFieldName());
+                }
+                fields.put(statusField, DeferredJobQueue.STATUS_DONE);
+            } catch (Exception e) {
+                listener.onFailure(e);
+                return;
+            }
+            flushImages(images, ActionListener.map(listener, r -> fields));
+        };
+        if (partitionExecutor == null) {
+            task.run();
+        } else {
+            partitionExecutor.execute(task, job.size);
+        }
+    }
+
+    /**
+     * The fields of an indexed document a deferred job reads: the input and the option overrides.
+     */
+    String[] getDeferredFields() {
+        return optionsField == null ? new String[] {inputField} : new String[] {inputField, optionsField};
+    }
+
+    String getStatusField() {
+        return statusField;
+    }
+
+    private IngestDocument execute(IngestDocument ingestDocument, StageTimings timings, ImageStore.Batch images)
+            throws Exception {
+        long started = stats.onDocumentStart();
+        boolean failed = true;
+        try {
+            IngestDocument result = partitionDocument(ingestDocument, timings, images);
+            failed = false;
+            return result;
+        } finally {
+            stats.onDocumentDone(started, failed);
+            logTimings(ingestDocument, timings, failed);
+        }
+    }
+
+    private IngestDocument partitionDocument(IngestDocument ingestDocument, StageTimings timings, ImageStore.Batch images)
+            throws Exception {
+        long stageStarted = System.nanoTime();
+        DocumentInput input = readInput(ingestDocument);
+        if (input == null) {
+            return ingestDocument;
+        }
+        byte[] options = buildOptions(ingestDocument);
+        ContentSniffer.ContentType contentType = sniff(input);
+        timings.record(StageTimings.Stage.READ_INPUT, stageStarted);
+        timings.setInputBytes(input.length());
+        if (contentType != null) {
+            return bypass(ingestDocument, input, contentType, timings);
+        }
+        stageStarted = System.nanoTime();
+        String cacheKey = cacheKey(input, options);
+        PartitionResult res = getCached(cacheKey);
+        if (res == null) {
+            res = getStored(cacheKey);
+        }
+        timings.record(StageTimings.Stage.CACHE, stageStarted);
+        if (res != null) {
+            return applyResponse(ingestDocument, res, timings);
+        }
+        try (Releasable ignored = reserveMemory(input)) {
+            stageStarted = System.nanoTime();
+            res = partition(input, options, images, imageKey(ingestDocument, input, options),
+                    CallGroup.withTimeout(timeout == null ? -1 : timeout.nanos(), partitionExecutor), timings);
+            timings.record(StageTimings.Stage.PARTITION, stageStarted);
+            stageStarted = System.nanoTime();
+            putCached(cacheKey, res);
+            timings.record(StageTimings.Stage.CACHE, stageStarted);
+            return applyResponse(ingestDocument, res, timings);
+        }
+    }
 
+    /**
+     * Async mode on the non-blocking path: the upload runs on the partition executor, then the job is polled
+     * on the shared scheduler and the handler is called once the result arrives. The document {@code timeout}
+     * starts here and bounds the upload and the polling together.
+     */
+    private void executeAsync(IngestDocument ingestDocument, BiConsumer<IngestDocument, Exception> documentHandler) {
+        StageTimings timings = new StageTimings();
+        CallGroup calls = CallGroup.withTimeout(timeout == null ? -1 : timeout.nanos(), partitionExecutor);
+        BiConsumer<IngestDocument, Exception> counted = stats.track(documentHandler);
+        BiConsumer<IngestDocument, Exception> tracked = (result, e) -> {
+            if (e instanceof OpenSearchTimeoutException) {
+                stats.onTimeout();
+            }
+            logTimings(ingestDocument, timings, e != null);
+            counted.accept(result, e);
+        };
+        DocumentInput input;
+        byte[] options;
+        String cacheKey;
+        ImageStore.Batch batch = imageBatch();
+        ImageSink images;
+        Releasable reservation;
         try {
-            Path inputFile = Files.createTempFile("aryn-ingest", ".tmp");
-            Files.write(inputFile, input);
-            byte[] options = buildOptionJson(
-                    this.threshold,
-                    this.textMode,
-                    this.tableMode,
-                    this.extractImages,
-                    this.summarizeImages,
-                    this.schema);
-            PartitionerResponse res = partition(inputFile, options);
-            if (res == null) {
-                return ingestDocument;
-            }
-            List<Element> elements = res.getElements();
-            if (!elements.isEmpty()) {
-                String text = joinAllTextRepresentations(elements);
-                ingestDocument.setFieldValue(this.outputField, text);
-            }
-            Map<String, ?> properties = (Map<String, ?>) res.getProperties();
-            Map<String, ?> propsMap = gson.fromJson(gson.toJson(properties), Map.class);
-            for (Map.Entry<String, ?> entry : propsMap.entrySet()) {
-                log.debug("Property: {} = {}", entry.getKey(), entry.getValue());
-                ingestDocument.appendFieldValue(entry.getKey(), entry.getValue());
-            }
-        } catch (IOException e) {
-            log.error("Unable to process document: {}", e, e);
-            throw new RuntimeException(e);
+            long stageStarted = System.nanoTime();
+            input = readInput(ingestDocument);
+            if (input == null) {
+                counted.accept(ingestDocument, null);
+                return;
+            }
+            options = buildOptions(ingestDocument);
+            ContentSniffer.ContentType contentType = sniff(input);
+            timings.record(StageTimings.Stage.READ_INPUT, stageStarted);
+            timings.setInputBytes(input.length());
+            if (contentType != null) {
+                tracked.accept(bypass(ingestDocument, input, contentType, timings), null);
+                return;
+            }
+            stageStarted = System.nanoTime();
+            cacheKey = cacheKey(input, options);
+            PartitionResult cached = getCached(cacheKey);
+            timings.record(StageTimings.Stage.CACHE, stageStarted);
+            if (cached != null) {
+                tracked.accept(applyResponse(ingestDocument, cached, timings), null);
+                return;
+            }
+            images = imageSink(batch, imageKey(ingestDocument, input, options));
+            // held until the job's result is applied, the document stays in memory while it waits
+            reservation = reserveMemory(input);
+        } catch (Exception e) {
+            tracked.accept(null, e);
+            return;
         }
+        BiConsumer<IngestDocument, Exception> handler = (result, e) -> {
+            reservation.close();
+            tracked.accept(result, e);
+        };
+        // set when the upload starts, the partition stage runs until the job's result arrives
+        long[] submitted = new long[1];
+        ActionListener<PartitionClient.Result> listener = new ActionListener<>() {
+            @Override
+            public void onResponse(PartitionClient.Result result) {
+                IngestDocument out;
+                try {
+                    timings.record(StageTimings.Stage.PARTITION, submitted[0]);
+                    PartitionResult res = toResponse(result, timings);
+                    long stageStarted = System.nanoTime();
+                    putCached(cacheKey, res);
+                    timings.record(StageTimings.Stage.CACHE, stageStarted);
+                    out = applyResponse(ingestDocument, res, timings);
+                } catch (Exception e) {
+                    handler.accept(null, e);
+                    return;
+                }
+                IngestDocument applied = out;
+                flushImages(batch, ActionListener.wrap(r -> handler.accept(applied, null), e -> handler.accept(null, e)));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                handler.accept(null, e);
+            }
+        };
+        // the store lookup holds no thread, reading its result and uploading wait for the partition executor
+        long lookupStarted = System.nanoTime();
+        lookupStored(cacheKey, ActionListener.wrap(stored -> {
+            timings.record(StageTimings.Stage.CACHE, lookupStarted);
+            long queued = System.nanoTime();
+            try {
+                partitionExecutor.execute(() -> {
+                    timings.record(StageTimings.Stage.QUEUE, queued);
+                    SubmittedTask task = null;
+                    IngestDocument fromStore = null;
+                    try {
+                        if (stored != null) {
+                            long stageStarted = System.nanoTime();
+                            fromStore = applyResponse(ingestDocument, storedResult(cacheKey, stored), timings);
+                            timings.record(StageTimings.Stage.CACHE, stageStarted);
+                        } else {
+                            submitted[0] = System.nanoTime();
+                            task = submit(input, options, calls);
+                        }
+                    } catch (Exception e) {
+                        handler.accept(null, e);
+                        return;
+                    }
+                    if (fromStore != null) {
+                        handler.accept(fromStore, null);
+                        return;
+                    }
+                    log.debug("Submitted document to Aryn [{}] as task [{}]", task.endpoint.getUrl(), task.taskId);
+                    asyncPoller.poll(task.taskId, asyncPollInterval, pollTimeout(calls), retryPolicy.getMaxRetries(),
+                            pollCall(task, images), listener);
+                }, input.length());
+            } catch (OpenSearchRejectedExecutionException e) {
+                stats.onRejected();
+                handler.accept(null, e);
+            }
+        }, e -> handler.accept(null, e)));
+    }
+
+    /**
+     * Returns the content type of a document that bypasses Aryn under {@code content_rules}, or null when the
+     * document is partitioned.
+     */
+    private ContentSniffer.ContentType sniff(DocumentInput input) throws IOException {
+        if (contentSniffer == null) {
+            return null;
+        }
+        ContentSniffer.ContentType type = ContentSniffer.sniff(input);
+        return contentSniffer.actionFor(type) == ContentSniffer.Action.ARYN ? null : type;
+    }
+
+    /**
+     * Handles a document that needs no partitioning: its text is extracted on the node, standing in for the
+     * partition stage, or the document is left as it is.
+     */
+    private IngestDocument bypass(IngestDocument ingestDocument, DocumentInput input, ContentSniffer.ContentType type,
+                                  StageTimings timings) throws IOException {
+        if (contentSniffer.actionFor(type) == ContentSniffer.Action.SKIP) {
+            log.debug("Skipping document of type [{}]", type);
+            stats.onBypass(false);
+            return ingestDocument;
+        }
+        PartitionResult res;
+        try (Releasable ignored = reserveMemory(input)) {
+            long stageStarted = System.nanoTime();
+            res = ContentSniffer.extractText(input, type);
+            timings.record(StageTimings.Stage.PARTITION, stageStarted);
+        }
+        stats.onBypass(true);
+        return applyResponse(ingestDocument, res, timings);
+    }
+
+    /**
+     * Decoded size of the input field, computed without decoding it, so the executor can schedule by size.
+     */
+    private long inputBytes(IngestDocument ingestDocument) {
+        Object value = ingestDocument.getFieldValue(inputField, Object.class, true);
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof String) {
+            return DocumentInput.decodedLength((String) value);
+        }
+        return 0;
+    }
+
+    private DocumentInput readInput(IngestDocument ingestDocument) {
+        Object value = ingestDocument.getFieldValue(inputField, Object.class, ignoreMissing);
+
+        if (value == null && ignoreMissing) {
+            return null;
+        } else if (value == null) {
+            throw new IllegalArgumentException("field [" + inputField + "] is null, cannot parse.");
+        }
+        return readInput(ingestDocument, value);
+    }
 
+    /**
+     * Returns the serialized options of a document: the precompiled processor options, or a cached variant when
+     * the document overrides some of them in {@code options_field}.
+     */
+    private byte[] buildOptions(IngestDocument ingestDocument) {
+        if (optionsField == null) {
+            return partitionOptions.toJson();
+        }
+        Map<String, Object> overrides = ingestDocument.getFieldValue(optionsField, Map.class, true);
+        return partitionOptions.resolve(overrides);
+    }
+
+    /**
+     * Applies the result and, with {@code timings_field}, writes the breakdown of the document's stages next to it.
+     */
+    private IngestDocument applyResponse(IngestDocument ingestDocument, PartitionResult res, StageTimings timings) {
+        long stageStarted = System.nanoTime();
+        applyResponse(ingestDocument, res);
+        timings.record(StageTimings.Stage.APPLY, stageStarted);
+        if (timingsField != null) {
+            ingestDocument.setFieldValue(timingsField, timings.toMap());
+        }
+        return ingestDocument;
+    }
+
+    private void logTimings(IngestDocument ingestDocument, StageTimings timings, boolean failed) {
+        if (slowLog != null) {
+            slowLog.maybeLog(getTag(), ingestDocument, timings, failed);
+        }
+    }
+
+    private IngestDocument applyResponse(IngestDocument ingestDocument, PartitionResult res) {
+        if (res == null) {
+            return ingestDocument;
+        }
+        Object output = elementFormatter.format(res.getElements());
+        if (output != null) {
+            ingestDocument.setFieldValue(this.outputField, output);
+        }
+        for (Map.Entry<String, Object> entry : res.getProperties().entrySet()) {
+            log.debug("Property: {} = {}", entry.getKey(), entry.getValue());
+            ingestDocument.appendFieldValue(entry.getKey(), entry.getValue());
+        }
+        if (imageStore != null) {
+            List<Map<String, Object>> images = imageRefs(res.getElements());
+            if (!images.isEmpty()) {
+                ingestDocument.setFieldValue(imagesField, images);
+            }
+        }
         return ingestDocument;
     }
 
-    private PartitionerResponse partition(Path input, byte[] options) throws Exception {
-        Object res = AccessController.doPrivileged((PrivilegedExceptionAction<Object>) () -> {
+    /**
+     * The references of the spilled images, with the page and type of the element each one belongs to.
+     */
+    private static List<Map<String, Object>> imageRefs(List<PartitionResult.Element> elements) {
+        List<Map<String, Object>> images = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            PartitionResult.Element element = elements.get(i);
+            if (element.getImage() == null) {
+                continue;
+            }
+            Map<String, Object> image = new LinkedHashMap<>();
+            image.put("element", i);
+            image.put("type", element.getType());
+            image.put("page", element.getPage());
+            image.putAll(element.getImage());
+            images.add(image);
+        }
+        return images;
+    }
+
+    /**
+     * Images are keyed by the document id. Documents indexed without an id get theirs only after the
+     * pipeline ran, so their images are keyed by the content hash instead.
+     */
+    private String imageKey(IngestDocument ingestDocument, DocumentInput input, byte[] options) {
+        if (imageStore == null) {
+            return null;
+        }
+        Object id = ingestDocument.getFieldValue(IngestDocument.Metadata.ID.getFieldName(), Object.class, true);
+        return id != null ? id.toString() : PartitionCache.key(arynUrl, options, input);
+    }
 
+    private ImageStore.Batch imageBatch() {
+        return imageStore == null ? null : imageStore.batch();
+    }
+
+    private static ImageSink imageSink(ImageStore.Batch images, String imageKey) {
+        return images == null || imageKey == null ? null : images.sink(imageKey);
+    }
+
+    /**
+     * Stores the images of a document once its responses were read, without holding the calling thread.
+     */
+    private static void flushImages(ImageStore.Batch images, ActionListener<Void> listener) {
+        if (images == null) {
+            listener.onResponse(null);
+        } else {
+            images.flush(listener);
+        }
+    }
+
+    /**
+     * Checks the size of the source field against max_input_bytes before anything is decoded. In streaming
+     * mode base64 strings stay encoded and are decoded while the request body is written.
+     */
+    private DocumentInput readInput(IngestDocument ingestDocument, Object value) {
+        inputSize(value);
+        if (streamInput && value instanceof String) {
             try {
-                PartitionerResponse response = api.partition(input, null, options, USER_AGENT, Collections.emptyMap());
-                Map<String, List<String>> responseHeaders = this.defaultClient.getResponseHeaders();
-                String arynCallId = responseHeaders.get(ARYN_CALL_ID).get(0);
-                String arynVersion = responseHeaders.get(ARYN_API_VERSION).get(0);
-                log.info("aryn_call_id: {}, aryn_version: {}", arynCallId, arynVersion);
-
-                Object properties = response.getProperties();
-                if (properties != null) {
-                    Map<String, ?> propsMap = gson.fromJson(gson.toJson(properties), Map.class);
-                    response.setProperties(propsMap);
+                return DocumentInput.base64((String) value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("field [" + inputField + "] is not valid base64: " + e.getMessage(), e);
+            }
+        }
+        return DocumentInput.of(ingestDocument.getFieldValueAsBytes(inputField));
+    }
+
+    /**
+     * The decoded size of the source field, checked against max_input_bytes.
+     */
+    private long inputSize(Object value) {
+        long size;
+        if (value instanceof byte[]) {
+            size = ((byte[]) value).length;
+        } else if (value instanceof String) {
+            size = DocumentInput.decodedLength((String) value);
+        } else {
+            throw new IllegalArgumentException("field [" + inputField + "] of type [" + value.getClass().getName()
+                    + "] cannot be cast to a byte array");
+        }
+        if (maxInputBytes > 0 && size > maxInputBytes) {
+            throw new IllegalArgumentException("field [" + inputField + "] holds [" + size
+                    + "] bytes, more than max_input_bytes [" + maxInputBytes + "]");
+        }
+        return size;
+    }
+
+    /**
+     * Reserves the estimated memory of a document that is about to be partitioned against the plugin's
+     * circuit breaker.
+     */
+    private Releasable reserveMemory(DocumentInput input) {
+        if (memoryBreaker == null) {
+            return () -> {};
+        }
+        try {
+            return memoryBreaker.reserve(PartitionMemoryBreaker.estimate(input.length(), streamInput, maxResponseBytes),
+                    "<" + TYPE + ">");
+        } catch (CircuitBreakingException e) {
+            stats.onRejected();
+            throw e;
+        }
+    }
+
+    private String cacheKey(DocumentInput input, byte[] options) {
+        return partitionCache == null && resultStore == null ? null : PartitionCache.key(arynUrl, options, input);
+    }
+
+    private PartitionResult getCached(String cacheKey) throws IOException {
+        if (cacheKey == null || partitionCache == null) {
+            return null;
+        }
+        byte[] cached = partitionCache.get(cacheKey, cacheTtl);
+        stats.onCacheLookup(cached != null);
+        if (cached == null) {
+            return null;
+        }
+        log.debug("Partition cache hit for [{}]", cacheKey);
+        return PartitionResult.parse(partitionClient.getObjectMapper(), new ByteArrayInputStream(cached), -1);
+    }
+
+    /**
+     * Looks the document up in the cluster wide result store after a node cache miss. A hit is copied into the
+     * node cache. Waits for the lookup, so only for callers on the partition executor.
+     */
+    private PartitionResult getStored(String cacheKey) throws IOException {
+        if (cacheKey == null || resultStore == null) {
+            return null;
+        }
+        byte[] stored = resultStore.get(cacheKey, cacheTtl);
+        return stored == null ? null : storedResult(cacheKey, stored);
+    }
+
+    /**
+     * Looks the document up in the cluster wide result store without waiting, and passes the stored bytes or null
+     * on. A lookup the store cannot make is a miss.
+     */
+    private void lookupStored(String cacheKey, ActionListener<byte[]> listener) {
+        if (cacheKey == null || resultStore == null) {
+            listener.onResponse(null);
+            return;
+        }
+        resultStore.get(cacheKey, cacheTtl, listener);
+    }
+
+    /**
+     * Parses a result store hit and copies it into the node cache.
+     */
+    private PartitionResult storedResult(String cacheKey, byte[] stored) throws IOException {
+        log.debug("Partition result store hit for [{}]", cacheKey);
+        if (partitionCache != null) {
+            partitionCache.put(cacheKey, stored);
+        }
+        return PartitionResult.parse(partitionClient.getObjectMapper(), new ByteArrayInputStream(stored), -1);
+    }
+
+    private void putCached(String cacheKey, PartitionResult res) throws IOException {
+        if (res == null || cacheKey == null) {
+            return;
+        }
+        byte[] json = res.toJson(partitionClient.getObjectMapper());
+        if (partitionCache != null) {
+            partitionCache.put(cacheKey, json);
+        }
+        if (resultStore != null) {
+            resultStore.put(cacheKey, json);
+        }
+    }
+
+    private PartitionResult partition(DocumentInput input, byte[] options, ImageStore.Batch imageBatch, String imageKey,
+                                      CallGroup calls, StageTimings timings) throws Exception {
+        try {
+            if (splitPages > 0 && !asyncMode) {
+                int pages = PdfPageCounter.count(input);
+                if (pages > splitPages) {
+                    PartitionResult result = partitionPageRanges(input, options, pages, imageBatch, imageKey, calls, timings);
+                    if (result != null) {
+                        return result;
+                    }
                 }
-                return response;
+            }
+            ImageSink images = imageSink(imageBatch, imageKey);
+            // the document goes straight from memory into the multipart body, no temp file
+            PartitionClient.Result result = privileged(() -> asyncMode
+                    ? partitionAsync(input, options, images, calls)
+                    : callWithRetries(calls, input.length(), endpoint -> upload(endpoint, input, options, images, calls)));
+            return toResponse(result, timings);
+        } catch (OpenSearchTimeoutException e) {
+            stats.onTimeout();
+            throw e;
+        }
+    }
+
+    /**
+     * Partitions a large PDF as ranges of {@code split_pages} pages, at most {@code split_max_parallelism} at a
+     * time, and merges the results in page order. The ranges run on their own virtual threads rather than on
+     * the partition executor, whose slots may all be held by documents waiting for their ranges. Element
+     * indexes restart with every range, so each range spills its images under its own key.
+     * <p>
+     * The page count may be an upper bound (see {@link PdfPageCounter}). Returns null when the partitioner rejects
+     * a range after the first one, as it does for pages past the end, and the caller sends the document whole.
+     */
+    private PartitionResult partitionPageRanges(DocumentInput input, byte[] options, int pages, ImageStore.Batch imageBatch,
+                                                String imageKey, CallGroup calls, StageTimings timings) throws Exception {
+        int rangeCount = (pages + splitPages - 1) / splitPages;
+        log.debug("Partitioning {} pages as {} ranges of {} pages", pages, rangeCount, splitPages);
+        Semaphore permits = new Semaphore(splitMaxParallelism);
+        // cancelling the ranges leaves the document's own calls usable for sending it whole
+        CallGroup rangeCalls = calls.child();
+        List<Future<PartitionResult>> ranges = new ArrayList<>(rangeCount);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < rangeCount; i++) {
+                int first = i * splitPages + 1;
+                int last = Math.min(pages, first + splitPages - 1);
+                byte[] rangeOptions = PartitionOptions.withSelectedPages(options, first, last);
+                // the whole document is uploaded but only the range partitioned, its latency is judged by its pages
+                long rangeBytes = input.length() * (last - first + 1) / pages;
+                ImageSink images = imageSink(imageBatch, imageKey == null ? null : imageKey + "_p" + first);
+                ranges.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return toResponse(privileged(() -> callWithRetries(rangeCalls, rangeBytes,
+                                endpoint -> upload(endpoint, input, rangeOptions, images, rangeCalls))), timings);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<PartitionResult> results = new ArrayList<>(rangeCount);
+            for (int i = 0; i < rangeCount; i++) {
+                try {
+                    results.add(ranges.get(i).get());
+                } catch (ExecutionException e) {
+                    // one failed range fails the document, stop the others and abort their requests
+                    rangeCalls.cancel("failed in another page range");
+                    for (Future<PartitionResult> other : ranges) {
+                        other.cancel(true);
+                    }
+                    if (i > 0 && e.getCause() instanceof ApiException && isRangeRejected((ApiException) e.getCause())) {
+                        log.debug("Aryn rejected page range {} of {} pages, partitioning the document whole", i + 1, pages);
+                        return null;
+                    }
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            calls.unregister(rangeCalls);
+            return PartitionResult.merge(results);
+        }
+    }
+
+    private static boolean isRangeRejected(ApiException e) {
+        return e.getCode() == 400 || e.getCode() == 422;
+    }
+
+    /**
+     * Async mode on the blocking path (single document {@link #execute(IngestDocument)}): submits the job and
+     * polls it from the calling thread.
+     */
+    private PartitionClient.Result partitionAsync(DocumentInput input, byte[] options, ImageSink images, CallGroup calls)
+            throws ApiException {
+        SubmittedTask task = callWithRetries(calls, -1, endpoint -> uploadAsync(endpoint, input, options, calls));
+        long deadline = System.nanoTime() + pollTimeout(calls).nanos();
+        while (true) {
+            try {
+                Thread.sleep(asyncPollInterval.millis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException(e);
+            }
+            // the job only exists on the endpoint it was submitted to
+            PartitionClient.Result result = callWithRetries(calls, task.endpoint, -1,
+                    endpoint -> endpoint.client.pollAsync(task.taskId, maxResponseBytes, images));
+            if (result != null) {
+                return result;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new OpenSearchTimeoutException("Aryn task [{}] did not finish within the async timeout", task.taskId);
+            }
+        }
+    }
+
+    /**
+     * One poll of an async job for the {@link AsyncPartitionPoller}, on the endpoint the job was submitted to and
+     * through its limiter and circuit breaker like every other call. The poller retries on its own schedule.
+     */
+    private AsyncPartitionPoller.Poll pollCall(SubmittedTask task, ImageSink images) {
+        return () -> privileged(() -> callLimited(task.endpoint, -1,
+                () -> task.endpoint.client.pollAsync(task.taskId, maxResponseBytes, images)));
+    }
+
+    private SubmittedTask submit(DocumentInput input, byte[] options, CallGroup calls) throws ApiException {
+        return privileged(() -> callWithRetries(calls, -1, endpoint -> uploadAsync(endpoint, input, options, calls)));
+    }
+
+    /**
+     * The polling deadline, {@code async_timeout} or what is left of the document timeout when that ends sooner.
+     */
+    private TimeValue pollTimeout(CallGroup calls) {
+        if (!calls.hasDeadline()) {
+            return asyncTimeout;
+        }
+        return TimeValue.timeValueNanos(Math.max(0, Math.min(asyncTimeout.nanos(), calls.remainingNanos())));
+    }
+
+    /**
+     * Sends one partition request. With a document timeout or hedging it runs as an attempt of {@code calls}, so
+     * the caller stops waiting at the deadline and a slow attempt can be hedged.
+     */
+    private PartitionClient.Result upload(EndpointPool.Member endpoint, DocumentInput input, byte[] options,
+                                          ImageSink images, CallGroup calls) throws ApiException {
+        stats.addBytesUploaded(input.length());
+        if (!calls.hasDeadline() && hedgePercentile <= 0) {
+            return endpoint.client.partition(input, options, maxResponseBytes, images, calls);
+        }
+        long hedgeDelay = hedgeDelayNanos();
+        return calls.call(
+                group -> endpoint.client.partition(input, options, maxResponseBytes, images, group),
+                hedgeDelay < 0 ? null : group -> {
+                    stats.addBytesUploaded(input.length());
+                    return hedgeClient(endpoint).partition(input, options, maxResponseBytes, images, group);
+                },
+                hedgeDelay, stats::onHedge);
+    }
+
+    /**
+     * Calls slower than {@code hedge_percentile} of this processor's calls get hedged, -1 when hedging is off or
+     * too few calls were timed yet.
+     */
+    private long hedgeDelayNanos() {
+        if (hedgePercentile <= 0) {
+            return -1;
+        }
+        long micros = stats.callLatencyPercentile(hedgePercentile, HEDGE_MIN_CALLS);
+        return micros < 0 ? -1 : TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    /**
+     * The configured hedge endpoint, else the pool member with the fewest calls in flight other than the one
+     * running the call, else that same one.
+     */
+    private PartitionClient hedgeClient(EndpointPool.Member running) {
+        if (hedgeClient != null) {
+            return hedgeClient;
+        }
+        EndpointPool.Member other = endpoints.choose(running);
+        return other == null ? running.client : other.client;
+    }
+
+    private SubmittedTask uploadAsync(EndpointPool.Member endpoint, DocumentInput input, byte[] options, CallGroup calls)
+            throws ApiException {
+        stats.addBytesUploaded(input.length());
+        if (!calls.hasDeadline()) {
+            return new SubmittedTask(endpoint, endpoint.client.submitAsync(input, options, calls));
+        }
+        // with a document timeout the caller stops waiting at the deadline, and the upload is aborted
+        return new SubmittedTask(endpoint, calls.call(group -> endpoint.client.submitAsync(input, options, group), null, -1, null));
+    }
+
+    /**
+     * An asynchronous job and the endpoint that accepted it, which is the only one that can return its result.
+     */
+    private static final class SubmittedTask {
+        final EndpointPool.Member endpoint;
+        final String taskId;
+
+        SubmittedTask(EndpointPool.Member endpoint, String taskId) {
+            this.endpoint = endpoint;
+            this.taskId = taskId;
+        }
+    }
+
+    /**
+     * What the deferred job of a document is made of.
+     */
+    private static final class DeferredJob {
+        final String index;
+        final String docId;
+        final String routing;
+        final long size;
+
+        DeferredJob(String index, String docId, String routing, long size) {
+            this.index = index;
+            this.docId = docId;
+            this.routing = routing;
+            this.size = size;
+        }
+    }
+
+    private PartitionResult toResponse(PartitionClient.Result result, StageTimings timings) {
+        stats.addBytesDownloaded(result.getResponseBytes());
+        String callId = result.getHeader(ARYN_CALL_ID);
+        log.debug("aryn_call_id: {}, aryn_version: {}", callId, result.getHeader(ARYN_API_VERSION));
+        timings.onCall(result, callId);
+        return result.getResponse();
+    }
+
+    /**
+     * Runs the call with the plugin's permissions. Failures are not logged here: they reach the pipeline's
+     * on_failure, and are counted in the stats and reported by the slow log.
+     */
+    private static <T> T privileged(ApiCall<T> call) throws ApiException {
+        try {
+            return AccessController.doPrivileged((PrivilegedExceptionAction<T>) call::call);
+        } catch (PrivilegedActionException e) {
+            log.debug("Call to Aryn Partitioner failed", e.getException());
+            throw (ApiException) e.getException();
+        }
+    }
+
+    /**
+     * Runs one call to the partitioner, retrying transient failures per the retry policy. Every attempt goes to the
+     * endpoint the pool picks, so a retry usually lands on another replica. While the circuit breakers of all
+     * endpoints are open the call fails fast with a 503; ignore_failure/on_failure of the pipeline then apply.
+     * {@code uploadBytes} is the size the endpoint's latency is recorded under for slow ejection, -1 for calls
+     * whose latency says nothing about partitioning (async submits and polls).
+     */
+    private <T> T callWithRetries(CallGroup calls, long uploadBytes, EndpointCall<T> call) throws ApiException {
+        return callWithRetries(calls, null, uploadBytes, call);
+    }
+
+    /**
+     * Like {@link #callWithRetries(CallGroup, long, EndpointCall)}, with every attempt going to {@code pinned} when
+     * it is set.
+     */
+    private <T> T callWithRetries(CallGroup calls, EndpointPool.Member pinned, long uploadBytes, EndpointCall<T> call)
+            throws ApiException {
+        for (int attempt = 0; ; attempt++) {
+            calls.ensureActive();
+            EndpointPool.Member endpoint = pinned != null ? pinned : endpoints.choose();
+            if (endpoint == null || !endpoint.isAvailable()) {
+                throw new OpenSearchStatusException(unavailableMessage(endpoint != null ? endpoint : pinned),
+                        RestStatus.SERVICE_UNAVAILABLE);
+            }
+            try {
+                return callLimited(endpoint, uploadBytes, () -> call.call(endpoint));
             } catch (ApiException e) {
-                // TODO add retries
-                log.error("Call to Aryn Partitioner failed: {}", e, e);
-                throw new RuntimeException(e);
+                long delay = retryPolicy.delayMillis(attempt, e);
+                if (delay < 0 || calls.isCancelled()) {
+                    throw e;
+                }
+                if (TimeUnit.MILLISECONDS.toNanos(delay) >= calls.remainingNanos()) {
+                    // the retry could not finish before the deadline anyway
+                    throw e;
+                }
+                log.warn("Call to Aryn Partitioner [{}] failed with status [{}], retry {} of {} in {}ms",
+                        endpoint.getUrl(), e.getCode(), attempt + 1, retryPolicy.getMaxRetries(), delay);
+                stats.onRetry();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
             }
-        });
+        }
+    }
 
-        return res == null ? null : (PartitionerResponse) res;
+    private String unavailableMessage(EndpointPool.Member endpoint) {
+        if (endpoint != null || endpoints.size() == 1) {
+            String url = endpoint != null ? endpoint.getUrl() : arynUrl;
+            return "Aryn partitioner [" + url + "] is unavailable, circuit breaker is open";
+        }
+        return "Aryn partitioners " + endpoints + " are unavailable, all circuit breakers are open";
+    }
+
+    /**
+     * Runs the call in a slot of the endpoint's concurrency limiter. The slot is given back before any retry
+     * backoff. Throws es_rejected_execution_exception when the endpoint stays saturated.
+     */
+    private <T> T callLimited(EndpointPool.Member endpoint, long uploadBytes, ApiCall<T> call) throws ApiException {
+        if (endpoint.limiter == null) {
+            return callGuarded(endpoint, uploadBytes, call);
+        }
+        long started;
+        try {
+            started = endpoint.limiter.acquire();
+        } catch (OpenSearchRejectedExecutionException e) {
+            stats.onRejected();
+            throw e;
+        }
+        AdaptiveConcurrencyLimiter.Outcome outcome = AdaptiveConcurrencyLimiter.Outcome.IGNORE;
+        try {
+            T result = callGuarded(endpoint, uploadBytes, call);
+            outcome = AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+            return result;
+        } catch (ApiException e) {
+            outcome = AdaptiveConcurrencyLimiter.outcomeOf(e);
+            throw e;
+        } finally {
+            endpoint.limiter.release(started, outcome);
+        }
+    }
+
+    /**
+     * Runs the call through the endpoint's circuit breaker. The breaker is asked only once a limiter slot is held,
+     * so a half open probe always goes out, and it is settled on every exit: an answer from the endpoint closes or
+     * reopens it, anything else (cancellation, a response that is too large, ...) gives the probe back.
+     */
+    private <T> T callGuarded(EndpointPool.Member endpoint, long uploadBytes, ApiCall<T> call) throws ApiException {
+        EndpointCircuitBreaker breaker = endpoint.breaker;
+        if (breaker == null) {
+            return callTimed(endpoint, uploadBytes, call);
+        }
+        if (!breaker.allowRequest()) {
+            throw new OpenSearchStatusException(unavailableMessage(endpoint), RestStatus.SERVICE_UNAVAILABLE);
+        }
+        boolean settled = false;
+        try {
+            T result = callTimed(endpoint, uploadBytes, call);
+            breaker.onSuccess();
+            settled = true;
+            return result;
+        } catch (ApiException e) {
+            if (RetryPolicy.isServerFailure(e)) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            settled = true;
+            throw e;
+        } finally {
+            if (!settled) {
+                breaker.onAbandoned();
+            }
+        }
+    }
+
+    private <T> T callTimed(EndpointPool.Member endpoint, long uploadBytes, ApiCall<T> call) throws ApiException {
+        long started = stats.onCallStart();
+        long endpointStarted = endpoint.endpoint.onCallStart();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            endpoint.endpoint.onCallDone(endpointStarted, failed, uploadBytes);
+            stats.onCallDone(started, failed);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ApiCall<T> {
+        T call() throws ApiException;
+    }
+
+    @FunctionalInterface
+    private interface EndpointCall<T> {
+        T call(EndpointPool.Member endpoint) throws ApiException;
     }
 
     @VisibleForTesting
@@ -175,47 +1461,85 @@ public class ArynIngestProcessor extends AbstractProcessor {
             boolean extractImages,
             boolean summarizeImages,
             String schema) {
-        Map<String, Object> optionsMap = new HashMap<>();
-        if (threshold.equals("auto")) {
-            optionsMap.put("threshold", "auto");
-        } else {
-            optionsMap.put("threshold", Double.valueOf(threshold));
-        }
-        if (textMode != null) {
-            optionsMap.put("text_mode", textMode);
+        return new PartitionOptions(threshold, textMode, tableMode, extractImages, summarizeImages, schema).toJson();
+    }
+
+    @Override
+    public void batchExecute(List<IngestDocumentWrapper> ingestDocumentWrappers, Consumer<List<IngestDocumentWrapper>> handler) {
+        if (partitionExecutor == null || ingestDocumentWrappers.isEmpty()) {
+            super.batchExecute(ingestDocumentWrappers, handler);
+            return;
         }
-        if (tableMode != null) {
-            optionsMap.put("table_mode", tableMode);
+        new BatchExecution(ingestDocumentWrappers, handler).start();
+    }
+
+    /**
+     * Partitions the documents of one batch concurrently, with at most {@code maxConcurrency} calls in flight.
+     * Each finished document starts the next pending one. Results keep the position and slot of their
+     * input wrapper, and a failure only fails its own document.
+     */
+    private final class BatchExecution {
+        private static final int RUNNING = 0;
+        private static final int COMPLETED = 1;
+        private static final int DETACHED = 2;
+
+        private final List<IngestDocumentWrapper> wrappers;
+        private final Consumer<List<IngestDocumentWrapper>> handler;
+        private final AtomicArray<IngestDocumentWrapper> results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+
+        BatchExecution(List<IngestDocumentWrapper> wrappers, Consumer<List<IngestDocumentWrapper>> handler) {
+            this.wrappers = wrappers;
+            this.handler = handler;
+            this.results = new AtomicArray<>(wrappers.size());
+            this.remaining = new AtomicInteger(wrappers.size());
         }
-        optionsMap.put("extract_images", extractImages);
-        optionsMap.put("summarize_images", summarizeImages);
-        ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            if (schema != null) {
-                optionsMap.put("property_extraction_options", Map.of("schema", schema));
+
+        void start() {
+            int inFlight = Math.min(maxConcurrency, wrappers.size());
+            for (int i = 0; i < inFlight; i++) {
+                executeNext();
             }
-            String optionsJson = objectMapper.writeValueAsString(optionsMap);
-            return optionsJson.getBytes(StandardCharsets.UTF_8);
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            throw new RuntimeException(ex);
         }
-    }
 
-    private String joinAllTextRepresentations(List<Element> elements) {
-        StringBuilder builder = new StringBuilder();
-        for (Element element : elements) {
-            String text = element.getTextRepresentation();
-            if (text != null && !text.isEmpty()) {
-                builder.append(String.format(Locale.ROOT, "%s%n", text));
+        /**
+         * Runs documents one after the other until one completes asynchronously, which then carries on from its
+         * own thread. Documents that complete on the calling thread (failed upstream, cache hits, inline runs after a
+         * rejection) loop here instead of recursing, so a large batch cannot overflow the stack.
+         */
+        private void executeNext() {
+            while (true) {
+                int position = next.getAndIncrement();
+                if (position >= wrappers.size()) {
+                    return;
+                }
+                IngestDocumentWrapper wrapper = wrappers.get(position);
+                if (wrapper.getIngestDocument() == null || wrapper.getException() != null) {
+                    // failed in an earlier processor, pass it through untouched
+                    onResult(position, wrapper);
+                    continue;
+                }
+                AtomicInteger state = new AtomicInteger(RUNNING);
+                execute(wrapper.getIngestDocument(), (result, e) -> {
+                    onResult(position, new IngestDocumentWrapper(wrapper.getSlot(), result, e));
+                    if (!state.compareAndSet(RUNNING, COMPLETED)) {
+                        // the loop has moved on, continue on this thread
+                        executeNext();
+                    }
+                });
+                if (state.compareAndSet(RUNNING, DETACHED)) {
+                    return;
+                }
             }
         }
-        return builder.toString();
-    }
 
-    @Override
-    public void batchExecute(List<IngestDocumentWrapper> ingestDocumentWrappers, Consumer<List<IngestDocumentWrapper>> handler) {
-        super.batchExecute(ingestDocumentWrappers, handler);
+        private void onResult(int position, IngestDocumentWrapper result) {
+            results.set(position, result);
+            if (remaining.decrementAndGet() == 0) {
+                handler.accept(results.asList());
+            }
+        }
     }
 
     @Override
@@ -17,8 +17,18 @@
  */
 package ai.aryn.docparse;
 
+import org.opensearch.OpenSearchParseException;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.env.Environment;
 import org.opensearch.ingest.Processor;
+import org.opensearch.transport.client.Client;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.opensearch.ingest.ConfigurationUtils.*;
@@ -26,9 +36,48 @@ import static org.opensearch.ingest.ConfigurationUtils.readBooleanProperty;
 
 public class ArynIngestProcessorFactory implements Processor.Factory {
 
+    private final PartitionExecutor partitionExecutor;
+    private final PartitionCache partitionCache;
+    private final EndpointCircuitBreaker.Registry circuitBreakers;
+    private final ArynClientRegistry clientRegistry;
+    private final AsyncPartitionPoller asyncPoller;
+    private final AdaptiveConcurrencyLimiter.Registry limiters;
+    private final ArynStats stats;
+    private final PartitionResultStore resultStore;
+    private final PartitionMemoryBreaker memoryBreaker;
+    private final Environment environment;
+    private final Client client;
+    private final ArynEndpoint.Registry endpoints;
+    private final ArynSlowLog slowLog;
+    private final DeferredJobQueue deferredQueue;
+
+    public ArynIngestProcessorFactory(PartitionExecutor partitionExecutor, PartitionCache partitionCache,
+                                      EndpointCircuitBreaker.Registry circuitBreakers, ArynClientRegistry clientRegistry,
+                                      AsyncPartitionPoller asyncPoller, AdaptiveConcurrencyLimiter.Registry limiters,
+                                      ArynStats stats, PartitionResultStore resultStore, PartitionMemoryBreaker memoryBreaker,
+                                      Environment environment, Client client, ArynEndpoint.Registry endpoints,
+                                      ArynSlowLog slowLog, DeferredJobQueue deferredQueue) {
+        this.partitionExecutor = partitionExecutor;
+        this.partitionCache = partitionCache;
+        this.circuitBreakers = circuitBreakers;
+        this.clientRegistry = clientRegistry;
+        this.asyncPoller = asyncPoller;
+        this.limiters = limiters;
+        this.stats = stats;
+        this.resultStore = resultStore;
+        this.memoryBreaker = memoryBreaker;
+        this.environment = environment;
+        this.client = client;
+        this.endpoints = endpoints;
+        this.slowLog = slowLog;
+        this.deferredQueue = deferredQueue;
+    }
+
     @Override
     public Processor create(Map<String, Processor.Factory> processorFactories, String tag, String description, Map<String, Object> config)
         throws Exception {
+        // taken before the settings are read out of the map, deferred jobs carry it to the node that runs them
+        Map<String, Object> processorConfig = DeferredJobQueue.storedConfig(config);
         String inputField = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "input_field", "data");
         String outputtField = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "output_field", "parsed_data");
         // List<String> propertyNames = readOptionalList(ArynIngestProcessor.TYPE, processorTag, config, "properties");
@@ -41,10 +90,284 @@ public class ArynIngestProcessorFactory implements Processor.Factory {
         boolean summarizeImages = readBooleanProperty(ArynIngestProcessor.TYPE, tag, config, "summarize_images", false);
         String schema = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "schema");
         //String schemaPath = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "schema_path");
-        String arynUrl = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "aryn_url", "https://api.aryn.ai");
+        String optionsField = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "options_field");
+        List<String> arynUrls = readStringOrListProperty(ArynIngestProcessor.TYPE, tag, config, "aryn_url", "https://api.aryn.ai");
+        // replicas serve the same results, so the whole list is one identity for the cache
+        String arynUrl = String.join(",", arynUrls);
+        String healthCheckPath = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "health_check_path");
+        if (healthCheckPath != null && !healthCheckPath.startsWith("/")) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "health_check_path", "must start with [/]");
+        }
+        int maxConcurrency = readIntProperty(ArynIngestProcessor.TYPE, tag, config, "max_concurrency",
+                ArynIngestProcessor.DEFAULT_MAX_CONCURRENCY);
+        if (maxConcurrency < 1) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "max_concurrency", "must be at least 1");
+        }
+        boolean cache = readBooleanProperty(ArynIngestProcessor.TYPE, tag, config, "cache", true);
+        TimeValue cacheTtl = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "cache_ttl");
+        boolean streamInput = readBooleanProperty(ArynIngestProcessor.TYPE, tag, config, "stream_input", false);
+        ByteSizeValue maxInputBytes = readOptionalByteSizeProperty(ArynIngestProcessor.TYPE, tag, config, "max_input_bytes");
+        ByteSizeValue maxResponseBytes = readOptionalByteSizeProperty(ArynIngestProcessor.TYPE, tag, config, "max_response_bytes");
+        int maxRetries = readIntProperty(ArynIngestProcessor.TYPE, tag, config, "max_retries", 3);
+        if (maxRetries < 0) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "max_retries", "must not be negative");
+        }
+        TimeValue retryBackoff = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "retry_backoff");
+        TimeValue maxRetryBackoff = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "max_retry_backoff");
+        TimeValue connectTimeout = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "connect_timeout");
+        TimeValue readTimeout = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "read_timeout");
+        if (connectTimeout == null) {
+            connectTimeout = TimeValue.timeValueSeconds(10);
+        }
+        if (readTimeout == null) {
+            readTimeout = TimeValue.timeValueMinutes(5);
+        }
+        String outputMode = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "output_mode", "text");
+        List<String> elementTypes = readOptionalList(ArynIngestProcessor.TYPE, tag, config, "element_types");
+        List<String> excludeElementTypes = readOptionalList(ArynIngestProcessor.TYPE, tag, config, "exclude_element_types");
+        int chunkSize = readIntProperty(ArynIngestProcessor.TYPE, tag, config, "chunk_size", ElementFormatter.DEFAULT_CHUNK_SIZE);
+        if (chunkSize < 1) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "chunk_size", "must be at least 1");
+        }
+        ElementFormatter elementFormatter;
+        try {
+            elementFormatter = new ElementFormatter(ElementFormatter.OutputMode.fromString(outputMode),
+                    elementTypes, excludeElementTypes, chunkSize);
+        } catch (IllegalArgumentException e) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "output_mode", e);
+        }
+        int splitPages = readIntProperty(ArynIngestProcessor.TYPE, tag, config, "split_pages", 0);
+        if (splitPages < 0) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "split_pages", "must not be negative");
+        }
+        int splitMaxParallelism = readIntProperty(ArynIngestProcessor.TYPE, tag, config, "split_max_parallelism", 4);
+        if (splitMaxParallelism < 1) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "split_max_parallelism", "must be at least 1");
+        }
+        boolean asyncMode = readBooleanProperty(ArynIngestProcessor.TYPE, tag, config, "async_mode", false);
+        TimeValue asyncPollInterval = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "async_poll_interval");
+        TimeValue asyncTimeout = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "async_timeout");
+        if (asyncPollInterval == null) {
+            asyncPollInterval = TimeValue.timeValueSeconds(5);
+        } else if (asyncPollInterval.millis() <= 0) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "async_poll_interval", "must be positive");
+        }
+        if (asyncTimeout == null) {
+            asyncTimeout = TimeValue.timeValueHours(1);
+        }
+        String imageIndex = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "image_index");
+        String imagePath = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "image_path");
+        String imagesField = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "images_field", "images");
+        ImageStore imageStore = null;
+        if (imageIndex != null && imagePath != null) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "image_path",
+                    "cannot be set together with [image_index]");
+        } else if (imageIndex != null) {
+            if (client == null) {
+                throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "image_index", "is not available on this node");
+            }
+            imageStore = ImageStore.index(client, imageIndex);
+        } else if (imagePath != null) {
+            // like snapshot repositories, images may only be written below a path.repo location
+            Path root = environment == null ? null : environment.resolveRepoFile(imagePath);
+            if (root == null) {
+                throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "image_path",
+                        "[" + imagePath + "] does not match any path.repo location");
+            }
+            imageStore = ImageStore.path(repoLocation(root), root);
+        }
+        if (imageStore != null && !extractImages) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, imageIndex != null ? "image_index" : "image_path",
+                    "requires [extract_images] to be true");
+        }
+        TimeValue timeout = readOptionalTimeValueProperty(ArynIngestProcessor.TYPE, tag, config, "timeout");
+        if (timeout != null && timeout.nanos() <= 0) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "timeout", "must be positive");
+        }
+        double hedgePercentile = 0;
+        if (config.containsKey("hedge_percentile")) {
+            hedgePercentile = readDoubleProperty(ArynIngestProcessor.TYPE, tag, config, "hedge_percentile");
+            if (hedgePercentile < 0 || hedgePercentile >= 100) {
+                throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "hedge_percentile",
+                        "must be between 0 (disabled) and 100");
+            }
+        }
+        String hedgeUrl = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "hedge_url");
+        String timingsField = readOptionalStringProperty(ArynIngestProcessor.TYPE, tag, config, "timings_field");
+        ContentSniffer contentSniffer = readContentRules(ArynIngestProcessor.TYPE, tag, config, "content_rules");
+        boolean deferred = readBooleanProperty(ArynIngestProcessor.TYPE, tag, config, "deferred", false);
+        String statusField = readStringProperty(ArynIngestProcessor.TYPE, tag, config, "status_field", "aryn_status");
+        if (deferred && deferredQueue == null) {
+            throw newConfigurationException(ArynIngestProcessor.TYPE, tag, "deferred", "is not available on this node");
+        }
+        RetryPolicy retryPolicy = new RetryPolicy(maxRetries,
+                retryBackoff == null ? TimeValue.timeValueMillis(500) : retryBackoff,
+                maxRetryBackoff == null ? TimeValue.timeValueSeconds(30) : maxRetryBackoff);
+        EndpointPool endpointPool = null;
+        if (endpoints != null || arynUrls.size() > 1) {
+            endpointPool = endpointPool(arynUrls, apiKey, connectTimeout, readTimeout, healthCheckPath);
+        }
+
+        ArynIngestProcessor.Builder builder = ArynIngestProcessor.builder(tag, description)
+                .inputField(inputField).outputField(outputtField).apiKey(apiKey).ignoreMissing(ignoreMissing)
+                .threshold(threshold).extractImages(extractImages).summarizeImages(summarizeImages)
+                .textMode(textMode).tableMode(tableMode).schema(schema).arynUrl(arynUrl)
+                .maxConcurrency(maxConcurrency).partitionExecutor(partitionExecutor)
+                .cacheTtl(cacheTtl).streamInput(streamInput).maxInputBytes(maxInputBytes == null ? -1 : maxInputBytes.getBytes())
+                .maxResponseBytes(maxResponseBytes == null ? -1 : maxResponseBytes.getBytes())
+                .retryPolicy(retryPolicy).timeout(timeout).memoryBreaker(memoryBreaker)
+                .asyncMode(asyncMode).asyncPollInterval(asyncPollInterval).asyncTimeout(asyncTimeout).asyncPoller(asyncPoller)
+                .optionsField(optionsField).elementFormatter(elementFormatter)
+                .splitPages(splitPages).splitMaxParallelism(splitMaxParallelism)
+                .stats(stats == null ? null : stats.forProcessor(tag))
+                .imageStore(imageStore).imagesField(imagesField)
+                .hedgePercentile(hedgePercentile).slowLog(slowLog).timingsField(timingsField)
+                .contentSniffer(contentSniffer).statusField(statusField);
+        if (cache) {
+            builder.partitionCache(partitionCache).resultStore(resultStore);
+        }
+        if (endpointPool != null) {
+            builder.endpoints(endpointPool);
+        } else {
+            builder.circuitBreaker(circuitBreakers == null ? null : circuitBreakers.get(arynUrl))
+                    .partitionClient(clientRegistry == null ? null : clientRegistry.get(arynUrl, apiKey, connectTimeout, readTimeout))
+                    .limiter(limiters == null ? null : limiters.get(arynUrl, apiKey));
+        }
+        if (hedgeUrl != null && clientRegistry != null) {
+            builder.hedgeClient(clientRegistry.get(hedgeUrl, apiKey, connectTimeout, readTimeout));
+        }
+        if (deferred) {
+            builder.deferredQueue(deferredQueue).deferredConfig(processorConfig);
+        }
+        ArynIngestProcessor processor = builder.build();
+        if (deferred) {
+            deferredQueue.register(processor, processorConfig, apiKey);
+            deferredQueue.activate();
+        }
+        return processor;
+    }
 
-        return new ArynIngestProcessor(tag, description, inputField, outputtField, apiKey, ignoreMissing,
-                threshold, extractImages, summarizeImages, textMode, tableMode, schema, arynUrl);
+    /**
+     * The {@code path.repo} location a resolved image_path lies under, which image references are relative to.
+     */
+    private Path repoLocation(Path root) {
+        for (Path repo : environment.repoFiles()) {
+            if (root.startsWith(repo)) {
+                return repo;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * One pool member per url, with the node's shared client, circuit breaker, limiter and endpoint state of that url.
+     */
+    private EndpointPool endpointPool(List<String> arynUrls, String apiKey, TimeValue connectTimeout, TimeValue readTimeout,
+                                      String healthCheckPath) {
+        List<EndpointPool.Member> members = new ArrayList<>(arynUrls.size());
+        for (String url : arynUrls) {
+            PartitionClient partitionClient;
+            if (clientRegistry != null) {
+                partitionClient = clientRegistry.get(url, apiKey, connectTimeout, readTimeout);
+            } else {
+                ApiClient apiClient = new ApiClient();
+                apiClient.setBasePath(url);
+                partitionClient = new PartitionClient(apiClient, apiKey, ArynIngestProcessor.USER_AGENT);
+            }
+            ArynEndpoint endpoint = endpoints != null ? endpoints.get(url) : new ArynEndpoint(url, System::currentTimeMillis);
+            if (healthCheckPath != null) {
+                endpoint.setHealthCheck(partitionClient, healthCheckPath);
+            }
+            members.add(new EndpointPool.Member(endpoint, partitionClient,
+                    circuitBreakers == null ? null : circuitBreakers.get(url),
+                    limiters == null ? null : limiters.get(url, apiKey)));
+        }
+        if (endpoints != null) {
+            return new EndpointPool(members, endpoints.getEjectionDuration(), endpoints.getSlowFactor());
+        }
+        return new EndpointPool(members, ArynSettings.ENDPOINT_EJECTION_DURATION.get(Settings.EMPTY),
+                ArynSettings.ENDPOINT_SLOW_FACTOR.get(Settings.EMPTY));
+    }
+
+    /**
+     * Reads a property that is either a single string or a non-empty list of strings.
+     */
+    static List<String> readStringOrListProperty(String processorType, String processorTag, Map<String, Object> configuration,
+                                                 String propertyName, String defaultValue) {
+        Object value = configuration.remove(propertyName);
+        if (value == null) {
+            return List.of(defaultValue);
+        } else if (value instanceof String) {
+            return List.of((String) value);
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            if (values.isEmpty()) {
+                throw newConfigurationException(processorType, processorTag, propertyName, "must not be empty");
+            }
+            List<String> result = new ArrayList<>(values.size());
+            for (Object element : values) {
+                if (!(element instanceof String)) {
+                    throw newConfigurationException(processorType, processorTag, propertyName,
+                            "must only contain strings, found [" + element + "]");
+                }
+                result.add((String) element);
+            }
+            return List.copyOf(result);
+        }
+        throw newConfigurationException(processorType, processorTag, propertyName,
+                "property isn't a string or a list, but of type [" + value.getClass().getName() + "]");
+    }
+
+    /**
+     * Reads a map from content type to the action taken for it, or null when every document goes to Aryn anyway.
+     */
+    static ContentSniffer readContentRules(String processorType, String processorTag, Map<String, Object> configuration,
+                                           String propertyName) {
+        Map<String, Object> rules = readOptionalMap(processorType, processorTag, configuration, propertyName);
+        if (rules == null) {
+            return null;
+        }
+        Map<ContentSniffer.ContentType, ContentSniffer.Action> parsed = new EnumMap<>(ContentSniffer.ContentType.class);
+        try {
+            for (Map.Entry<String, Object> rule : rules.entrySet()) {
+                if (!(rule.getValue() instanceof String)) {
+                    throw new IllegalArgumentException("action of [" + rule.getKey() + "] must be a string");
+                }
+                parsed.put(ContentSniffer.ContentType.fromString(rule.getKey()),
+                        ContentSniffer.Action.fromString((String) rule.getValue()));
+            }
+        } catch (IllegalArgumentException e) {
+            throw newConfigurationException(processorType, processorTag, propertyName, e);
+        }
+        ContentSniffer sniffer = new ContentSniffer(parsed);
+        return sniffer.isPassThrough() ? null : sniffer;
+    }
+
+    static TimeValue readOptionalTimeValueProperty(String processorType, String processorTag, Map<String, Object> configuration, String propertyName) {
+        String value = readOptionalStringProperty(processorType, processorTag, configuration, propertyName);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return TimeValue.parseTimeValue(value, propertyName);
+        } catch (IllegalArgumentException e) {
+            throw newConfigurationException(processorType, processorTag, propertyName, e);
+        }
+    }
+
+    static ByteSizeValue readOptionalByteSizeProperty(String processorType, String processorTag, Map<String, Object> configuration, String propertyName) {
+        Object value = configuration.remove(propertyName);
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value instanceof Number) {
+                return new ByteSizeValue(((Number) value).longValue());
+            }
+            return ByteSizeValue.parseBytesSizeValue(value.toString(), propertyName);
+        } catch (OpenSearchParseException | IllegalArgumentException e) {
+            throw newConfigurationException(processorType, processorTag, propertyName, e);
+        }
     }
 
     static String readStringOrDoubleProperty(String processorType, String processorTag, Map<String, Object> configuration, String propertyName, String defaultValue) {
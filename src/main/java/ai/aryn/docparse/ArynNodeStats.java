@@ -0,0 +1,430 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aryn stats of one node: the partition executor and its lanes, the result cache, the concurrency limiters, the partitioner
+ * endpoints, the deferred job workers and the {@link ProcessorStats} of every processor tag.
+ */
+public class ArynNodeStats implements Writeable, ToXContentFragment {
+
+    private final int executorActive;
+    private final int executorQueued;
+    private final List<LaneStats> lanes;
+    private final CacheStats cache;
+    private final List<LimiterStats> limiters;
+    private final List<EndpointStats> endpoints;
+    private final DeferredStats deferred;
+    private final Map<String, ProcessorStats.Snapshot> processors;
+
+    public ArynNodeStats(int executorActive, int executorQueued, List<LaneStats> lanes, CacheStats cache,
+                         List<LimiterStats> limiters, List<EndpointStats> endpoints, DeferredStats deferred,
+                         Map<String, ProcessorStats.Snapshot> processors) {
+        this.executorActive = executorActive;
+        this.executorQueued = executorQueued;
+        this.lanes = lanes;
+        this.cache = cache;
+        this.limiters = limiters;
+        this.endpoints = endpoints;
+        this.deferred = deferred;
+        this.processors = processors;
+    }
+
+    public ArynNodeStats(StreamInput in) throws IOException {
+        this.executorActive = in.readVInt();
+        this.executorQueued = in.readVInt();
+        this.lanes = in.readList(LaneStats::new);
+        this.cache = in.readOptionalWriteable(CacheStats::new);
+        this.limiters = in.readList(LimiterStats::new);
+        this.endpoints = in.readList(EndpointStats::new);
+        this.deferred = in.readOptionalWriteable(DeferredStats::new);
+        this.processors = new TreeMap<>(in.readMap(StreamInput::readString, ProcessorStats.Snapshot::new));
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(executorActive);
+        out.writeVInt(executorQueued);
+        out.writeList(lanes);
+        out.writeOptionalWriteable(cache);
+        out.writeList(limiters);
+        out.writeList(endpoints);
+        out.writeOptionalWriteable(deferred);
+        out.writeMap(processors, StreamOutput::writeString, (o, snapshot) -> snapshot.writeTo(o));
+    }
+
+    public int getExecutorActive() {
+        return executorActive;
+    }
+
+    public int getExecutorQueued() {
+        return executorQueued;
+    }
+
+    public List<LaneStats> getLanes() {
+        return lanes;
+    }
+
+    public CacheStats getCache() {
+        return cache;
+    }
+
+    public List<LimiterStats> getLimiters() {
+        return limiters;
+    }
+
+    public List<EndpointStats> getEndpoints() {
+        return endpoints;
+    }
+
+    public DeferredStats getDeferred() {
+        return deferred;
+    }
+
+    public Map<String, ProcessorStats.Snapshot> getProcessors() {
+        return processors;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("executor");
+        builder.field("active", executorActive);
+        builder.field("queued", executorQueued);
+        builder.startObject("lanes");
+        for (LaneStats lane : lanes) {
+            builder.startObject(lane.getLane());
+            lane.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.endObject();
+        if (cache != null) {
+            builder.startObject("cache");
+            cache.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.startArray("limiters");
+        for (LimiterStats limiter : limiters) {
+            builder.startObject();
+            limiter.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.startArray("endpoints");
+        for (EndpointStats endpoint : endpoints) {
+            builder.startObject();
+            endpoint.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        if (deferred != null) {
+            builder.startObject("deferred");
+            deferred.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.startObject("processors");
+        for (Map.Entry<String, ProcessorStats.Snapshot> entry : processors.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * State of one lane of the {@link PartitionExecutor}.
+     */
+    public static class LaneStats implements Writeable, ToXContentFragment {
+        private final String lane;
+        private final int active;
+        private final int queued;
+        private final long started;
+        private final LatencyHistogram.Snapshot waitTime;
+
+        public LaneStats(String lane, int active, int queued, long started, LatencyHistogram.Snapshot waitTime) {
+            this.lane = lane;
+            this.active = active;
+            this.queued = queued;
+            this.started = started;
+            this.waitTime = waitTime;
+        }
+
+        LaneStats(StreamInput in) throws IOException {
+            this(in.readString(), in.readVInt(), in.readVInt(), in.readVLong(), new LatencyHistogram.Snapshot(in));
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(lane);
+            out.writeVInt(active);
+            out.writeVInt(queued);
+            out.writeVLong(started);
+            waitTime.writeTo(out);
+        }
+
+        public String getLane() {
+            return lane;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getStarted() {
+            return started;
+        }
+
+        public LatencyHistogram.Snapshot getWaitTime() {
+            return waitTime;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("active", active);
+            builder.field("queued", queued);
+            builder.field("started", started);
+            builder.startObject("wait_time");
+            waitTime.toXContent(builder, params);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    /**
+     * Counters of the node level {@link PartitionCache}.
+     */
+    public static class CacheStats implements Writeable, ToXContentFragment {
+        private final long memoryHits;
+        private final long diskHits;
+        private final long misses;
+        private final long memoryBytes;
+        private final long diskBytes;
+
+        public CacheStats(long memoryHits, long diskHits, long misses, long memoryBytes, long diskBytes) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.memoryBytes = memoryBytes;
+            this.diskBytes = diskBytes;
+        }
+
+        CacheStats(StreamInput in) throws IOException {
+            this(in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(memoryHits);
+            out.writeVLong(diskHits);
+            out.writeVLong(misses);
+            out.writeVLong(memoryBytes);
+            out.writeVLong(diskBytes);
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("memory_hits", memoryHits);
+            builder.field("disk_hits", diskHits);
+            builder.field("misses", misses);
+            builder.field("memory_size_in_bytes", memoryBytes);
+            builder.field("disk_size_in_bytes", diskBytes);
+            return builder;
+        }
+    }
+
+    /**
+     * State of one {@link AdaptiveConcurrencyLimiter}.
+     */
+    public static class LimiterStats implements Writeable, ToXContentFragment {
+        private final String endpoint;
+        private final int limit;
+        private final int inFlight;
+        private final long rejected;
+
+        public LimiterStats(String endpoint, int limit, int inFlight, long rejected) {
+            this.endpoint = endpoint;
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.rejected = rejected;
+        }
+
+        LimiterStats(StreamInput in) throws IOException {
+            this(in.readString(), in.readVInt(), in.readVInt(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(endpoint);
+            out.writeVInt(limit);
+            out.writeVInt(inFlight);
+            out.writeVLong(rejected);
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("endpoint", endpoint);
+            builder.field("limit", limit);
+            builder.field("in_flight", inFlight);
+            builder.field("rejected", rejected);
+            return builder;
+        }
+    }
+
+    /**
+     * State of one {@link ArynEndpoint}, as seen by the load balancing of the endpoint pools.
+     */
+    public static class EndpointStats implements Writeable, ToXContentFragment {
+        private final String endpoint;
+        private final int outstanding;
+        private final long calls;
+        private final long failures;
+        private final long latencyMicros;
+        private final boolean ejected;
+        private final long ejections;
+
+        public EndpointStats(String endpoint, int outstanding, long calls, long failures, long latencyMicros,
+                             boolean ejected, long ejections) {
+            this.endpoint = endpoint;
+            this.outstanding = outstanding;
+            this.calls = calls;
+            this.failures = failures;
+            this.latencyMicros = latencyMicros;
+            this.ejected = ejected;
+            this.ejections = ejections;
+        }
+
+        EndpointStats(StreamInput in) throws IOException {
+            this(in.readString(), in.readVInt(), in.readVLong(), in.readVLong(), in.readZLong(), in.readBoolean(),
+                    in.readVLong());
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(endpoint);
+            out.writeVInt(outstanding);
+            out.writeVLong(calls);
+            out.writeVLong(failures);
+            out.writeZLong(latencyMicros);
+            out.writeBoolean(ejected);
+            out.writeVLong(ejections);
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public boolean isEjected() {
+            return ejected;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("endpoint", endpoint);
+            builder.field("outstanding", outstanding);
+            builder.field("calls", calls);
+            builder.field("failures", failures);
+            // -1 until the endpoint answered a call since it was added or last ejected
+            builder.field("avg_latency_in_micros", latencyMicros);
+            builder.field("ejected", ejected);
+            builder.field("ejections", ejections);
+            return builder;
+        }
+    }
+
+    /**
+     * Counters of this node's {@link DeferredJobQueue} workers; jobs enqueued here may run on any node.
+     */
+    public static class DeferredStats implements Writeable, ToXContentFragment {
+        private final int running;
+        private final long enqueued;
+        private final long completed;
+        private final long retried;
+        private final long deadLettered;
+
+        public DeferredStats(int running, long enqueued, long completed, long retried, long deadLettered) {
+            this.running = running;
+            this.enqueued = enqueued;
+            this.completed = completed;
+            this.retried = retried;
+            this.deadLettered = deadLettered;
+        }
+
+        DeferredStats(StreamInput in) throws IOException {
+            this(in.readVInt(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(running);
+            out.writeVLong(enqueued);
+            out.writeVLong(completed);
+            out.writeVLong(retried);
+            out.writeVLong(deadLettered);
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getDeadLettered() {
+            return deadLettered;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("running", running);
+            builder.field("enqueued", enqueued);
+            builder.field("completed", completed);
+            builder.field("retried", retried);
+            builder.field("dead_lettered", deadLettered);
+            return builder;
+        }
+    }
+}
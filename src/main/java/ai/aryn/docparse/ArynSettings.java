@@ -0,0 +1,290 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeUnit;
+import org.opensearch.core.common.unit.ByteSizeValue;
+
+import java.util.List;
+
+/**
+ * Node level settings of the Aryn plugin.
+ */
+public final class ArynSettings {
+
+    private ArynSettings() {}
+
+    /**
+     * Maximum number of partition calls running at the same time on a node.
+     */
+    public static final Setting<Integer> PARTITION_POOL_SIZE = Setting.intSetting(
+            "plugins.aryn.partition.pool_size", 16, 1, Setting.Property.NodeScope);
+
+    /**
+     * Maximum number of partition calls waiting for a free slot before new ones are rejected.
+     */
+    public static final Setting<Integer> PARTITION_QUEUE_SIZE = Setting.intSetting(
+            "plugins.aryn.partition.queue_size", 1000, 0, Setting.Property.NodeScope);
+
+    /**
+     * Decoded input size from which a document waits in the large lane of the partition executor, -1 for one lane.
+     */
+    public static final Setting<ByteSizeValue> PARTITION_LARGE_THRESHOLD = Setting.byteSizeSetting(
+            "plugins.aryn.partition.large_threshold", new ByteSizeValue(5, ByteSizeUnit.MB), Setting.Property.NodeScope);
+
+    /**
+     * Fraction of the pool documents of the large lane may hold at once, at least one slot.
+     */
+    public static final Setting<Double> PARTITION_LARGE_SHARE = Setting.doubleSetting(
+            "plugins.aryn.partition.large_share", 0.5, 0.0, 1.0, Setting.Property.NodeScope);
+
+    /**
+     * Documents of the small lane started for every document of the large lane while both wait.
+     */
+    public static final Setting<Integer> PARTITION_SMALL_WEIGHT = Setting.intSetting(
+            "plugins.aryn.partition.small_weight", 4, 1, Setting.Property.NodeScope);
+
+    /**
+     * Whether partition results are cached on this node.
+     */
+    public static final Setting<Boolean> CACHE_ENABLED = Setting.boolSetting(
+            "plugins.aryn.cache.enabled", true, Setting.Property.NodeScope);
+
+    /**
+     * Heap used by the in-memory tier of the partition result cache.
+     */
+    public static final Setting<ByteSizeValue> CACHE_SIZE = Setting.byteSizeSetting(
+            "plugins.aryn.cache.size", new ByteSizeValue(64, ByteSizeUnit.MB), Setting.Property.NodeScope);
+
+    /**
+     * How long a cached partition result stays valid.
+     */
+    public static final Setting<TimeValue> CACHE_TTL = Setting.positiveTimeSetting(
+            "plugins.aryn.cache.ttl", TimeValue.timeValueHours(24), Setting.Property.NodeScope);
+
+    /**
+     * Whether cached partition results are also kept under the node data path, surviving restarts.
+     */
+    public static final Setting<Boolean> CACHE_DISK_ENABLED = Setting.boolSetting(
+            "plugins.aryn.cache.disk.enabled", false, Setting.Property.NodeScope);
+
+    /**
+     * Disk space used by the on-disk tier of the partition result cache.
+     */
+    public static final Setting<ByteSizeValue> CACHE_DISK_SIZE = Setting.byteSizeSetting(
+            "plugins.aryn.cache.disk.size", new ByteSizeValue(1, ByteSizeUnit.GB), Setting.Property.NodeScope);
+
+    /**
+     * Consecutive server failures after which calls to an endpoint fail fast.
+     */
+    public static final Setting<Integer> CIRCUIT_BREAKER_FAILURE_THRESHOLD = Setting.intSetting(
+            "plugins.aryn.circuit_breaker.failure_threshold", 5, 1, Setting.Property.NodeScope);
+
+    /**
+     * How long calls to a failing endpoint fail fast before a probe call is let through.
+     */
+    public static final Setting<TimeValue> CIRCUIT_BREAKER_OPEN_DURATION = Setting.positiveTimeSetting(
+            "plugins.aryn.circuit_breaker.open_duration", TimeValue.timeValueSeconds(30), Setting.Property.NodeScope);
+
+    /**
+     * Maximum number of pooled connections of each Aryn client.
+     */
+    public static final Setting<Integer> CLIENT_MAX_CONNECTIONS = Setting.intSetting(
+            "plugins.aryn.client.max_connections", 32, 1, Setting.Property.NodeScope);
+
+    /**
+     * How long a pooled connection is kept alive and reused.
+     */
+    public static final Setting<TimeValue> CLIENT_KEEP_ALIVE = Setting.positiveTimeSetting(
+            "plugins.aryn.client.keep_alive", TimeValue.timeValueSeconds(60), Setting.Property.NodeScope);
+
+    /**
+     * Whether partition calls per endpoint and API key go through an adaptive concurrency limiter.
+     */
+    public static final Setting<Boolean> LIMITER_ENABLED = Setting.boolSetting(
+            "plugins.aryn.limiter.enabled", true, Setting.Property.NodeScope);
+
+    /**
+     * Concurrency limit an endpoint starts with.
+     */
+    public static final Setting<Integer> LIMITER_INITIAL_LIMIT = Setting.intSetting(
+            "plugins.aryn.limiter.initial_limit", 8, 1, Setting.Property.NodeScope);
+
+    /**
+     * Highest concurrency limit an endpoint can grow to.
+     */
+    public static final Setting<Integer> LIMITER_MAX_LIMIT = Setting.intSetting(
+            "plugins.aryn.limiter.max_limit", 64, 1, Setting.Property.NodeScope);
+
+    /**
+     * How long a call over the limit waits for a slot before it is rejected.
+     */
+    public static final Setting<TimeValue> LIMITER_QUEUE_TIMEOUT = Setting.timeSetting(
+            "plugins.aryn.limiter.queue_timeout", TimeValue.timeValueSeconds(1), TimeValue.ZERO, Setting.Property.NodeScope);
+
+    /**
+     * Short-term over long-term latency ratio above which the limit is lowered.
+     */
+    public static final Setting<Double> LIMITER_LATENCY_TOLERANCE = Setting.doubleSetting(
+            "plugins.aryn.limiter.latency_tolerance", 2.0, 1.0, Setting.Property.NodeScope);
+
+    /**
+     * Whether partition results are also kept in a system index shared by the whole cluster.
+     */
+    public static final Setting<Boolean> RESULT_STORE_ENABLED = Setting.boolSetting(
+            "plugins.aryn.result_store.enabled", false, Setting.Property.NodeScope);
+
+    /**
+     * How long a result in the cluster wide store stays valid.
+     */
+    public static final Setting<TimeValue> RESULT_STORE_TTL = Setting.positiveTimeSetting(
+            "plugins.aryn.result_store.ttl", TimeValue.timeValueDays(7), Setting.Property.NodeScope);
+
+    /**
+     * Number of results the cleanup job keeps in the cluster wide store, oldest are removed first.
+     */
+    public static final Setting<Long> RESULT_STORE_MAX_ENTRIES = Setting.longSetting(
+            "plugins.aryn.result_store.max_entries", 100_000, 1, Setting.Property.NodeScope);
+
+    /**
+     * How often the elected cluster manager runs the cleanup job of the cluster wide store.
+     */
+    public static final Setting<TimeValue> RESULT_STORE_CLEANUP_INTERVAL = Setting.positiveTimeSetting(
+            "plugins.aryn.result_store.cleanup_interval", TimeValue.timeValueHours(1), Setting.Property.NodeScope);
+
+    /**
+     * How long a blocking lookup waits for the cluster wide store, and a search or delete of its cleanup runs.
+     */
+    public static final Setting<TimeValue> RESULT_STORE_TIMEOUT = Setting.positiveTimeSetting(
+            "plugins.aryn.result_store.timeout", TimeValue.timeValueSeconds(5), Setting.Property.NodeScope);
+
+    /**
+     * Heap that documents being partitioned may hold at once, as accounted by the {@code aryn} circuit breaker.
+     */
+    public static final Setting<ByteSizeValue> BREAKER_LIMIT = Setting.memorySizeSetting(
+            "plugins.aryn.breaker.limit", "10%", Setting.Property.NodeScope);
+
+    /**
+     * Factor applied to the estimated bytes of each document before they are checked against the limit.
+     */
+    public static final Setting<Double> BREAKER_OVERHEAD = Setting.doubleSetting(
+            "plugins.aryn.breaker.overhead", 1.0, 0.0, Setting.Property.NodeScope);
+
+    /**
+     * How often the endpoints that have a {@code health_check_path} are checked.
+     */
+    public static final Setting<TimeValue> ENDPOINT_HEALTH_CHECK_INTERVAL = Setting.positiveTimeSetting(
+            "plugins.aryn.endpoints.health_check_interval", TimeValue.timeValueSeconds(10), Setting.Property.NodeScope);
+
+    /**
+     * How long a health check waits for the endpoint's answer.
+     */
+    public static final Setting<TimeValue> ENDPOINT_HEALTH_CHECK_TIMEOUT = Setting.positiveTimeSetting(
+            "plugins.aryn.endpoints.health_check_timeout", TimeValue.timeValueSeconds(2), Setting.Property.NodeScope);
+
+    /**
+     * How long an endpoint that is much slower than the rest of its pool gets no calls.
+     */
+    public static final Setting<TimeValue> ENDPOINT_EJECTION_DURATION = Setting.positiveTimeSetting(
+            "plugins.aryn.endpoints.ejection_duration", TimeValue.timeValueSeconds(30), Setting.Property.NodeScope);
+
+    /**
+     * Multiple of the fastest endpoint's average latency, for calls of similar size, above which an endpoint of a pool
+     * is ejected, 0 disables.
+     */
+    public static final Setting<Double> ENDPOINT_SLOW_FACTOR = Setting.doubleSetting(
+            "plugins.aryn.endpoints.slow_factor", 3.0, 0.0, Setting.Property.NodeScope);
+
+    /**
+     * Documents taking longer than this in an Aryn processor are logged at warn level by the slow log, -1 disables.
+     */
+    public static final Setting<TimeValue> SLOWLOG_THRESHOLD_WARN = Setting.timeSetting(
+            "plugins.aryn.slowlog.threshold.warn", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    public static final Setting<TimeValue> SLOWLOG_THRESHOLD_INFO = Setting.timeSetting(
+            "plugins.aryn.slowlog.threshold.info", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    public static final Setting<TimeValue> SLOWLOG_THRESHOLD_DEBUG = Setting.timeSetting(
+            "plugins.aryn.slowlog.threshold.debug", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    public static final Setting<TimeValue> SLOWLOG_THRESHOLD_TRACE = Setting.timeSetting(
+            "plugins.aryn.slowlog.threshold.trace", TimeValue.MINUS_ONE, TimeValue.MINUS_ONE,
+            Setting.Property.NodeScope, Setting.Property.Dynamic);
+
+    /**
+     * Number of deferred jobs a node partitions at the same time, 0 leaves the jobs to other nodes.
+     */
+    public static final Setting<Integer> DEFERRED_WORKERS = Setting.intSetting(
+            "plugins.aryn.deferred.workers", 4, 0, Setting.Property.NodeScope);
+
+    /**
+     * Deferred jobs a node starts per second at most, 0 for no limit besides the workers.
+     */
+    public static final Setting<Double> DEFERRED_MAX_RATE = Setting.doubleSetting(
+            "plugins.aryn.deferred.max_rate", 0.0, 0.0, Setting.Property.NodeScope);
+
+    /**
+     * How often a node looks for deferred jobs that are due.
+     */
+    public static final Setting<TimeValue> DEFERRED_POLL_INTERVAL = Setting.positiveTimeSetting(
+            "plugins.aryn.deferred.poll_interval", TimeValue.timeValueSeconds(1), Setting.Property.NodeScope);
+
+    /**
+     * Attempts of a deferred job before it is dead-lettered.
+     */
+    public static final Setting<Integer> DEFERRED_MAX_ATTEMPTS = Setting.intSetting(
+            "plugins.aryn.deferred.max_attempts", 5, 1, Setting.Property.NodeScope);
+
+    /**
+     * Delay before the first retry of a failed deferred job, doubled on every further attempt.
+     */
+    public static final Setting<TimeValue> DEFERRED_RETRY_BACKOFF = Setting.positiveTimeSetting(
+            "plugins.aryn.deferred.retry_backoff", TimeValue.timeValueSeconds(30), Setting.Property.NodeScope);
+
+    /**
+     * How long a claimed deferred job belongs to its node; a job still running after that is claimed again.
+     */
+    public static final Setting<TimeValue> DEFERRED_LEASE = Setting.positiveTimeSetting(
+            "plugins.aryn.deferred.lease", TimeValue.timeValueMinutes(10), Setting.Property.NodeScope);
+
+    /**
+     * How long an operation on the deferred job index waits.
+     */
+    public static final Setting<TimeValue> DEFERRED_TIMEOUT = Setting.positiveTimeSetting(
+            "plugins.aryn.deferred.timeout", TimeValue.timeValueSeconds(10), Setting.Property.NodeScope);
+
+    public static List<Setting<?>> getAllSettings() {
+        return List.of(PARTITION_POOL_SIZE, PARTITION_QUEUE_SIZE,
+                PARTITION_LARGE_THRESHOLD, PARTITION_LARGE_SHARE, PARTITION_SMALL_WEIGHT,
+                CACHE_ENABLED, CACHE_SIZE, CACHE_TTL, CACHE_DISK_ENABLED, CACHE_DISK_SIZE,
+                CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_DURATION,
+                CLIENT_MAX_CONNECTIONS, CLIENT_KEEP_ALIVE,
+                LIMITER_ENABLED, LIMITER_INITIAL_LIMIT, LIMITER_MAX_LIMIT, LIMITER_QUEUE_TIMEOUT, LIMITER_LATENCY_TOLERANCE,
+                RESULT_STORE_ENABLED, RESULT_STORE_TTL, RESULT_STORE_MAX_ENTRIES, RESULT_STORE_CLEANUP_INTERVAL,
+                RESULT_STORE_TIMEOUT, BREAKER_LIMIT, BREAKER_OVERHEAD,
+                ENDPOINT_HEALTH_CHECK_INTERVAL, ENDPOINT_HEALTH_CHECK_TIMEOUT, ENDPOINT_EJECTION_DURATION, ENDPOINT_SLOW_FACTOR,
+                SLOWLOG_THRESHOLD_WARN, SLOWLOG_THRESHOLD_INFO, SLOWLOG_THRESHOLD_DEBUG, SLOWLOG_THRESHOLD_TRACE,
+                DEFERRED_WORKERS, DEFERRED_MAX_RATE, DEFERRED_POLL_INTERVAL, DEFERRED_MAX_ATTEMPTS, DEFERRED_RETRY_BACKOFF,
+                DEFERRED_LEASE, DEFERRED_TIMEOUT);
+    }
+}
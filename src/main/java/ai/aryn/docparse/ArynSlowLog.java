@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.ingest.IngestDocument;
+
+/**
+ * Logs the documents whose run through an Aryn processor took longer than a threshold, with their
+ * {@link StageTimings}. Like the index slow log there is a threshold per level, each disabled with -1, and the
+ * highest level whose threshold is exceeded is used. Its logger, {@code ai.aryn.docparse.ArynSlowLog}, can be
+ * routed to its own file in {@code log4j2.properties}.
+ */
+@Log4j2
+public class ArynSlowLog {
+
+    private volatile long warnNanos;
+    private volatile long infoNanos;
+    private volatile long debugNanos;
+    private volatile long traceNanos;
+
+    public ArynSlowLog(Settings settings) {
+        setWarnThreshold(ArynSettings.SLOWLOG_THRESHOLD_WARN.get(settings));
+        setInfoThreshold(ArynSettings.SLOWLOG_THRESHOLD_INFO.get(settings));
+        setDebugThreshold(ArynSettings.SLOWLOG_THRESHOLD_DEBUG.get(settings));
+        setTraceThreshold(ArynSettings.SLOWLOG_THRESHOLD_TRACE.get(settings));
+    }
+
+    /**
+     * Follows updates of the thresholds through the cluster settings API.
+     */
+    public void watch(ClusterSettings clusterSettings) {
+        clusterSettings.addSettingsUpdateConsumer(ArynSettings.SLOWLOG_THRESHOLD_WARN, this::setWarnThreshold);
+        clusterSettings.addSettingsUpdateConsumer(ArynSettings.SLOWLOG_THRESHOLD_INFO, this::setInfoThreshold);
+        clusterSettings.addSettingsUpdateConsumer(ArynSettings.SLOWLOG_THRESHOLD_DEBUG, this::setDebugThreshold);
+        clusterSettings.addSettingsUpdateConsumer(ArynSettings.SLOWLOG_THRESHOLD_TRACE, this::setTraceThreshold);
+    }
+
+    void setWarnThreshold(TimeValue threshold) {
+        warnNanos = threshold.nanos();
+    }
+
+    void setInfoThreshold(TimeValue threshold) {
+        infoNanos = threshold.nanos();
+    }
+
+    void setDebugThreshold(TimeValue threshold) {
+        debugNanos = threshold.nanos();
+    }
+
+    void setTraceThreshold(TimeValue threshold) {
+        traceNanos = threshold.nanos();
+    }
+
+    /**
+     * The level a document that took {@code tookNanos} is logged at, null when it was fast enough.
+     */
+    Level levelFor(long tookNanos) {
+        if (warnNanos >= 0 && tookNanos > warnNanos) {
+            return Level.WARN;
+        } else if (infoNanos >= 0 && tookNanos > infoNanos) {
+            return Level.INFO;
+        } else if (debugNanos >= 0 && tookNanos > debugNanos) {
+            return Level.DEBUG;
+        } else if (traceNanos >= 0 && tookNanos > traceNanos) {
+            return Level.TRACE;
+        }
+        return null;
+    }
+
+    public void maybeLog(String tag, IngestDocument document, StageTimings timings, boolean failed) {
+        long took = timings.getTotalNanos();
+        Level level = levelFor(took);
+        if (level == null || !log.isEnabled(level)) {
+            return;
+        }
+        log.log(level, "[{}] took[{}], took_millis[{}], stages[{}], aryn_call_id{}, index[{}], id[{}], input_bytes[{}], failed[{}]",
+                tag == null ? ArynStats.UNTAGGED : tag, TimeValue.timeValueNanos(took), took / 1_000_000, timings,
+                timings.getCallIds(), metadata(document, IngestDocument.Metadata.INDEX),
+                metadata(document, IngestDocument.Metadata.ID), timings.getInputBytes(), failed);
+    }
+
+    private static Object metadata(IngestDocument document, IngestDocument.Metadata field) {
+        return document == null ? null : document.getFieldValue(field.getFieldName(), Object.class, true);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node level home of the Aryn stats. Processors record into the {@link ProcessorStats} of their tag; the
+ * executor, cache, limiters and endpoints of the node are read when a snapshot is taken for {@code _plugins/_aryn/stats}.
+ */
+public class ArynStats {
+
+    static final String UNTAGGED = "_untagged";
+
+    private final Map<String, ProcessorStats> processors = new ConcurrentHashMap<>();
+    private volatile PartitionExecutor executor;
+    private volatile PartitionCache cache;
+    private volatile AdaptiveConcurrencyLimiter.Registry limiters;
+    private volatile ArynEndpoint.Registry endpoints;
+    private volatile DeferredJobQueue deferredQueue;
+
+    /**
+     * Registers the node components whose state is reported next to the processor stats. Any of them may be null.
+     */
+    public void register(PartitionExecutor executor, PartitionCache cache, AdaptiveConcurrencyLimiter.Registry limiters,
+                         ArynEndpoint.Registry endpoints, DeferredJobQueue deferredQueue) {
+        this.executor = executor;
+        this.cache = cache;
+        this.limiters = limiters;
+        this.endpoints = endpoints;
+        this.deferredQueue = deferredQueue;
+    }
+
+    /**
+     * Stats shared by every processor with this tag, so pipelines re-created on update keep counting.
+     */
+    public ProcessorStats forProcessor(String tag) {
+        return processors.computeIfAbsent(tag == null ? UNTAGGED : tag, k -> new ProcessorStats());
+    }
+
+    public ArynNodeStats snapshot() {
+        Map<String, ProcessorStats.Snapshot> processorSnapshots = new TreeMap<>();
+        processors.forEach((tag, stats) -> processorSnapshots.put(tag, stats.snapshot()));
+        PartitionExecutor executor = this.executor;
+        PartitionCache cache = this.cache;
+        AdaptiveConcurrencyLimiter.Registry limiters = this.limiters;
+        List<ArynNodeStats.LimiterStats> limiterStats = new ArrayList<>();
+        if (limiters != null) {
+            for (AdaptiveConcurrencyLimiter limiter : limiters.getLimiters()) {
+                limiterStats.add(new ArynNodeStats.LimiterStats(limiter.getName(), limiter.getLimit(),
+                        limiter.getInFlight(), limiter.getRejected()));
+            }
+        }
+        ArynEndpoint.Registry endpoints = this.endpoints;
+        List<ArynNodeStats.EndpointStats> endpointStats = new ArrayList<>();
+        if (endpoints != null) {
+            for (ArynEndpoint endpoint : endpoints.getEndpoints()) {
+                endpointStats.add(new ArynNodeStats.EndpointStats(endpoint.getUrl(), endpoint.getOutstanding(),
+                        endpoint.getCalls(), endpoint.getFailures(), endpoint.getLatencyMicros(1), endpoint.isEjected(),
+                        endpoint.getEjections()));
+            }
+        }
+        DeferredJobQueue deferredQueue = this.deferredQueue;
+        return new ArynNodeStats(
+                executor == null ? 0 : executor.getActiveCount(),
+                executor == null ? 0 : executor.getQueueCount(),
+                executor == null ? List.of() : executor.getLaneStats(),
+                cache == null ? null : new ArynNodeStats.CacheStats(cache.getMemoryHits(), cache.getDiskHits(),
+                        cache.getMisses(), cache.getMemoryBytes(), cache.getDiskBytes()),
+                limiterStats, endpointStats,
+                deferredQueue == null ? null : new ArynNodeStats.DeferredStats(deferredQueue.getRunning(),
+                        deferredQueue.getEnqueued(), deferredQueue.getCompleted(), deferredQueue.getRetried(),
+                        deferredQueue.getDeadLettered()),
+                processorSnapshots);
+    }
+}
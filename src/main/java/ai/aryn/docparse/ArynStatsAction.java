@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.action.ActionType;
+
+/**
+ * Collects the {@link ArynNodeStats} of the selected nodes.
+ */
+public class ArynStatsAction extends ActionType<ArynStatsResponse> {
+
+    public static final String NAME = "cluster:monitor/aryn/stats";
+    public static final ArynStatsAction INSTANCE = new ArynStatsAction();
+
+    private ArynStatsAction() {
+        super(NAME, ArynStatsResponse::new);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.nodes.BaseNodesResponse;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stats of every node that answered, plus the processor stats summed over those nodes, rendered like
+ * {@code _nodes/stats}.
+ */
+public class ArynStatsResponse extends BaseNodesResponse<ArynStatsNodeResponse> implements ToXContentFragment {
+
+    public ArynStatsResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public ArynStatsResponse(ClusterName clusterName, List<ArynStatsNodeResponse> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<ArynStatsNodeResponse> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(ArynStatsNodeResponse::new);
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<ArynStatsNodeResponse> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    /**
+     * Processor stats per tag summed over all nodes; counters add up and the latency histograms are merged
+     * bucket by bucket, so the percentiles are cluster wide and not an average of node percentiles.
+     */
+    public Map<String, ProcessorStats.Snapshot> getClusterProcessors() {
+        Map<String, ProcessorStats.Snapshot> merged = new TreeMap<>();
+        for (ArynStatsNodeResponse node : getNodes()) {
+            node.getStats().getProcessors().forEach((tag, snapshot) -> merged.merge(tag, snapshot, ProcessorStats.Snapshot::merge));
+        }
+        return merged;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("processors");
+        for (Map.Entry<String, ProcessorStats.Snapshot> entry : getClusterProcessors().entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.startObject("nodes");
+        for (ArynStatsNodeResponse node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            builder.field("name", node.getNode().getName());
+            node.getStats().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.threadpool.Scheduler;
+
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Polls asynchronous partition jobs on the node's shared scheduler. Between two polls a waiting document is
+ * only a scheduled task: no thread is parked and no connection is held. Each poll is a short GET run on the
+ * {@link PartitionExecutor}, made by the processor through the same permissions, limiter and circuit breaker as
+ * its other calls.
+ */
+@Log4j2
+public class AsyncPartitionPoller {
+
+    private final BiFunction<Long, Runnable, Scheduler.ScheduledCancellable> scheduler;
+    private final PartitionExecutor executor;
+    private final LongSupplier nanoClock;
+
+    public AsyncPartitionPoller(BiFunction<Long, Runnable, Scheduler.ScheduledCancellable> scheduler, PartitionExecutor executor) {
+        this(scheduler, executor, System::nanoTime);
+    }
+
+    AsyncPartitionPoller(BiFunction<Long, Runnable, Scheduler.ScheduledCancellable> scheduler, PartitionExecutor executor,
+                         LongSupplier nanoClock) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Polls the job every {@code interval} until it has a result, it fails, or {@code timeout} has passed.
+     * Transient poll failures are tolerated up to {@code maxRetries} in a row.
+     */
+    public void poll(String taskId, TimeValue interval, TimeValue timeout, int maxRetries, Poll poll,
+                     ActionListener<PartitionClient.Result> listener) {
+        new PollTask(taskId, interval, nanoClock.getAsLong() + timeout.nanos(), maxRetries, poll, listener).schedule();
+    }
+
+    /**
+     * One poll of a job: its result, or null while it is still running.
+     */
+    @FunctionalInterface
+    public interface Poll {
+        PartitionClient.Result poll() throws ApiException;
+    }
+
+    private final class PollTask {
+        private final String taskId;
+        private final TimeValue interval;
+        private final long deadlineNanos;
+        private final int maxRetries;
+        private final Poll poll;
+        private final ActionListener<PartitionClient.Result> listener;
+        private int failures;
+
+        PollTask(String taskId, TimeValue interval, long deadlineNanos, int maxRetries, Poll poll,
+                 ActionListener<PartitionClient.Result> listener) {
+            this.taskId = taskId;
+            this.interval = interval;
+            this.deadlineNanos = deadlineNanos;
+            this.maxRetries = maxRetries;
+            this.poll = poll;
+            this.listener = listener;
+        }
+
+        void schedule() {
+            scheduler.apply(interval.millis(), this::dispatch);
+        }
+
+        private void dispatch() {
+            // the scheduler thread only hands the poll over, the GET itself runs on the partition executor
+            try {
+                executor.execute(this::pollOnce);
+            } catch (OpenSearchRejectedExecutionException e) {
+                log.debug("Partition executor is full, postponing poll of Aryn task [{}]", taskId);
+                rescheduleOrTimeout();
+            }
+        }
+
+        private void pollOnce() {
+            PartitionClient.Result result;
+            try {
+                result = poll.poll();
+            } catch (OpenSearchRejectedExecutionException e) {
+                // the endpoint's limiter has no slot, the job keeps running meanwhile
+                log.debug("Endpoint is saturated, postponing poll of Aryn task [{}]", taskId);
+                rescheduleOrTimeout();
+                return;
+            } catch (ApiException e) {
+                if (RetryPolicy.isRetryable(e) && ++failures <= maxRetries) {
+                    log.warn("Polling Aryn task [{}] failed with status [{}], retry {} of {}",
+                            taskId, e.getCode(), failures, maxRetries);
+                    rescheduleOrTimeout();
+                } else {
+                    listener.onFailure(e);
+                }
+                return;
+            } catch (Exception e) {
+                listener.onFailure(e);
+                return;
+            }
+            failures = 0;
+            if (result != null) {
+                listener.onResponse(result);
+            } else {
+                rescheduleOrTimeout();
+            }
+        }
+
+        private void rescheduleOrTimeout() {
+            if (nanoClock.getAsLong() - deadlineNanos >= 0) {
+                listener.onFailure(new OpenSearchTimeoutException("Aryn task [{}] did not finish within the async timeout",
+                        taskId));
+                return;
+            }
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.tasks.TaskCancelledException;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The partition calls made for one document. They share the document's deadline and are aborted together,
+ * down to the http request, when the deadline passes or the group is cancelled. A group can have child groups,
+ * one per page range or per hedged attempt, that are cancelled with it but can also be cancelled on their own.
+ */
+public class CallGroup implements Cancellable {
+
+    private final CallGroup parent;
+    // runs the attempts of a call when it is timed or hedged, so the caller can give up on a stuck attempt
+    private final PartitionExecutor executor;
+    private final long deadlineNanos;
+    private final LongSupplier nanoClock;
+    private final Set<Cancellable> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile String cancelReason;
+
+    /**
+     * A group whose calls must finish within {@code timeoutNanos}, or never time out when it is negative. Timed and
+     * hedged attempts run on {@code executor}; without one they run on the calling thread, so a call is neither
+     * hedged nor given up on at the deadline.
+     */
+    public static CallGroup withTimeout(long timeoutNanos, PartitionExecutor executor) {
+        return withTimeout(timeoutNanos, executor, System::nanoTime);
+    }
+
+    static CallGroup withTimeout(long timeoutNanos, PartitionExecutor executor, LongSupplier nanoClock) {
+        return new CallGroup(null, executor,
+                timeoutNanos < 0 ? Long.MAX_VALUE : saturatedAdd(nanoClock.getAsLong(), timeoutNanos), nanoClock);
+    }
+
+    private CallGroup(CallGroup parent, PartitionExecutor executor, long deadlineNanos, LongSupplier nanoClock) {
+        this.parent = parent;
+        this.executor = executor;
+        this.deadlineNanos = deadlineNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * A group that shares this group's deadline and is cancelled with it.
+     */
+    public CallGroup child() {
+        CallGroup child = new CallGroup(this, executor, deadlineNanos, nanoClock);
+        register(child);
+        return child;
+    }
+
+    /**
+     * Tracks an http request or child group until {@link #unregister}. It is cancelled right away if the group
+     * already is.
+     */
+    public void register(Cancellable call) {
+        inFlight.add(call);
+        if (cancelReason != null) {
+            call.cancel();
+        }
+    }
+
+    public void unregister(Cancellable call) {
+        inFlight.remove(call);
+    }
+
+    @Override
+    public boolean cancel() {
+        return cancel("cancelled");
+    }
+
+    /**
+     * Aborts every call of the group and its children; later calls fail right away.
+     */
+    public boolean cancel(String reason) {
+        if (cancelReason != null) {
+            return false;
+        }
+        cancelReason = reason;
+        for (Cancellable call : inFlight) {
+            call.cancel();
+        }
+        if (parent != null) {
+            parent.unregister(this);
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != Long.MAX_VALUE;
+    }
+
+    public long remainingNanos() {
+        return hasDeadline() ? deadlineNanos - nanoClock.getAsLong() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Fails when the group was cancelled or its deadline has passed, to stop before the next attempt or backoff.
+     */
+    public void ensureActive() {
+        if (cancelReason != null) {
+            throw new TaskCancelledException("Aryn partition call " + cancelReason);
+        }
+        if (remainingNanos() <= 0) {
+            throw new OpenSearchTimeoutException("Aryn partition call did not finish within the document timeout");
+        }
+    }
+
+    /**
+     * Runs {@code primary} in a child group. When it has not answered after {@code hedgeDelayNanos} and
+     * {@code hedge} is set, runs {@code hedge} next to it in a second child group. The first attempt that
+     * succeeds wins and the other one is aborted; the call fails only when every attempt failed. When the
+     * deadline passes first, both attempts are aborted and the call times out. The hedge holds an admission
+     * permit of the executor while it runs and is not sent when the executor has none left.
+     *
+     * @param onHedge called when the hedge is sent
+     */
+    public <T> T call(Attempt<T> primary, Attempt<T> hedge, long hedgeDelayNanos, Runnable onHedge) throws ApiException {
+        ensureActive();
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        CallGroup first = start(primary, winner, pending, null);
+        CallGroup second = null;
+        try {
+            if (hedge != null && hedgeDelayNanos >= 0 && hedgeDelayNanos < remainingNanos()) {
+                try {
+                    winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    Releasable permit = executor == null ? null : executor.tryAdmitAttempt();
+                    if (permit != null) {
+                        pending.incrementAndGet();
+                        onHedge.run();
+                        second = start(hedge, winner, pending, permit);
+                    }
+                }
+            }
+            return awaitDeadline(winner);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ApiException) {
+                throw (ApiException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ApiException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel("interrupted");
+            throw new ApiException(e);
+        } finally {
+            // the loser, or every attempt after a timeout
+            first.cancel("superseded");
+            if (second != null) {
+                second.cancel("superseded");
+            }
+        }
+    }
+
+    private <T> CallGroup start(Attempt<T> attempt, CompletableFuture<T> winner, AtomicInteger pending,
+                                Releasable permit) {
+        CallGroup group = child();
+        Runnable run = () -> {
+            try {
+                winner.complete(attempt.call(group));
+            } catch (Throwable e) {
+                // a failed attempt only fails the call when no other attempt is left to answer
+                if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            } finally {
+                if (permit != null) {
+                    permit.close();
+                }
+            }
+        };
+        if (executor == null) {
+            run.run();
+        } else {
+            executor.executeAttempt(run);
+        }
+        return group;
+    }
+
+    private <T> T awaitDeadline(CompletableFuture<T> winner) throws ExecutionException, InterruptedException {
+        if (!hasDeadline()) {
+            return winner.get();
+        }
+        try {
+            return winner.get(Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel("timed out");
+            throw new OpenSearchTimeoutException("Aryn partition call did not finish within the document timeout");
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * One attempt of a call, making its requests in {@code group}.
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T call(CallGroup group) throws ApiException;
+    }
+}
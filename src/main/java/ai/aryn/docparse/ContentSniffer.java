@@ -0,0 +1,248 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Detects the content type of a document from its first bytes, without a MIME library, and decides per type
+ * whether the document goes to Aryn, has its text extracted locally, or is skipped. Binary formats are recognized
+ * by their magic bytes; markup, JSON and plain text by their first characters and by the prefix being valid UTF-8.
+ */
+public final class ContentSniffer {
+
+    public enum ContentType {
+        PDF, OFFICE, IMAGE, HTML, XML, JSON, TEXT, EMPTY, BINARY;
+
+        public static ContentType fromString(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown content type [" + value + "], expected one of "
+                        + List.of(values()).toString().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    public enum Action {
+        ARYN, TEXT, SKIP;
+
+        public static Action fromString(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown action [" + value + "], expected one of [aryn, text, skip]");
+            }
+        }
+    }
+
+    // enough for every magic number and for the start of markup behind a doctype or comment
+    static final int SNIFF_BYTES = 1024;
+
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZIP = { 'P', 'K', 3, 4 };
+    private static final byte[] OLE2 = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1 };
+    private static final byte[] RTF = "{\\rtf".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] IMAGES = {
+            { (byte) 0x89, 'P', 'N', 'G' },
+            { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },
+            { 'G', 'I', 'F', '8' },
+            { 'I', 'I', '*', 0 },
+            { 'M', 'M', 0, '*' },
+    };
+    private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private static final Pattern COMMENT = Pattern.compile("(?s)<!--.*?-->");
+    private static final Pattern HIDDEN = Pattern.compile("(?is)<(script|style|head)\\b.*?</\\1\\s*>");
+    private static final Pattern BLOCK = Pattern.compile(
+            "(?i)</?(p|div|br|li|tr|h[1-6]|section|article|table|ul|ol|blockquote|pre)\\b[^>]*>");
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SPACES = Pattern.compile("[ \\t\\x0B\\f\\r]+");
+
+    private final Map<ContentType, Action> rules;
+
+    /**
+     * @param rules the action per content type, types without a rule go to Aryn
+     */
+    public ContentSniffer(Map<ContentType, Action> rules) {
+        Map<ContentType, Action> all = new EnumMap<>(ContentType.class);
+        for (ContentType type : ContentType.values()) {
+            all.put(type, rules.getOrDefault(type, Action.ARYN));
+        }
+        this.rules = Collections.unmodifiableMap(all);
+    }
+
+    public Action actionFor(ContentType type) {
+        return rules.get(type);
+    }
+
+    /**
+     * Whether every content type goes to Aryn, in which case documents need not be sniffed at all.
+     */
+    public boolean isPassThrough() {
+        return rules.values().stream().allMatch(action -> action == Action.ARYN);
+    }
+
+    public static ContentType sniff(DocumentInput input) throws IOException {
+        if (input.length() == 0) {
+            return ContentType.EMPTY;
+        }
+        byte[] head;
+        try (InputStream in = input.openStream()) {
+            head = in.readNBytes(SNIFF_BYTES);
+        }
+        return sniff(head, head.length >= input.length());
+    }
+
+    /**
+     * @param complete whether {@code head} holds the whole document
+     */
+    static ContentType sniff(byte[] head, boolean complete) {
+        if (startsWith(head, 0, PDF)) {
+            return ContentType.PDF;
+        } else if (startsWith(head, 0, ZIP) || startsWith(head, 0, OLE2) || startsWith(head, 0, RTF)) {
+            return ContentType.OFFICE;
+        }
+        for (byte[] magic : IMAGES) {
+            if (startsWith(head, 0, magic)) {
+                return ContentType.IMAGE;
+            }
+        }
+        if (head.length >= 12 && startsWith(head, 0, new byte[] { 'R', 'I', 'F', 'F' })
+                && startsWith(head, 8, new byte[] { 'W', 'E', 'B', 'P' })) {
+            return ContentType.IMAGE;
+        }
+        int start = startsWith(head, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+        String text = decodeUtf8(head, start, complete);
+        if (text == null) {
+            return ContentType.BINARY;
+        }
+        String trimmed = text.stripLeading();
+        if (trimmed.isEmpty()) {
+            return complete ? ContentType.EMPTY : ContentType.TEXT;
+        }
+        char first = trimmed.charAt(0);
+        if (first == '<') {
+            String lower = trimmed.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("<!doctype html") || lower.contains("<html") || lower.contains("<body")) {
+                return ContentType.HTML;
+            }
+            return ContentType.XML;
+        } else if (first == '{' || first == '[') {
+            return ContentType.JSON;
+        }
+        return ContentType.TEXT;
+    }
+
+    /**
+     * Decodes the prefix as UTF-8, or returns null when it is not text: invalid UTF-8, or control characters other
+     * than whitespace. A sequence cut at the end of an incomplete prefix is dropped.
+     */
+    private static String decodeUtf8(byte[] head, int start, boolean complete) {
+        int end = head.length;
+        if (!complete) {
+            // back up to the start of a multi-byte sequence the prefix may have cut
+            int i = end - 1;
+            while (i > start && end - i < 4 && (head[i] & 0xC0) == 0x80) {
+                i--;
+            }
+            if (i >= start && (head[i] & 0xC0) == 0xC0) {
+                end = i;
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        String text;
+        try {
+            text = decoder.decode(ByteBuffer.wrap(head, start, end - start)).toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f') {
+                return null;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Extracts the text of a document locally: markup loses its tags, scripts and styles, and the text is split
+     * into one element per paragraph so chunking works as it does for partitioned documents.
+     */
+    public static PartitionResult extractText(DocumentInput input, ContentType type) throws IOException {
+        byte[] bytes;
+        try (InputStream in = input.openStream()) {
+            bytes = in.readAllBytes();
+        }
+        int start = startsWith(bytes, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+        String text = new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+        if (type == ContentType.HTML || type == ContentType.XML) {
+            text = COMMENT.matcher(text).replaceAll(" ");
+            if (type == ContentType.HTML) {
+                text = HIDDEN.matcher(text).replaceAll(" ");
+            }
+            text = BLOCK.matcher(text).replaceAll("\n\n");
+            text = unescape(TAG.matcher(text).replaceAll(" "));
+        }
+        List<PartitionResult.Element> elements = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(text)) {
+            String clean = type == ContentType.JSON ? paragraph.strip() : SPACES.matcher(paragraph).replaceAll(" ").strip();
+            if (!clean.isEmpty()) {
+                elements.add(new PartitionResult.Element("Text", clean, 1, null));
+            }
+        }
+        return new PartitionResult(elements, null);
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        return text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&#39;", "'").replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        if (bytes.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,770 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.ExceptionsHelper;
+import org.opensearch.ResourceAlreadyExistsException;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.support.ContextPreservingActionListener;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.action.update.UpdateRequest;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.index.IndexNotFoundException;
+import org.opensearch.index.engine.DocumentMissingException;
+import org.opensearch.index.engine.VersionConflictEngineException;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.ingest.Processor;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.sort.SortOrder;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.client.Client;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Durable queue of the documents that processors in {@code deferred} mode indexed without partitioning them. Each
+ * document becomes a job in a system index, so the queue survives restarts and is shared by the cluster. A job holds
+ * a reference to its document and the configuration of the processor that enqueued it, so it runs with those
+ * settings on any node, whatever happened to its pipeline since. Secrets such as the API key are not stored: a job
+ * runs with the processor of its configuration on the node, or, when its pipeline changed, with one built from the
+ * stored configuration and the key of a processor with the same tag. Every node polls for due jobs, claims them with
+ * an optimistic concurrency update and partitions them with at most {@code workers} at once and {@code max_rate}
+ * started per second. The result is applied to the document with a partial update.
+ * <p>
+ * A claimed job is leased: if its node dies, the job is due again once the lease ends. Failed jobs are retried with
+ * an exponential backoff and after {@code max_attempts} stay in the index as {@code dead}, with their last error,
+ * while their document is marked as failed.
+ * <p>
+ * The job is stored before its document is indexed, and the document may never be: a later processor or the index
+ * request may fail. So a job only calls Aryn once its document exists, and reads its input and options from the
+ * document then; they are not copied into the job index. Until the document exists the job waits without using up
+ * an attempt, and it is dropped when the document did not show up within a lease.
+ */
+@Log4j2
+public class DeferredJobQueue implements Closeable {
+
+    public static final String INDEX = ".aryn-partition-jobs";
+    static final String MAPPING = "{\"dynamic\":\"strict\",\"properties\":{"
+            + "\"processor\":{\"type\":\"keyword\"},"
+            + "\"config\":{\"type\":\"object\",\"enabled\":false},"
+            + "\"index\":{\"type\":\"keyword\"},"
+            + "\"doc_id\":{\"type\":\"keyword\"},"
+            + "\"routing\":{\"type\":\"keyword\"},"
+            + "\"size\":{\"type\":\"long\"},"
+            + "\"state\":{\"type\":\"keyword\"},"
+            + "\"attempts\":{\"type\":\"integer\"},"
+            + "\"last_error\":{\"type\":\"text\"},"
+            + "\"created_at\":{\"type\":\"date\",\"format\":\"epoch_millis\"},"
+            + "\"next_attempt_at\":{\"type\":\"date\",\"format\":\"epoch_millis\"}}}";
+
+    // job states
+    static final String PENDING = "pending";
+    static final String RUNNING = "running";
+    static final String DEAD = "dead";
+
+    // values of a document's status field
+    static final String STATUS_PENDING = "pending";
+    static final String STATUS_DONE = "done";
+    static final String STATUS_FAILED = "failed";
+
+    // processor settings that never go into the job index
+    static final Set<String> SECRET_SETTINGS = Set.of("aryn_api_key");
+
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeValue.timeValueHours(1).millis();
+    // processors built from job configurations that are kept around, the jobs of one pipeline share theirs
+    static final int MAX_PROCESSORS = 32;
+
+    private final Client client;
+    private final ThreadContext threadContext;
+    private final int workers;
+    private final double maxRate;
+    private final TimeValue pollInterval;
+    private final int maxAttempts;
+    private final TimeValue retryBackoff;
+    private final TimeValue lease;
+    private final TimeValue timeout;
+    private final LongSupplier clock;
+    private final Map<String, ArynIngestProcessor> processors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ArynIngestProcessor> eldest) {
+            return size() > MAX_PROCESSORS;
+        }
+    };
+    // the deferred processors of this node's pipelines, held as long as their pipelines are
+    private final Map<ArynIngestProcessor, Registration> registered = new WeakHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private volatile boolean indexChecked;
+    private volatile Processor.Factory processorFactory;
+    private volatile boolean active;
+    private volatile Scheduler.Cancellable poller;
+    // start permits of max_rate, refilled continuously up to one second's worth
+    private double permits;
+    private long permitsRefilledAt;
+
+    public DeferredJobQueue(Settings settings, Client client, ThreadContext threadContext) {
+        this(client, threadContext, ArynSettings.DEFERRED_WORKERS.get(settings), ArynSettings.DEFERRED_MAX_RATE.get(settings),
+                ArynSettings.DEFERRED_POLL_INTERVAL.get(settings), ArynSettings.DEFERRED_MAX_ATTEMPTS.get(settings),
+                ArynSettings.DEFERRED_RETRY_BACKOFF.get(settings), ArynSettings.DEFERRED_LEASE.get(settings),
+                ArynSettings.DEFERRED_TIMEOUT.get(settings), System::currentTimeMillis);
+    }
+
+    DeferredJobQueue(Client client, ThreadContext threadContext, int workers, double maxRate, TimeValue pollInterval,
+                     int maxAttempts, TimeValue retryBackoff, TimeValue lease, TimeValue timeout, LongSupplier clock) {
+        this.client = client;
+        this.threadContext = threadContext;
+        this.workers = workers;
+        this.maxRate = maxRate;
+        this.pollInterval = pollInterval;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.lease = lease;
+        this.timeout = timeout;
+        this.clock = clock;
+        this.permits = Math.max(maxRate, 1);
+        this.permitsRefilledAt = clock.getAsLong();
+    }
+
+    /**
+     * Gives the queue the factory it builds the processors of jobs with.
+     */
+    public void setProcessorFactory(Processor.Factory processorFactory) {
+        this.processorFactory = processorFactory;
+    }
+
+    /**
+     * Records a deferred processor, which runs the jobs of its configuration and lends its API key to the jobs of
+     * earlier configurations with its tag. The configuration is the one its jobs store, without secrets.
+     */
+    public void register(ArynIngestProcessor processor, Map<String, Object> processorConfig, String apiKey) {
+        synchronized (processors) {
+            registered.put(processor, new Registration(configKey(processor.getTag(), processorConfig), apiKey));
+        }
+    }
+
+    /**
+     * Whether the calling thread runs a {@code _simulate} request, whose documents must not get jobs.
+     */
+    boolean inSimulation() {
+        return SimulateActionFilter.isSimulating(threadContext);
+    }
+
+    /**
+     * The configuration of a processor as its jobs store it, without secrets.
+     */
+    static Map<String, Object> storedConfig(Map<String, Object> processorConfig) {
+        Map<String, Object> stored = new HashMap<>(processorConfig);
+        stored.keySet().removeAll(SECRET_SETTINGS);
+        return stored;
+    }
+
+    /**
+     * Makes this node poll for jobs; called when a deferred processor is created, until then there are none.
+     */
+    public void activate() {
+        active = true;
+    }
+
+    /**
+     * Starts polling for due jobs; called once the node components exist.
+     */
+    public void start(ThreadPool threadPool) {
+        if (workers > 0) {
+            poller = threadPool.scheduleWithFixedDelay(this::poll, pollInterval, ThreadPool.Names.GENERIC);
+        }
+    }
+
+    /**
+     * Stores the job of a document. The listener is called once the job is durable, in the caller's thread context.
+     */
+    public void enqueue(String processorTag, Map<String, Object> processorConfig, String index, String docId, String routing,
+                        long size, ActionListener<Void> listener) {
+        ActionListener<Void> restoring = new ContextPreservingActionListener<>(threadContext.newRestorableContext(false), listener);
+        IndexRequest request = new IndexRequest(INDEX).id(jobId(index, docId))
+                .source(jobSource(processorTag, processorConfig, index, docId, routing, size, clock.getAsLong()));
+        // the system index is written as the plugin, not as the user running the pipeline
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            ensureIndex(ActionListener.wrap(
+                    created -> client.index(request, ActionListener.wrap(
+                            response -> {
+                                enqueued.increment();
+                                restoring.onResponse(null);
+                            },
+                            restoring::onFailure)),
+                    restoring::onFailure));
+        }
+    }
+
+    /**
+     * Stores the job of a document and waits for at most the queue timeout.
+     */
+    public void enqueue(String processorTag, Map<String, Object> processorConfig, String index, String docId, String routing,
+                        long size) {
+        PlainActionFuture<Void> future = PlainActionFuture.newFuture();
+        enqueue(processorTag, processorConfig, index, docId, routing, size, future);
+        future.actionGet(timeout);
+    }
+
+    /**
+     * One job per document: enqueuing a document again replaces its job.
+     */
+    static String jobId(String index, String docId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(index.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(docId.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Map<String, Object> jobSource(String processorTag, Map<String, Object> processorConfig, String index, String docId,
+                                         String routing, long size, long now) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        if (processorTag != null) {
+            source.put("processor", processorTag);
+        }
+        source.put("config", processorConfig);
+        source.put("index", index);
+        source.put("doc_id", docId);
+        if (routing != null) {
+            source.put("routing", routing);
+        }
+        source.put("size", size);
+        source.put("state", PENDING);
+        source.put("attempts", 0);
+        source.put("created_at", now);
+        source.put("next_attempt_at", now);
+        return source;
+    }
+
+    private void ensureIndex(ActionListener<Void> listener) {
+        if (indexChecked) {
+            listener.onResponse(null);
+            return;
+        }
+        client.admin().indices().prepareCreate(INDEX)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.auto_expand_replicas", "0-1")
+                        .put("index.hidden", true))
+                .setMapping(MAPPING)
+                .execute(ActionListener.wrap(
+                        response -> {
+                            log.info("Created the Aryn deferred job queue [{}]", INDEX);
+                            indexChecked = true;
+                            listener.onResponse(null);
+                        },
+                        e -> {
+                            if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                                // created by another node
+                                indexChecked = true;
+                                listener.onResponse(null);
+                            } else {
+                                listener.onFailure(e);
+                            }
+                        }));
+    }
+
+    /**
+     * Claims as many due jobs as there are idle workers and start permits, and hands them
+     * to their processors. Runs on the generic pool and never blocks it: the search and the claims are asynchronous,
+     * and the next poll is skipped until they are done. The partition calls themselves run on the partition executor.
+     */
+    void poll() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        int capacity = workers - running.get();
+        if (capacity <= 0 || !active || processorFactory == null) {
+            polling.set(false);
+            return;
+        }
+        int permits = takePermits(capacity);
+        if (permits <= 0) {
+            polling.set(false);
+            return;
+        }
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            long now = clock.getAsLong();
+            client.prepareSearch(INDEX)
+                    .setQuery(QueryBuilders.boolQuery()
+                            .filter(QueryBuilders.termsQuery("state", PENDING, RUNNING))
+                            .filter(QueryBuilders.rangeQuery("next_attempt_at").lte(now)))
+                    .addSort("next_attempt_at", SortOrder.ASC)
+                    .setSize(permits)
+                    .seqNoAndPrimaryTerm(true)
+                    .setTimeout(timeout)
+                    .execute(ActionListener.wrap(
+                            response -> claimAll(response.getHits().getHits(), now, permits),
+                            e -> {
+                                // no index means nothing deferred yet
+                                if (!(ExceptionsHelper.unwrapCause(e) instanceof IndexNotFoundException)) {
+                                    log.warn("Unable to poll the Aryn deferred job queue [{}]", INDEX, e);
+                                }
+                                endPoll(permits);
+                            }));
+        } catch (Exception e) {
+            log.warn("Unable to poll the Aryn deferred job queue [{}]", INDEX, e);
+            endPoll(permits);
+        }
+    }
+
+    private void claimAll(SearchHit[] hits, long now, int permits) {
+        if (hits.length == 0) {
+            endPoll(permits);
+            return;
+        }
+        AtomicInteger pending = new AtomicInteger(hits.length);
+        AtomicInteger started = new AtomicInteger();
+        for (SearchHit hit : hits) {
+            claim(hit, now, job -> {
+                if (job != null) {
+                    started.incrementAndGet();
+                    run(job);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    endPoll(permits - started.get());
+                }
+            });
+        }
+    }
+
+    private void endPoll(int unusedPermits) {
+        returnPermits(unusedPermits);
+        polling.set(false);
+    }
+
+    /**
+     * Takes up to {@code wanted} start permits of {@code max_rate}.
+     */
+    synchronized int takePermits(int wanted) {
+        if (maxRate <= 0) {
+            return wanted;
+        }
+        long now = clock.getAsLong();
+        permits = Math.min(Math.max(maxRate, 1), permits + (now - permitsRefilledAt) * maxRate / 1000.0);
+        permitsRefilledAt = now;
+        int taken = (int) Math.min(wanted, Math.floor(permits));
+        permits -= taken;
+        return taken;
+    }
+
+    synchronized void returnPermits(int unused) {
+        if (maxRate > 0 && unused > 0) {
+            permits += unused;
+        }
+    }
+
+    /**
+     * Leases the job to this node and passes it on, or passes null when another node claimed it or it was replaced
+     * meanwhile.
+     */
+    private void claim(SearchHit hit, long now, Consumer<Job> claimed) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("state", RUNNING);
+        fields.put("next_attempt_at", now + lease.millis());
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.update(new UpdateRequest(INDEX, hit.getId()).doc(fields).timeout(timeout)
+                    .setIfSeqNo(hit.getSeqNo()).setIfPrimaryTerm(hit.getPrimaryTerm()), ActionListener.wrap(
+                            response -> claimed.accept(Job.fromSource(hit.getId(), response.getSeqNo(),
+                                    response.getPrimaryTerm(), hit.getSourceAsMap())),
+                            e -> {
+                                if (!(ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException)) {
+                                    log.warn("Unable to claim deferred job [{}]", hit.getId(), e);
+                                }
+                                claimed.accept(null);
+                            }));
+        }
+    }
+
+    private void run(Job job) {
+        ArynIngestProcessor processor;
+        try {
+            processor = processor(job);
+        } catch (Exception e) {
+            onFailure(job, null, e);
+            return;
+        }
+        running.incrementAndGet();
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.prepareGet(job.index, job.docId).setRouting(job.routing)
+                    .setFetchSource(processor.getDeferredFields(), null).execute(ActionListener.wrap(
+                    response -> {
+                        if (response.isExists()) {
+                            // the result only applies to the version of the document it was computed from
+                            partition(job, processor, response.getSourceAsMap(), ActionListener.runAfter(ActionListener.wrap(
+                                    fields -> onResponse(job, processor, response.getSeqNo(), response.getPrimaryTerm(), fields),
+                                    e -> onFailure(job, processor, e)), running::decrementAndGet));
+                        } else {
+                            running.decrementAndGet();
+                            notIndexed(job);
+                        }
+                    },
+                    e -> {
+                        running.decrementAndGet();
+                        if (ExceptionsHelper.unwrapCause(e) instanceof IndexNotFoundException) {
+                            notIndexed(job);
+                        } else {
+                            onFailure(job, processor, e);
+                        }
+                    }));
+        } catch (Exception e) {
+            running.decrementAndGet();
+            onFailure(job, processor, e);
+        }
+    }
+
+    private void partition(Job job, ArynIngestProcessor processor, Map<String, Object> source,
+                           ActionListener<Map<String, Object>> listener) {
+        log.debug("Running deferred job [{}] of [{}/{}], attempt [{}]", job.id, job.index, job.docId, job.attempts + 1);
+        try {
+            processor.partitionDeferred(job, source, listener);
+        } catch (Exception e) {
+            listener.onFailure(e);
+        }
+    }
+
+    /**
+     * The job's document is not indexed (yet). The job is due again after a poll interval without using up an
+     * attempt, or dropped when the document did not show up within a lease of the job being stored.
+     */
+    private void notIndexed(Job job) {
+        long now = clock.getAsLong();
+        if (now - job.createdAt >= lease.millis()) {
+            log.debug("Dropping deferred job [{}], its document [{}/{}] was never indexed", job.id, job.index, job.docId);
+            remove(job);
+            return;
+        }
+        reschedule(job, now + pollInterval.millis());
+    }
+
+    /**
+     * Makes the job due again at the given time without using up an attempt. A conflict means the job was replaced
+     * meanwhile, by its document being enqueued again.
+     */
+    private void reschedule(Job job, long nextAttemptAt) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("state", PENDING);
+        fields.put("next_attempt_at", nextAttemptAt);
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.update(new UpdateRequest(INDEX, job.id).doc(fields).timeout(timeout)
+                    .setIfSeqNo(job.seqNo).setIfPrimaryTerm(job.primaryTerm), ActionListener.wrap(
+                            response -> {},
+                            e -> {
+                                if (!(ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException)) {
+                                    log.warn("Unable to reschedule deferred job [{}], it runs again after its lease", job.id, e);
+                                }
+                            }));
+        }
+    }
+
+    /**
+     * The processor that enqueued the job when it still exists on this node, otherwise one built from the
+     * configuration stored with the job and the API key of a processor with the same tag.
+     */
+    private ArynIngestProcessor processor(Job job) throws Exception {
+        if (job.config == null) {
+            throw new IllegalStateException("deferred job [" + job.id + "] has no processor configuration");
+        }
+        String key = configKey(job.processor, job.config);
+        synchronized (processors) {
+            String apiKey = null;
+            for (Map.Entry<ArynIngestProcessor, Registration> entry : registered.entrySet()) {
+                if (entry.getValue().configKey.equals(key)) {
+                    return entry.getKey();
+                }
+                // untagged processors of different pipelines may well use different accounts
+                if (job.processor != null && job.processor.equals(entry.getKey().getTag())) {
+                    apiKey = entry.getValue().apiKey;
+                }
+            }
+            ArynIngestProcessor processor = processors.get(key);
+            if (processor == null) {
+                if (apiKey == null) {
+                    throw new IllegalStateException("deferred job [" + job.id + "] has no processor with tag ["
+                            + job.processor + "] on this node to take the API key from");
+                }
+                Map<String, Object> config = new HashMap<>(job.config);
+                config.put("aryn_api_key", apiKey);
+                // the factory takes the settings it reads out of the map it is given
+                processor = (ArynIngestProcessor) processorFactory.create(Map.of(), job.processor, null, config);
+                processors.put(key, processor);
+            }
+            return processor;
+        }
+    }
+
+    /**
+     * Identity of a processor configuration, the same for equal configurations whatever the order of their keys.
+     */
+    static String configKey(String processorTag, Map<String, Object> processorConfig) {
+        StringBuilder canonical = new StringBuilder(String.valueOf(processorTag)).append('\0');
+        appendCanonical(canonical, processorConfig);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void appendCanonical(StringBuilder out, Object value) {
+        if (value instanceof Map) {
+            out.append('{');
+            for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) value).entrySet()) {
+                out.append(entry.getKey()).append('=');
+                appendCanonical(out, entry.getValue());
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof List) {
+            out.append('[');
+            for (Object item : (List<?>) value) {
+                appendCanonical(out, item);
+                out.append(',');
+            }
+            out.append(']');
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Applies the result to the document, unless the document changed since its input was read: then the job runs
+     * again on the new version, without using up an attempt.
+     */
+    private void onResponse(Job job, ArynIngestProcessor processor, long docSeqNo, long docPrimaryTerm,
+                            Map<String, Object> fields) {
+        UpdateRequest request = documentUpdate(job, fields).setIfSeqNo(docSeqNo).setIfPrimaryTerm(docPrimaryTerm);
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.update(request, ActionListener.wrap(
+                    response -> {
+                        completed.increment();
+                        remove(job);
+                    },
+                    e -> {
+                        if (ExceptionsHelper.unwrapCause(e) instanceof DocumentMissingException) {
+                            // the document existed when the job started, it was deleted since
+                            log.debug("Dropping deferred job [{}], its document [{}/{}] was deleted", job.id, job.index,
+                                    job.docId);
+                            remove(job);
+                        } else if (ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException) {
+                            log.debug("Deferred job [{}] of [{}/{}] is stale, its document changed while it ran", job.id,
+                                    job.index, job.docId);
+                            reschedule(job, clock.getAsLong());
+                        } else {
+                            onFailure(job, processor, e);
+                        }
+                    }));
+        }
+    }
+
+    private void remove(Job job) {
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.delete(new DeleteRequest(INDEX, job.id).setIfSeqNo(job.seqNo).setIfPrimaryTerm(job.primaryTerm)
+                    .timeout(timeout), ActionListener.wrap(
+                            response -> {},
+                            e -> {
+                                // a conflict means the document was enqueued again while its job ran
+                                if (!(ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException)) {
+                                    log.warn("Unable to remove deferred job [{}], it runs again after its lease", job.id, e);
+                                }
+                            }));
+        }
+    }
+
+    private void onFailure(Job job, ArynIngestProcessor processor, Exception failure) {
+        Throwable cause = ExceptionsHelper.unwrapCause(failure);
+        // a busy node does not use up an attempt
+        boolean busy = cause instanceof OpenSearchRejectedExecutionException || cause instanceof CircuitBreakingException;
+        int attempts = busy ? job.attempts : job.attempts + 1;
+        boolean dead = attempts >= maxAttempts;
+        long now = clock.getAsLong();
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("state", dead ? DEAD : PENDING);
+        fields.put("attempts", attempts);
+        fields.put("last_error", String.valueOf(cause.getMessage()));
+        fields.put("next_attempt_at", now + (busy ? pollInterval.millis() : retryDelay(retryBackoff, attempts)));
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.update(new UpdateRequest(INDEX, job.id).doc(fields).timeout(timeout)
+                    .setIfSeqNo(job.seqNo).setIfPrimaryTerm(job.primaryTerm), ActionListener.wrap(
+                            response -> {
+                                if (dead) {
+                                    deadLettered.increment();
+                                    log.warn("Deferred job [{}] of [{}/{}] failed {} times and was dead-lettered", job.id,
+                                            job.index, job.docId, attempts, failure);
+                                    if (processor != null) {
+                                        markFailed(job, processor.getStatusField());
+                                    }
+                                } else if (!busy) {
+                                    retried.increment();
+                                    log.debug("Deferred job [{}] of [{}/{}] failed, attempt [{}] of [{}]", job.id, job.index,
+                                            job.docId, attempts, maxAttempts, failure);
+                                }
+                            },
+                            e -> {
+                                if (!(ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException)) {
+                                    log.warn("Unable to record the failure of deferred job [{}], it runs again after its lease",
+                                            job.id, e);
+                                }
+                            }));
+        }
+    }
+
+    private void markFailed(Job job, String statusField) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(statusField, STATUS_FAILED);
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.update(documentUpdate(job, fields).retryOnConflict(3), ActionListener.wrap(
+                    response -> {},
+                    e -> log.debug("Unable to mark [{}/{}] as failed", job.index, job.docId, e)));
+        }
+    }
+
+    private UpdateRequest documentUpdate(Job job, Map<String, Object> fields) {
+        UpdateRequest request = new UpdateRequest(job.index, job.docId).doc(fields).timeout(timeout);
+        if (job.routing != null) {
+            request.routing(job.routing);
+        }
+        return request;
+    }
+
+    /**
+     * Delay before the given attempt, {@code backoff} doubled per earlier retry and capped at an hour.
+     */
+    static long retryDelay(TimeValue backoff, int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(backoff.millis() << doublings, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    @Override
+    public void close() {
+        if (poller != null) {
+            poller.cancel();
+        }
+    }
+
+    /**
+     * What the queue knows of a registered processor.
+     */
+    private static final class Registration {
+        final String configKey;
+        final String apiKey;
+
+        Registration(String configKey, String apiKey) {
+            this.configKey = configKey;
+            this.apiKey = apiKey;
+        }
+    }
+
+    /**
+     * A claimed job, with the sequence number and primary term of the claim.
+     */
+    static final class Job {
+        final String id;
+        final long seqNo;
+        final long primaryTerm;
+        final String processor;
+        final Map<String, Object> config;
+        final String index;
+        final String docId;
+        final String routing;
+        final long size;
+        final int attempts;
+        final long createdAt;
+
+        Job(String id, long seqNo, long primaryTerm, String processor, Map<String, Object> config, String index, String docId,
+            String routing, long size, int attempts, long createdAt) {
+            this.id = id;
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+            this.processor = processor;
+            this.config = config;
+            this.index = index;
+            this.docId = docId;
+            this.routing = routing;
+            this.size = size;
+            this.attempts = attempts;
+            this.createdAt = createdAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Job fromSource(String id, long seqNo, long primaryTerm, Map<String, Object> source) {
+            Object size = source.get("size");
+            Object attempts = source.get("attempts");
+            Object createdAt = source.get("created_at");
+            return new Job(id, seqNo, primaryTerm, (String) source.get("processor"),
+                    (Map<String, Object>) source.get("config"), (String) source.get("index"),
+                    (String) source.get("doc_id"), (String) source.get("routing"),
+                    size instanceof Number ? ((Number) size).longValue() : 0,
+                    attempts instanceof Number ? ((Number) attempts).intValue() : 0,
+                    createdAt instanceof Number ? ((Number) createdAt).longValue() : 0);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * The document bytes of one ingest document. Either already decoded, or still the base64 string of the source
+ * field, in which case every read decodes on the fly and the decoded document never sits on the heap as a whole.
+ */
+public abstract class DocumentInput {
+
+    /**
+     * Number of decoded bytes.
+     */
+    public abstract long length();
+
+    /**
+     * Opens a fresh stream over the decoded bytes. Can be called more than once.
+     */
+    public abstract InputStream openStream();
+
+    /**
+     * Returns the decoded bytes, decoding them into a new array for base64 input.
+     */
+    public abstract byte[] toBytes();
+
+    public static DocumentInput of(byte[] bytes) {
+        return new Bytes(bytes);
+    }
+
+    /**
+     * Wraps a base64 string, which is checked up front: a decode error in the middle of an upload would look like
+     * a failed connection and be retried against the partitioner.
+     *
+     * @throws IllegalArgumentException if the string is not valid base64
+     */
+    public static DocumentInput base64(CharSequence encoded) {
+        validateBase64(encoded);
+        return new Base64Input(encoded);
+    }
+
+    /**
+     * Checks that a string decodes with the basic base64 decoder: only alphabet chars, at most two trailing
+     * padding chars that complete the last quantum, and no dangling single char.
+     */
+    static void validateBase64(CharSequence encoded) {
+        int length = encoded.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && encoded.charAt(length - padding - 1) == '=') {
+            padding++;
+        }
+        int data = length - padding;
+        for (int i = 0; i < data; i++) {
+            char c = encoded.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/')) {
+                String printable = c < 0x20 || c > 0x7e ? String.format(Locale.ROOT, "\\u%04x", (int) c) : String.valueOf(c);
+                throw new IllegalArgumentException("illegal base64 character [" + printable + "] at position [" + i + "]");
+            }
+        }
+        if (data % 4 == 1 || (padding > 0 && length % 4 != 0)) {
+            throw new IllegalArgumentException("base64 input of [" + length + "] chars is truncated");
+        }
+    }
+
+    /**
+     * Decoded size of a base64 string, computed from its length without decoding it.
+     */
+    public static long decodedLength(CharSequence encoded) {
+        int length = encoded.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && encoded.charAt(length - padding - 1) == '=') {
+            padding++;
+        }
+        return (long) (length - padding) * 3 / 4;
+    }
+
+    private static final class Bytes extends DocumentInput {
+        private final byte[] bytes;
+
+        Bytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long length() {
+            return bytes.length;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public byte[] toBytes() {
+            return bytes;
+        }
+    }
+
+    private static final class Base64Input extends DocumentInput {
+        private final CharSequence encoded;
+
+        Base64Input(CharSequence encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public long length() {
+            return decodedLength(encoded);
+        }
+
+        @Override
+        public InputStream openStream() {
+            return Base64.getDecoder().wrap(new AsciiInputStream(encoded));
+        }
+
+        @Override
+        public byte[] toBytes() {
+            try (InputStream in = openStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the chars of a base64 string as bytes without copying the string.
+     */
+    private static final class AsciiInputStream extends InputStream {
+        private final CharSequence chars;
+        private int position;
+
+        AsciiInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            return position < chars.length() ? chars.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int available = chars.length() - position;
+            if (available <= 0) {
+                return -1;
+            }
+            int n = Math.min(len, available);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) chars.charAt(position++);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns partitioned elements into the value of the output field, in a single pass over the elements:
+ * <ul>
+ *     <li>{@code text}: the text of all elements joined by line separators</li>
+ *     <li>{@code elements}: one object per element with its type, page, text and bounding box</li>
+ *     <li>{@code chunks}: consecutive element texts grouped into chunks of at most {@code chunk_size}
+ *     characters, ready for an embedding processor</li>
+ * </ul>
+ * Element types are matched case-insensitively against the include and exclude lists.
+ */
+public class ElementFormatter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 2000;
+
+    public enum OutputMode {
+        TEXT, ELEMENTS, CHUNKS;
+
+        public static OutputMode fromString(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("output_mode [" + value + "] must be one of [text, elements, chunks]");
+            }
+        }
+    }
+
+    public static final ElementFormatter TEXT = new ElementFormatter(OutputMode.TEXT, null, null, DEFAULT_CHUNK_SIZE);
+
+    private final OutputMode mode;
+    private final Set<String> includeTypes;
+    private final Set<String> excludeTypes;
+    private final int chunkSize;
+
+    public ElementFormatter(OutputMode mode, Collection<String> includeTypes, Collection<String> excludeTypes, int chunkSize) {
+        this.mode = mode;
+        this.includeTypes = lowerCase(includeTypes);
+        this.excludeTypes = lowerCase(excludeTypes);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the output field value, or null when no element is left to write.
+     */
+    public Object format(List<PartitionResult.Element> elements) {
+        switch (mode) {
+            case ELEMENTS:
+                return toElements(elements);
+            case CHUNKS:
+                return toChunks(elements);
+            default:
+                return toText(elements);
+        }
+    }
+
+    private String toText(List<PartitionResult.Element> elements) {
+        StringBuilder builder = new StringBuilder();
+        for (PartitionResult.Element element : elements) {
+            if (accept(element) && hasText(element)) {
+                builder.append(element.getText()).append(System.lineSeparator());
+            }
+        }
+        return builder.length() == 0 ? null : builder.toString();
+    }
+
+    private List<Map<String, Object>> toElements(List<PartitionResult.Element> elements) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (PartitionResult.Element element : elements) {
+            if (!accept(element)) {
+                continue;
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("type", element.getType());
+            if (element.getPage() != null) {
+                map.put("page", element.getPage());
+            }
+            if (element.getText() != null) {
+                map.put("text", element.getText());
+            }
+            if (element.getBbox() != null) {
+                map.put("bbox", element.getBbox());
+            }
+            result.add(map);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private List<Map<String, Object>> toChunks(List<PartitionResult.Element> elements) {
+        List<Map<String, Object>> chunks = new ArrayList<>();
+        ChunkBuilder chunk = new ChunkBuilder();
+        for (PartitionResult.Element element : elements) {
+            if (!accept(element) || !hasText(element)) {
+                continue;
+            }
+            String text = element.getText();
+            if (chunk.length() > 0 && chunk.length() + 1 + text.length() > chunkSize) {
+                chunks.add(chunk.build());
+                chunk = new ChunkBuilder();
+            }
+            chunk.add(text, element.getPage());
+        }
+        if (chunk.length() > 0) {
+            chunks.add(chunk.build());
+        }
+        return chunks.isEmpty() ? null : chunks;
+    }
+
+    private boolean accept(PartitionResult.Element element) {
+        String type = element.getType() == null ? null : element.getType().toLowerCase(Locale.ROOT);
+        if (includeTypes != null && (type == null || !includeTypes.contains(type))) {
+            return false;
+        }
+        return excludeTypes == null || type == null || !excludeTypes.contains(type);
+    }
+
+    private static boolean hasText(PartitionResult.Element element) {
+        return element.getText() != null && !element.getText().isEmpty();
+    }
+
+    private static Set<String> lowerCase(Collection<String> types) {
+        if (types == null || types.isEmpty()) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String type : types) {
+            result.add(type.toLowerCase(Locale.ROOT));
+        }
+        return result;
+    }
+
+    private static final class ChunkBuilder {
+        private final StringBuilder text = new StringBuilder();
+        private Integer firstPage;
+        private Integer lastPage;
+        private int elementCount;
+
+        int length() {
+            return text.length();
+        }
+
+        void add(String elementText, Integer page) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(elementText);
+            if (page != null) {
+                if (firstPage == null) {
+                    firstPage = page;
+                }
+                lastPage = page;
+            }
+            elementCount++;
+        }
+
+        Map<String, Object> build() {
+            Map<String, Object> chunk = new LinkedHashMap<>();
+            chunk.put("text", text.toString());
+            if (firstPage != null) {
+                chunk.put("page_start", firstPage);
+                chunk.put("page_end", lastPage);
+            }
+            chunk.put("element_count", elementCount);
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a partitioner endpoint that keeps failing. After {@code failureThreshold} consecutive server
+ * failures the breaker opens and calls fail fast for {@code openDuration}. Then a single probe call is let
+ * through: success closes the breaker, failure opens it again.
+ */
+@Log4j2
+public class EndpointCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    EndpointCircuitBreaker(String endpoint, int failureThreshold, TimeValue openDuration, LongSupplier clock) {
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.millis();
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a call may go out now.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // a probe is already in flight
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether {@link #allowRequest()} would let a call out now, without taking the probe of a half open breaker.
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED || (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis);
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Aryn endpoint [{}] is back, closing circuit breaker", endpoint);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Aryn endpoint [{}] failed {} times in a row, opening circuit breaker for {}ms",
+                    endpoint, consecutiveFailures, openMillis);
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Gives back a probe that ended without a verdict, e.g. when the call was rejected or cancelled before the
+     * endpoint answered. The breaker returns to open with its wait already elapsed, so the next call probes again.
+     */
+    public synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong() - openMillis;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Node level registry, one breaker per endpoint shared by every processor calling it.
+     */
+    public static class Registry {
+        private final Map<String, EndpointCircuitBreaker> breakers = new ConcurrentHashMap<>();
+        private final int failureThreshold;
+        private final TimeValue openDuration;
+        private final LongSupplier clock;
+
+        public Registry(Settings settings) {
+            this(ArynSettings.CIRCUIT_BREAKER_FAILURE_THRESHOLD.get(settings),
+                    ArynSettings.CIRCUIT_BREAKER_OPEN_DURATION.get(settings), System::currentTimeMillis);
+        }
+
+        Registry(int failureThreshold, TimeValue openDuration, LongSupplier clock) {
+            this.failureThreshold = failureThreshold;
+            this.openDuration = openDuration;
+            this.clock = clock;
+        }
+
+        public EndpointCircuitBreaker get(String endpoint) {
+            return breakers.computeIfAbsent(String.valueOf(endpoint),
+                    e -> new EndpointCircuitBreaker(e, failureThreshold, openDuration, clock));
+        }
+    }
+}
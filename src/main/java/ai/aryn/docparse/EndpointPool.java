@@ -0,0 +1,201 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeValue;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * The partitioner endpoints a processor spreads its calls over, typically self-hosted replicas behind no load
+ * balancer. Each call goes to the member with the fewest calls in flight among those whose circuit breaker is
+ * closed and that are not ejected; ties are broken at random. When every member is ejected the ejections are
+ * ignored rather than failing the call, only open circuit breakers make a call fail fast.
+ */
+@Log4j2
+public class EndpointPool {
+
+    // calls an endpoint must have answered before its latency is compared with the rest of the pool
+    static final long SLOW_MIN_SAMPLES = 10;
+
+    private final List<Member> members;
+    private final long ejectionMillis;
+    private final double slowFactor;
+
+    /**
+     * @param slowFactor members whose average latency for uploads of one size exceeds this multiple of the fastest
+     *                   member's are ejected for {@code ejectionDuration}, 0 turns slow ejection off
+     */
+    public EndpointPool(List<Member> members, TimeValue ejectionDuration, double slowFactor) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("an endpoint pool needs at least one endpoint");
+        }
+        this.members = List.copyOf(members);
+        this.ejectionMillis = ejectionDuration.millis();
+        this.slowFactor = slowFactor;
+    }
+
+    /**
+     * A pool of one endpoint whose state is not shared with other processors, for processors built outside the plugin.
+     */
+    static EndpointPool single(String url, PartitionClient client, EndpointCircuitBreaker breaker,
+                               AdaptiveConcurrencyLimiter limiter) {
+        return new EndpointPool(List.of(new Member(new ArynEndpoint(url, System::currentTimeMillis), client, breaker, limiter)),
+                TimeValue.ZERO, 0);
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Picks the member for the next call, or null when the circuit breakers of all members are open.
+     */
+    public Member choose() {
+        return choose(null);
+    }
+
+    /**
+     * Picks a member other than {@code excluded}, for a hedge of a call already running on it.
+     */
+    public Member choose(Member excluded) {
+        if (members.size() == 1) {
+            Member only = members.get(0);
+            return only == excluded || !only.isAvailable() ? null : only;
+        }
+        ejectSlow();
+        Member chosen = leastOutstanding(excluded, false);
+        if (chosen == null) {
+            chosen = leastOutstanding(excluded, true);
+        }
+        if (chosen != null) {
+            log.debug("Routing Aryn call to [{}] with {} calls in flight", chosen.getUrl(), chosen.endpoint.getOutstanding());
+        }
+        return chosen;
+    }
+
+    private Member leastOutstanding(Member excluded, boolean includeEjected) {
+        Member best = null;
+        int bestOutstanding = Integer.MAX_VALUE;
+        int start = ThreadLocalRandom.current().nextInt(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get((start + i) % members.size());
+            if (member == excluded || !member.isAvailable() || (!includeEjected && member.endpoint.isEjected())) {
+                continue;
+            }
+            int outstanding = member.endpoint.getOutstanding();
+            if (outstanding < bestOutstanding) {
+                best = member;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Ejects the members that are much slower than the fastest one, as long as another member stays in rotation.
+     * Members are compared within each upload size bucket only, so a member that happened to get the large
+     * documents is not taken for a slow one.
+     */
+    private void ejectSlow() {
+        if (slowFactor <= 0) {
+            return;
+        }
+        int inRotation = 0;
+        for (Member member : members) {
+            if (!member.endpoint.isEjected()) {
+                inRotation++;
+            }
+        }
+        for (int bucket = 0; bucket <= ArynEndpoint.SIZE_BUCKET_BOUNDS.length && inRotation > 1; bucket++) {
+            inRotation -= ejectSlow(bucket, inRotation);
+        }
+    }
+
+    private int ejectSlow(int bucket, int inRotation) {
+        long fastest = Long.MAX_VALUE;
+        for (Member member : members) {
+            long latency = member.endpoint.isEjected() ? -1 : member.endpoint.getLatencyMicros(bucket, SLOW_MIN_SAMPLES);
+            if (latency >= 0) {
+                fastest = Math.min(fastest, latency);
+            }
+        }
+        if (fastest == Long.MAX_VALUE) {
+            return 0;
+        }
+        int ejected = 0;
+        for (Member member : members) {
+            if (inRotation - ejected <= 1) {
+                break;
+            }
+            long latency = member.endpoint.getLatencyMicros(bucket, SLOW_MIN_SAMPLES);
+            if (latency > slowFactor * Math.max(fastest, 1) && !member.endpoint.isEjected()
+                    && member.endpoint.eject(ejectionMillis, "average latency " + latency / 1000 + "ms for uploads "
+                            + bucketName(bucket) + " is over " + slowFactor + " times the fastest endpoint's "
+                            + fastest / 1000 + "ms")) {
+                ejected++;
+            }
+        }
+        return ejected;
+    }
+
+    private static String bucketName(int bucket) {
+        long[] bounds = ArynEndpoint.SIZE_BUCKET_BOUNDS;
+        return bucket < bounds.length ? "under " + new ByteSizeValue(bounds[bucket])
+                : "of " + new ByteSizeValue(bounds[bounds.length - 1]) + " and more";
+    }
+
+    @Override
+    public String toString() {
+        return members.stream().map(Member::getUrl).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * One endpoint of the pool with the client, circuit breaker and concurrency limiter a processor uses to call it.
+     */
+    public static final class Member {
+        final ArynEndpoint endpoint;
+        final PartitionClient client;
+        final EndpointCircuitBreaker breaker;
+        final AdaptiveConcurrencyLimiter limiter;
+
+        public Member(ArynEndpoint endpoint, PartitionClient client, EndpointCircuitBreaker breaker,
+                      AdaptiveConcurrencyLimiter limiter) {
+            this.endpoint = endpoint;
+            this.client = client;
+            this.breaker = breaker;
+            this.limiter = limiter;
+        }
+
+        public String getUrl() {
+            return endpoint.getUrl();
+        }
+
+        boolean isAvailable() {
+            return breaker == null || breaker.isAvailable();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives the images of one document while its partitioner response is parsed.
+ */
+@FunctionalInterface
+public interface ImageSink {
+
+    /**
+     * Consumes the base64 {@code binary_representation} string the parser is positioned on, decoding it as it
+     * is read, and returns the reference kept in place of the image.
+     *
+     * @param element index of the element within the response
+     */
+    Map<String, Object> write(int element, JsonParser parser) throws IOException;
+}
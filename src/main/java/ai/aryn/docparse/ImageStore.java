@@ -0,0 +1,286 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonParser;
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.ExceptionsHelper;
+import org.opensearch.OpenSearchException;
+import org.opensearch.ResourceAlreadyExistsException;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.transport.client.Client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the images of extracted Picture elements go instead of the ingested document: files under a
+ * {@code path.repo} directory, or documents of a side index. Images are keyed by the document id (or the
+ * content hash when the id is not known yet) and the element index.
+ */
+@Log4j2
+public abstract class ImageStore {
+
+    static final String IMAGE_MAPPING = "{\"properties\":{\"image\":{\"type\":\"binary\"},\"size\":{\"type\":\"long\"},"
+            + "\"content_type\":{\"type\":\"keyword\"},\"key\":{\"type\":\"keyword\"},\"element\":{\"type\":\"integer\"}}}";
+
+    /**
+     * Starts the images of one ingested document. Its sinks are used while partitioner responses are parsed, and
+     * {@link Batch#flush} is called once they were all read.
+     */
+    public abstract Batch batch();
+
+    /**
+     * Stores images below {@code root}, a directory under the {@code path.repo} location {@code repo}. The
+     * references hold paths relative to {@code repo}, so they stay valid on every node mounting the repository.
+     */
+    public static ImageStore path(Path repo, Path root) {
+        return new PathStore(repo, root);
+    }
+
+    public static ImageStore index(Client client, String index) {
+        return new IndexStore(client, index);
+    }
+
+    /**
+     * The images of one ingested document, which may span several responses when its page ranges are
+     * partitioned separately.
+     */
+    public abstract static class Batch {
+
+        /**
+         * Returns the sink for the images of the response identified by {@code key}.
+         */
+        public abstract ImageSink sink(String key);
+
+        /**
+         * Completes once the images written so far are stored.
+         */
+        public void flush(ActionListener<Void> listener) {
+            listener.onResponse(null);
+        }
+    }
+
+    /**
+     * Writes each image to {@code <root>/<key>/<element>.<ext>}, decoding the base64 straight into the file, so
+     * an image is never held in memory.
+     */
+    private static final class PathStore extends ImageStore {
+        private final Path repo;
+        private final Path root;
+
+        PathStore(Path repo, Path root) {
+            this.repo = repo;
+            this.root = root;
+        }
+
+        @Override
+        public Batch batch() {
+            return new Batch() {
+                @Override
+                public ImageSink sink(String key) {
+                    return (element, parser) -> write(key, element, parser);
+                }
+            };
+        }
+
+        private Map<String, Object> write(String key, int element, JsonParser parser) throws IOException {
+            Path directory = root.resolve(fileName(key));
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, String.valueOf(element), ".tmp");
+            SniffingOutputStream out = new SniffingOutputStream(Files.newOutputStream(tmp));
+            long size;
+            try (out) {
+                size = parser.readBinaryValue(out);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            Path target = directory.resolve(element + out.extension());
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Map<String, Object> ref = new LinkedHashMap<>();
+            ref.put("path", repo.relativize(target).toString());
+            ref.put("size", size);
+            ref.put("content_type", out.contentType());
+            return ref;
+        }
+
+        /**
+         * Ids are user input: encode them so they stay one path segment and cannot walk up the tree.
+         */
+        static String fileName(String key) {
+            return URLEncoder.encode(key, StandardCharsets.UTF_8).replace(".", "%2E").replace("*", "%2A");
+        }
+    }
+
+    /**
+     * Indexes each image as a binary field of a side index, created with a binary mapping on first use. The
+     * images of a document are held until its response was read and then sent as one bulk request, so no call
+     * waits on the cluster while the partitioner response is still open; max_response_bytes bounds them.
+     */
+    private static final class IndexStore extends ImageStore {
+        private final Client client;
+        private final String index;
+        private volatile boolean indexChecked;
+
+        IndexStore(Client client, String index) {
+            this.client = client;
+            this.index = index;
+        }
+
+        @Override
+        public Batch batch() {
+            List<IndexRequest> pending = Collections.synchronizedList(new ArrayList<>());
+            return new Batch() {
+                @Override
+                public ImageSink sink(String key) {
+                    return (element, parser) -> {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        SniffingOutputStream out = new SniffingOutputStream(bytes);
+                        long size = parser.readBinaryValue(out);
+                        String id = key + "_" + element;
+                        Map<String, Object> source = new LinkedHashMap<>();
+                        source.put("image", bytes.toByteArray());
+                        source.put("size", size);
+                        source.put("content_type", out.contentType());
+                        source.put("key", key);
+                        source.put("element", element);
+                        pending.add(new IndexRequest(index).id(id).source(source));
+                        Map<String, Object> ref = new LinkedHashMap<>();
+                        ref.put("index", index);
+                        ref.put("id", id);
+                        ref.put("size", size);
+                        ref.put("content_type", out.contentType());
+                        return ref;
+                    };
+                }
+
+                @Override
+                public void flush(ActionListener<Void> listener) {
+                    BulkRequest bulk = new BulkRequest();
+                    synchronized (pending) {
+                        pending.forEach(bulk::add);
+                        pending.clear();
+                    }
+                    if (bulk.numberOfActions() == 0) {
+                        listener.onResponse(null);
+                        return;
+                    }
+                    ensureIndex(ActionListener.wrap(r -> client.bulk(bulk, ActionListener.wrap(response -> {
+                        if (response.hasFailures()) {
+                            listener.onFailure(new OpenSearchException("unable to store images in [{}]: {}",
+                                    index, response.buildFailureMessage()));
+                        } else {
+                            listener.onResponse(null);
+                        }
+                    }, listener::onFailure)), listener::onFailure));
+                }
+            };
+        }
+
+        private void ensureIndex(ActionListener<Void> listener) {
+            if (indexChecked) {
+                listener.onResponse(null);
+                return;
+            }
+            client.admin().indices().prepareCreate(index).setMapping(IMAGE_MAPPING).execute(ActionListener.wrap(
+                    response -> {
+                        log.info("Created Aryn image index [{}]", index);
+                        indexChecked = true;
+                        listener.onResponse(null);
+                    },
+                    e -> {
+                        if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                            // created by another processor or node
+                            indexChecked = true;
+                            listener.onResponse(null);
+                        } else {
+                            listener.onFailure(e);
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Remembers the first bytes written, to tell the image format.
+     */
+    private static final class SniffingOutputStream extends FilterOutputStream {
+        private final byte[] head = new byte[4];
+        private int headLength;
+
+        SniffingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (headLength < head.length) {
+                head[headLength++] = (byte) b;
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = 0; i < len && headLength < head.length; i++) {
+                head[headLength++] = b[off + i];
+            }
+            out.write(b, off, len);
+        }
+
+        String contentType() {
+            if (headLength >= 4 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+                return "image/png";
+            }
+            if (headLength >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+                return "image/jpeg";
+            }
+            if (headLength >= 4 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8') {
+                return "image/gif";
+            }
+            return "application/octet-stream";
+        }
+
+        String extension() {
+            switch (contentType()) {
+                case "image/png":
+                    return ".png";
+                case "image/jpeg":
+                    return ".jpg";
+                case "image/gif":
+                    return ".gif";
+                default:
+                    return ".bin";
+            }
+        }
+    }
+}
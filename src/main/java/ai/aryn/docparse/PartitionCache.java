@@ -0,0 +1,284 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Node local cache of serialized partition results, keyed by a hash of the document bytes and the partition
+ * options. Entries live in a size bounded on-heap LRU and, when enabled, in a directory under the node data
+ * path so they survive restarts. A hit in the disk tier is promoted to the heap tier.
+ */
+@Log4j2
+public class PartitionCache {
+
+    static final String DISK_DIRECTORY = "aryn_partition_cache";
+    private static final String DISK_SUFFIX = ".json";
+
+    private final Cache<String, Entry> memory;
+    private final Path diskPath;
+    private final long diskMaxBytes;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, DiskEntry> diskIndex = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PartitionCache(Settings settings, Path dataPath) {
+        this(ArynSettings.CACHE_SIZE.get(settings).getBytes(),
+                ArynSettings.CACHE_TTL.get(settings),
+                ArynSettings.CACHE_DISK_ENABLED.get(settings) && dataPath != null ? dataPath.resolve(DISK_DIRECTORY) : null,
+                ArynSettings.CACHE_DISK_SIZE.get(settings).getBytes(),
+                System::currentTimeMillis);
+    }
+
+    PartitionCache(long memoryMaxBytes, TimeValue ttl, Path diskPath, long diskMaxBytes, LongSupplier clock) {
+        this.memory = CacheBuilder.<String, Entry>builder()
+                .setMaximumWeight(memoryMaxBytes)
+                .weigher((key, entry) -> entry.data.length)
+                .setExpireAfterWrite(ttl)
+                .build();
+        this.ttlMillis = ttl.millis();
+        this.diskMaxBytes = diskMaxBytes;
+        this.clock = clock;
+        this.diskPath = diskPath;
+        if (diskPath != null) {
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * Builds the cache key of a document: sha-256 over the endpoint, the serialized options and the input bytes.
+     */
+    public static String key(String arynUrl, byte[] options, DocumentInput input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(arynUrl).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(options);
+            digest.update((byte) 0);
+            try (InputStream in = input.openStream()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the cached result or null. {@code maxAge} may narrow the node level ttl for one processor.
+     */
+    public byte[] get(String key, TimeValue maxAge) {
+        long now = clock.getAsLong();
+        long maxAgeMillis = maxAge == null ? ttlMillis : Math.min(ttlMillis, maxAge.millis());
+        Entry entry = memory.get(key);
+        if (entry != null && now - entry.createdAt <= maxAgeMillis) {
+            memoryHits.increment();
+            return entry.data;
+        }
+        if (diskPath != null) {
+            Entry fromDisk = readFromDisk(key, now, maxAgeMillis);
+            if (fromDisk != null) {
+                diskHits.increment();
+                memory.put(key, fromDisk);
+                return fromDisk.data;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String key, byte[] data) {
+        long now = clock.getAsLong();
+        memory.put(key, new Entry(data, now));
+        if (diskPath != null && data.length <= diskMaxBytes) {
+            writeToDisk(key, data, now);
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getMemoryBytes() {
+        return memory.weight();
+    }
+
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    private Entry readFromDisk(String key, long now, long maxAgeMillis) {
+        DiskEntry entry = diskIndex.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.createdAt > maxAgeMillis) {
+            if (now - entry.createdAt > ttlMillis) {
+                removeFromDisk(key);
+            }
+            return null;
+        }
+        try {
+            return new Entry(Files.readAllBytes(file(key)), entry.createdAt);
+        } catch (IOException e) {
+            log.warn("Unable to read cached partition result [{}], dropping it", key, e);
+            removeFromDisk(key);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] data, long now) {
+        Path target = file(key);
+        try {
+            Path tmp = Files.createTempFile(diskPath, key, ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to write partition result [{}] to the disk cache", key, e);
+            return;
+        }
+        DiskEntry previous = diskIndex.put(key, new DiskEntry(data.length, now));
+        diskBytes.addAndGet(data.length - (previous == null ? 0 : previous.size));
+        if (diskBytes.get() > diskMaxBytes) {
+            evictFromDisk();
+        }
+    }
+
+    private synchronized void evictFromDisk() {
+        if (diskBytes.get() <= diskMaxBytes) {
+            return;
+        }
+        List<Map.Entry<String, DiskEntry>> entries = new ArrayList<>(diskIndex.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().createdAt));
+        for (Map.Entry<String, DiskEntry> entry : entries) {
+            if (diskBytes.get() <= diskMaxBytes) {
+                break;
+            }
+            removeFromDisk(entry.getKey());
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        DiskEntry entry = diskIndex.remove(key);
+        if (entry == null) {
+            return;
+        }
+        diskBytes.addAndGet(-entry.size);
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            log.warn("Unable to delete cached partition result [{}]", key, e);
+        }
+    }
+
+    private void loadDiskIndex() {
+        long now = clock.getAsLong();
+        try {
+            Files.createDirectories(diskPath);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskPath)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith(DISK_SUFFIX)) {
+                        // leftovers of interrupted writes
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long createdAt = Files.getLastModifiedTime(file).toMillis();
+                    if (now - createdAt > ttlMillis) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    diskIndex.put(name.substring(0, name.length() - DISK_SUFFIX.length()), new DiskEntry(size, createdAt));
+                    diskBytes.addAndGet(size);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load the partition disk cache from [{}]", diskPath, e);
+        }
+        evictFromDisk();
+        log.info("Loaded {} cached partition results ({} bytes) from [{}]", diskIndex.size(), diskBytes.get(), diskPath);
+    }
+
+    private Path file(String key) {
+        return diskPath.resolve(key + DISK_SUFFIX);
+    }
+
+    private static final class Entry {
+        final byte[] data;
+        final long createdAt;
+
+        Entry(byte[] data, long createdAt) {
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class DiskEntry {
+        final long size;
+        final long createdAt;
+
+        DiskEntry(long size, long createdAt) {
+            this.size = size;
+            this.createdAt = createdAt;
+        }
+    }
+}
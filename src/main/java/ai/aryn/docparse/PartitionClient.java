@@ -0,0 +1,411 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+import org.opensearch.common.unit.TimeValue;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Calls the DocParse partition endpoint with the document taken from memory. {@code PartitionApi} only
+ * uploads from a {@link java.nio.file.Path}, which forces a temp file per document; this builds the same
+ * multipart request directly from a {@link DocumentInput}, using the http client and object mapper of the SDK
+ * {@link ApiClient}.
+ * Response headers are returned with each result instead of being read back from the shared client.
+ * The same request can also be submitted as an asynchronous job whose result is fetched later by task id.
+ * Endpoints can be probed with a plain GET for the active health checks of an {@link EndpointPool}.
+ */
+public class PartitionClient {
+
+    static final String PARTITION_PATH = "/v1/document/partition";
+    static final String ASYNC_SUBMIT_PATH = "/v1/async/submit/document/partition";
+    static final String ASYNC_RESULT_PATH = "/v1/async/result/";
+    static final int ASYNC_PENDING_STATUS = 202;
+    private static final String DOCUMENT_FILE_NAME = "document";
+
+    private final ApiClient apiClient;
+    private final String apiKey;
+    private final String userAgent;
+
+    public PartitionClient(ApiClient apiClient, String apiKey, String userAgent) {
+        this.apiClient = apiClient;
+        this.apiKey = apiKey;
+        this.userAgent = userAgent;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return apiClient.getObjectMapper();
+    }
+
+    /**
+     * Partitions the document. {@code maxResponseBytes} bounds the size of the response, negative means unlimited.
+     */
+    public Result partition(DocumentInput input, byte[] options, long maxResponseBytes) throws ApiException {
+        return partition(input, options, maxResponseBytes, null);
+    }
+
+    /**
+     * Partitions the document, streaming extracted images to {@code images} when it is set.
+     */
+    public Result partition(DocumentInput input, byte[] options, long maxResponseBytes, ImageSink images) throws ApiException {
+        return partition(input, options, maxResponseBytes, images, null);
+    }
+
+    /**
+     * Partitions the document as one call of {@code calls}, which aborts the request when the group is cancelled.
+     */
+    public Result partition(DocumentInput input, byte[] options, long maxResponseBytes, ImageSink images, CallGroup calls)
+            throws ApiException {
+        HttpPost request = partitionRequest(PARTITION_PATH, input, options);
+        if (calls == null) {
+            return execute(request, maxResponseBytes, partitionResult(System.nanoTime(), maxResponseBytes, images));
+        }
+        calls.register(request);
+        try {
+            return execute(request, maxResponseBytes, partitionResult(System.nanoTime(), maxResponseBytes, images));
+        } finally {
+            calls.unregister(request);
+        }
+    }
+
+    /**
+     * Parses a partition result, timing the request from {@code sent} until the answer starts and the response after.
+     */
+    private BodyParser<Result> partitionResult(long sent, long maxResponseBytes, ImageSink images) {
+        return (statusCode, headers, body) -> {
+            long answered = System.nanoTime();
+            PartitionResult response = readResponse(body, maxResponseBytes, images);
+            return new Result(statusCode, headers, response, body.getCount(), answered - sent, System.nanoTime() - answered);
+        };
+    }
+
+    /**
+     * Submits the document as an asynchronous partition job and returns its task id. The call returns as soon
+     * as the job is accepted.
+     */
+    public String submitAsync(DocumentInput input, byte[] options) throws ApiException {
+        return submitAsync(input, options, null);
+    }
+
+    /**
+     * Submits the document as one call of {@code calls}, which aborts the upload when the group is cancelled.
+     */
+    public String submitAsync(DocumentInput input, byte[] options, CallGroup calls) throws ApiException {
+        HttpPost request = partitionRequest(ASYNC_SUBMIT_PATH, input, options);
+        Map<?, ?> submitted;
+        if (calls == null) {
+            submitted = execute(request, -1, (statusCode, headers, body) -> apiClient.getObjectMapper().readValue(body, Map.class));
+        } else {
+            calls.register(request);
+            try {
+                submitted = execute(request, -1, (statusCode, headers, body) -> apiClient.getObjectMapper().readValue(body, Map.class));
+            } finally {
+                calls.unregister(request);
+            }
+        }
+        Object taskId = submitted == null ? null : submitted.get("task_id");
+        if (taskId == null) {
+            throw new ApiException("Aryn partitioner accepted the job without a task_id");
+        }
+        return taskId.toString();
+    }
+
+    /**
+     * Fetches the result of an asynchronous partition job, or returns null while the job is still running.
+     */
+    public Result pollAsync(String taskId, long maxResponseBytes) throws ApiException {
+        return pollAsync(taskId, maxResponseBytes, null);
+    }
+
+    public Result pollAsync(String taskId, long maxResponseBytes, ImageSink images) throws ApiException {
+        HttpGet get = new HttpGet(apiClient.getBasePath() + ASYNC_RESULT_PATH + taskId);
+        addHeaders(get);
+        BodyParser<Result> result = partitionResult(System.nanoTime(), maxResponseBytes, images);
+        return execute(get, maxResponseBytes, (statusCode, headers, body) -> statusCode == ASYNC_PENDING_STATUS
+                ? null : result.parse(statusCode, headers, body));
+    }
+
+    /**
+     * Sends a GET to {@code path} of the endpoint, waiting at most {@code timeout}, and returns the status code.
+     */
+    public int checkHealth(String path, TimeValue timeout) throws IOException {
+        HttpGet get = new HttpGet(apiClient.getBasePath() + path);
+        addHeaders(get);
+        Timeout limit = Timeout.ofMilliseconds(timeout.millis());
+        get.setConfig(RequestConfig.custom().setConnectionRequestTimeout(limit).setResponseTimeout(limit).build());
+        return apiClient.getHttpClient().execute(get, response -> {
+            EntityUtils.consume(response.getEntity());
+            return response.getCode();
+        });
+    }
+
+    private HttpPost partitionRequest(String path, DocumentInput input, byte[] options) {
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addPart("file", new DocumentBody(input))
+                .addBinaryBody("options", options)
+                .build();
+        HttpPost post = new HttpPost(apiClient.getBasePath() + path);
+        post.setEntity(entity);
+        addHeaders(post);
+        return post;
+    }
+
+    private void addHeaders(HttpUriRequestBase request) {
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+        request.addHeader(HttpHeaders.USER_AGENT, userAgent);
+        request.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+    }
+
+    private PartitionResult readResponse(InputStream body, long maxResponseBytes, ImageSink images) throws IOException {
+        return PartitionResult.parse(apiClient.getObjectMapper(), body, maxResponseBytes, images);
+    }
+
+    /**
+     * Sends the request and parses a 2xx body with {@code parser}; any other status becomes an
+     * {@link ApiException} carrying the status, headers and error body.
+     */
+    private <T> T execute(HttpUriRequestBase request, long maxResponseBytes, BodyParser<T> parser) throws ApiException {
+        Outcome<T> outcome;
+        try {
+            outcome = apiClient.getHttpClient().execute(request, response -> handleResponse(response, maxResponseBytes, parser));
+        } catch (IOException e) {
+            throw new ApiException(e);
+        }
+        if (outcome.errorStatus != 0) {
+            throw new ApiException("Aryn partitioner returned status " + outcome.errorStatus,
+                    outcome.errorStatus, outcome.headers, outcome.errorBody);
+        }
+        return outcome.value;
+    }
+
+    private static <T> Outcome<T> handleResponse(ClassicHttpResponse response, long maxResponseBytes, BodyParser<T> parser)
+            throws IOException {
+        int statusCode = response.getCode();
+        Map<String, List<String>> headers = headers(response.getHeaders());
+        HttpEntity entity = response.getEntity();
+        // a pending async job may answer 202 without a body
+        if (statusCode < 200 || statusCode >= 300 || (entity == null && statusCode != ASYNC_PENDING_STATUS)) {
+            String body = null;
+            if (entity != null) {
+                try {
+                    body = EntityUtils.toString(entity, StandardCharsets.UTF_8);
+                } catch (org.apache.hc.core5.http.ParseException e) {
+                    throw new IOException(e);
+                }
+            }
+            return new Outcome<>(null, statusCode, headers, body);
+        }
+        if (maxResponseBytes >= 0 && entity != null && entity.getContentLength() > maxResponseBytes) {
+            // refuse before reading anything when the length is announced
+            throw new IllegalArgumentException("Aryn response of [" + entity.getContentLength()
+                    + "] bytes is larger than max_response_bytes [" + maxResponseBytes + "]");
+        }
+        try (CountingInputStream body = new CountingInputStream(entity == null ? InputStream.nullInputStream() : entity.getContent())) {
+            return new Outcome<>(parser.parse(statusCode, headers, body), 0, headers, null);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(int statusCode, Map<String, List<String>> headers, CountingInputStream body) throws IOException;
+    }
+
+    /**
+     * Counts the response bytes read by a parser, for the downloaded bytes in the node stats.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private static final class Outcome<T> {
+        final T value;
+        final int errorStatus;
+        final Map<String, List<String>> headers;
+        final String errorBody;
+
+        Outcome(T value, int errorStatus, Map<String, List<String>> headers, String errorBody) {
+            this.value = value;
+            this.errorStatus = errorStatus;
+            this.headers = headers;
+            this.errorBody = errorBody;
+        }
+    }
+
+    /**
+     * Multipart file part that copies the document from {@link DocumentInput#openStream()} while the request is
+     * written, so base64 input is decoded straight into the connection. The length is known up front, which
+     * keeps the request non-chunked, and a new stream is opened for every write.
+     */
+    private static final class DocumentBody extends AbstractContentBody {
+        private final DocumentInput input;
+
+        DocumentBody(DocumentInput input) {
+            super(ContentType.APPLICATION_OCTET_STREAM);
+            this.input = input;
+        }
+
+        @Override
+        public String getFilename() {
+            return DOCUMENT_FILE_NAME;
+        }
+
+        @Override
+        public long getContentLength() {
+            return input.length();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = input.openStream()) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> headers(Header[] headers) {
+        Map<String, List<String>> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : headers) {
+            result.computeIfAbsent(header.getName(), k -> new ArrayList<>()).add(header.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Outcome of one partition call, or of a finished asynchronous job, together with the headers it was answered with.
+     */
+    public static final class Result {
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final PartitionResult response;
+        private final long responseBytes;
+        private final long requestNanos;
+        private final long responseNanos;
+
+        Result(int statusCode, Map<String, List<String>> headers, PartitionResult response) {
+            this(statusCode, headers, response, 0);
+        }
+
+        Result(int statusCode, Map<String, List<String>> headers, PartitionResult response, long responseBytes) {
+            this(statusCode, headers, response, responseBytes, 0, 0);
+        }
+
+        Result(int statusCode, Map<String, List<String>> headers, PartitionResult response, long responseBytes,
+               long requestNanos, long responseNanos) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.response = response;
+            this.responseBytes = responseBytes;
+            this.requestNanos = requestNanos;
+            this.responseNanos = responseNanos;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public PartitionResult getResponse() {
+            return response;
+        }
+
+        /**
+         * Number of response body bytes read from the wire, 0 for results that did not come from a call.
+         */
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * Time from sending the request until the answer started: the upload plus Aryn's processing.
+         */
+        public long getRequestNanos() {
+            return requestNanos;
+        }
+
+        /**
+         * Time spent reading and parsing the response body.
+         */
+        public long getResponseNanos() {
+            return responseNanos;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs partition calls off the ingest threads. Every task gets its own virtual thread, at most
+ * {@code poolSize} of them run at once and at most {@code queueSize} more wait for a slot.
+ * Anything beyond that is rejected so that callers back off instead of piling up.
+ * <p>
+ * Waiting tasks are queued in two lanes by the decoded size of their document. When a slot frees up, the small
+ * lane gets {@code smallWeight} turns for every turn of the large lane, and large documents never hold more than
+ * their share of the slots, so a bulk of receipts is not stuck behind a few huge PDFs while those still progress.
+ */
+public class PartitionExecutor implements Closeable {
+
+    public enum Lane {
+        SMALL, LARGE;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ThreadContext threadContext;
+    private final Semaphore admitted;
+    private final int poolSize;
+    private final int queueSize;
+    private final long largeThreshold;
+    private final int largeLimit;
+    private final int smallWeight;
+
+    private final Object lock = new Object();
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private int active;
+    // small tasks started since the large lane last had its turn
+    private int smallTurns;
+
+    public PartitionExecutor(Settings settings, ThreadContext threadContext) {
+        this(ArynSettings.PARTITION_POOL_SIZE.get(settings), ArynSettings.PARTITION_QUEUE_SIZE.get(settings),
+                ArynSettings.PARTITION_LARGE_THRESHOLD.get(settings).getBytes(),
+                ArynSettings.PARTITION_LARGE_SHARE.get(settings), ArynSettings.PARTITION_SMALL_WEIGHT.get(settings),
+                threadContext);
+    }
+
+    PartitionExecutor(int poolSize, int queueSize, ThreadContext threadContext) {
+        this(poolSize, queueSize, -1, 1.0, 1, threadContext);
+    }
+
+    /**
+     * @param largeThreshold decoded input size from which a document goes to the large lane, -1 for a single lane
+     * @param largeShare     fraction of the pool large documents may hold at once, at least one slot
+     * @param smallWeight    small tasks started for every large task while both lanes wait
+     */
+    PartitionExecutor(int poolSize, int queueSize, long largeThreshold, double largeShare, int smallWeight,
+                      ThreadContext threadContext) {
+        this.poolSize = poolSize;
+        this.queueSize = queueSize;
+        this.largeThreshold = largeThreshold;
+        this.largeLimit = Math.max(1, (int) (poolSize * largeShare));
+        this.smallWeight = smallWeight;
+        this.threadContext = threadContext;
+        this.admitted = new Semaphore(poolSize + queueSize);
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneState());
+        }
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("aryn-partition-", 0).factory());
+    }
+
+    /**
+     * Schedules the task in the small lane, see {@link #execute(Runnable, long)}.
+     */
+    public void execute(Runnable task) {
+        execute(task, 0);
+    }
+
+    /**
+     * Schedules the task in the lane of its document's decoded size, or throws
+     * {@link OpenSearchRejectedExecutionException} if the pool and its queue are full.
+     */
+    public void execute(Runnable task, long inputBytes) {
+        if (executor.isShutdown()) {
+            throw new OpenSearchRejectedExecutionException("aryn partition executor is shut down", true);
+        }
+        if (!admitted.tryAcquire()) {
+            throw new OpenSearchRejectedExecutionException("rejected execution of aryn partition task, pool size ["
+                    + poolSize + "], queue size [" + queueSize + "]");
+        }
+        Runnable command = threadContext == null ? task : threadContext.preserveContext(task);
+        Lane lane = largeThreshold >= 0 && inputBytes >= largeThreshold ? Lane.LARGE : Lane.SMALL;
+        synchronized (lock) {
+            lanes.get(lane).queue.add(new Queued(command, lane, System.nanoTime()));
+        }
+        dispatch();
+    }
+
+    /**
+     * Runs one attempt of a call made by a running task on a thread of its own, so the task can stop waiting for
+     * it. The attempt bypasses the lanes, its task already holds a slot. Once the executor is shut down the
+     * attempt runs on the calling thread.
+     */
+    public void executeAttempt(Runnable attempt) {
+        try {
+            executor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            attempt.run();
+        }
+    }
+
+    /**
+     * Takes an admission permit for an extra attempt, such as a hedge, which counts against the pool and its queue
+     * like a task. Returns null when they are full; otherwise the permit is given back when the result is closed.
+     */
+    public Releasable tryAdmitAttempt() {
+        if (executor.isShutdown() || !admitted.tryAcquire()) {
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                admitted.release();
+            }
+        };
+    }
+
+    /**
+     * Starts waiting tasks while slots are free. The threads are started outside the lock.
+     */
+    private void dispatch() {
+        List<Queued> ready = new ArrayList<>();
+        synchronized (lock) {
+            Queued next;
+            while (active < poolSize && (next = next()) != null) {
+                active++;
+                LaneState state = lanes.get(next.lane);
+                state.active++;
+                state.started++;
+                state.waitTime.recordMicros((System.nanoTime() - next.queued) / 1000);
+                ready.add(next);
+            }
+        }
+        for (Queued task : ready) {
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                // once admitted the task must run, otherwise its ingest handler would never be called
+                run(task);
+            }
+        }
+    }
+
+    private Queued next() {
+        ArrayDeque<Queued> small = lanes.get(Lane.SMALL).queue;
+        ArrayDeque<Queued> large = lanes.get(Lane.LARGE).queue;
+        boolean largeReady = !large.isEmpty() && lanes.get(Lane.LARGE).active < largeLimit;
+        if (!small.isEmpty() && (!largeReady || smallTurns < smallWeight)) {
+            smallTurns++;
+            return small.poll();
+        } else if (largeReady) {
+            smallTurns = 0;
+            return large.poll();
+        }
+        return null;
+    }
+
+    private void run(Queued task) {
+        try {
+            task.command.run();
+        } finally {
+            synchronized (lock) {
+                active--;
+                lanes.get(task.lane).active--;
+            }
+            admitted.release();
+            dispatch();
+        }
+    }
+
+    public int getActiveCount() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    public int getQueueCount() {
+        synchronized (lock) {
+            return lanes.values().stream().mapToInt(state -> state.queue.size()).sum();
+        }
+    }
+
+    /**
+     * Running and waiting tasks of every lane, with the time the started ones waited for a slot.
+     */
+    public List<ArynNodeStats.LaneStats> getLaneStats() {
+        List<ArynNodeStats.LaneStats> stats = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<Lane, LaneState> entry : lanes.entrySet()) {
+                LaneState state = entry.getValue();
+                stats.add(new ArynNodeStats.LaneStats(entry.getKey().getName(), state.active, state.queue.size(),
+                        state.started, state.waitTime.snapshot()));
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class LaneState {
+        final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        final LatencyHistogram waitTime = new LatencyHistogram();
+        int active;
+        long started;
+    }
+
+    private static final class Queued {
+        final Runnable command;
+        final Lane lane;
+        final long queued;
+
+        Queued(Runnable command, Lane lane, long queued) {
+            this.command = command;
+            this.lane = lane;
+            this.queued = queued;
+        }
+    }
+}
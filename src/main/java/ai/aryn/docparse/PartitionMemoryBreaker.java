@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Accounts the memory of documents being partitioned against the plugin's {@code aryn} circuit breaker. A
+ * document reserves its estimated bytes before the partition call and gives them back once its result is
+ * applied; a reservation that would push the breaker over its limit fails the document with a
+ * {@link CircuitBreakingException} (HTTP 429) instead of letting a burst of large files exhaust the heap.
+ * <p>
+ * Created by the plugin up front and handed the breaker later, since processors are built before the breaker
+ * service exists. Until then, and for processors built outside the plugin, reservations are free.
+ */
+public class PartitionMemoryBreaker {
+
+    public static final String NAME = "aryn";
+
+    private static final Releasable NOOP = () -> {};
+
+    private volatile CircuitBreaker breaker;
+
+    void setBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * Reserves {@code bytes} for the document described by {@code label}. The returned reservation may be
+     * closed more than once.
+     *
+     * @throws CircuitBreakingException when the reservation would exceed the breaker limit
+     */
+    public Releasable reserve(long bytes, String label) {
+        CircuitBreaker breaker = this.breaker;
+        if (breaker == null || bytes <= 0) {
+            return NOOP;
+        }
+        breaker.addEstimateBytesAndMaybeBreak(bytes, label);
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                breaker.addWithoutBreaking(-bytes);
+            }
+        };
+    }
+
+    /**
+     * Estimated heap held while a document is partitioned: the decoded document, unless it is streamed from its
+     * base64 source, plus a response assumed to be as large as the document and capped by max_response_bytes.
+     */
+    static long estimate(long inputBytes, boolean streamed, long maxResponseBytes) {
+        long response = maxResponseBytes >= 0 ? Math.min(inputBytes, maxResponseBytes) : inputBytes;
+        return (streamed ? 0 : inputBytes) + response;
+    }
+}
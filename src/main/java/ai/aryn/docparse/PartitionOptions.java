@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The partition options of one processor. The configured options are serialized once; documents that override
+ * some of them through {@code options_field} get a variant that is serialized on first use and then reused
+ * for every document with the same overrides.
+ */
+public class PartitionOptions {
+
+    static final Set<String> OVERRIDABLE = Set.of("threshold", "text_mode", "table_mode", "extract_images",
+            "summarize_images", "schema");
+    static final int MAX_VARIANTS = 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Object threshold;
+    private final String textMode;
+    private final String tableMode;
+    private final boolean extractImages;
+    private final boolean summarizeImages;
+    private final Object schema;
+    private final byte[] json;
+    private final Map<Map<String, Object>, byte[]> variants = new ConcurrentHashMap<>();
+
+    public PartitionOptions(String threshold, String textMode, String tableMode, boolean extractImages,
+                            boolean summarizeImages, String schema) {
+        this(parseThreshold(threshold), textMode, tableMode, extractImages, summarizeImages, (Object) schema);
+    }
+
+    private PartitionOptions(Object threshold, String textMode, String tableMode, boolean extractImages,
+                             boolean summarizeImages, Object schema) {
+        this.threshold = threshold;
+        this.textMode = textMode;
+        this.tableMode = tableMode;
+        this.extractImages = extractImages;
+        this.summarizeImages = summarizeImages;
+        this.schema = schema;
+        this.json = serialize();
+    }
+
+    /**
+     * The serialized configured options.
+     */
+    public byte[] toJson() {
+        return json;
+    }
+
+    /**
+     * The serialized options with {@code overrides} applied. Without overrides, or once a variant was built,
+     * this returns a shared array.
+     */
+    public byte[] resolve(Map<String, ?> overrides) {
+        if (overrides == null || overrides.isEmpty()) {
+            return json;
+        }
+        byte[] variant = variants.get(overrides);
+        if (variant != null) {
+            return variant;
+        }
+        variant = withOverrides(overrides).json;
+        if (variants.size() < MAX_VARIANTS) {
+            variants.putIfAbsent(new HashMap<>(overrides), variant);
+        }
+        return variant;
+    }
+
+    /**
+     * Returns serialized options that limit partitioning to the pages {@code first} to {@code last}, inclusive
+     * and 1-based.
+     */
+    public static byte[] withSelectedPages(byte[] options, int first, int last) {
+        try {
+            Map<String, Object> optionsMap = MAPPER.readValue(options, new TypeReference<LinkedHashMap<String, Object>>() {});
+            optionsMap.put("selected_pages", List.of(List.of(first, last)));
+            return MAPPER.writeValueAsBytes(optionsMap);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to serialize partition options", e);
+        }
+    }
+
+    int variantCount() {
+        return variants.size();
+    }
+
+    private PartitionOptions withOverrides(Map<String, ?> overrides) {
+        Object threshold = this.threshold;
+        String textMode = this.textMode;
+        String tableMode = this.tableMode;
+        boolean extractImages = this.extractImages;
+        boolean summarizeImages = this.summarizeImages;
+        Object schema = this.schema;
+        for (Map.Entry<String, ?> entry : overrides.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            switch (entry.getKey()) {
+                case "threshold":
+                    threshold = value instanceof Number ? ((Number) value).doubleValue() : parseThreshold(value.toString());
+                    break;
+                case "text_mode":
+                    textMode = value.toString();
+                    break;
+                case "table_mode":
+                    tableMode = value.toString();
+                    break;
+                case "extract_images":
+                    extractImages = parseBoolean(entry.getKey(), value);
+                    break;
+                case "summarize_images":
+                    summarizeImages = parseBoolean(entry.getKey(), value);
+                    break;
+                case "schema":
+                    schema = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("option [" + entry.getKey() + "] cannot be overridden per document, "
+                            + "supported options are " + OVERRIDABLE);
+            }
+        }
+        return new PartitionOptions(threshold, textMode, tableMode, extractImages, summarizeImages, schema);
+    }
+
+    private byte[] serialize() {
+        Map<String, Object> optionsMap = new LinkedHashMap<>();
+        optionsMap.put("threshold", threshold);
+        if (textMode != null) {
+            optionsMap.put("text_mode", textMode);
+        }
+        if (tableMode != null) {
+            optionsMap.put("table_mode", tableMode);
+        }
+        optionsMap.put("extract_images", extractImages);
+        optionsMap.put("summarize_images", summarizeImages);
+        if (schema != null) {
+            optionsMap.put("property_extraction_options", Map.of("schema", schema));
+        }
+        try {
+            return MAPPER.writeValueAsBytes(optionsMap);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("unable to serialize partition options", e);
+        }
+    }
+
+    private static Object parseThreshold(String threshold) {
+        if (threshold.equals("auto")) {
+            return "auto";
+        }
+        try {
+            return Double.valueOf(threshold);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("threshold [" + threshold + "] must be \"auto\" or a number", e);
+        }
+    }
+
+    private static boolean parseBoolean(String name, Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = value.toString().toLowerCase(Locale.ROOT);
+        if (text.equals("true") || text.equals("false")) {
+            return Boolean.parseBoolean(text);
+        }
+        throw new IllegalArgumentException("option [" + name + "] must be a boolean, but was [" + value + "]");
+    }
+}
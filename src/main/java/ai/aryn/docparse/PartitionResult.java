@@ -0,0 +1,294 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a partitioner response that end up in the ingest document: type, page, bounding box and text
+ * representation of each element, and the extracted properties. The response is read as a token stream; every
+ * other element field is skipped without being materialized. The base64 images of {@code extract_images} are
+ * either skipped too or streamed to an {@link ImageSink}, which leaves only a reference in the element.
+ */
+public class PartitionResult {
+
+    /**
+     * Element field holding the image reference in cached results.
+     */
+    static final String IMAGE_REF = "image_ref";
+
+    private final List<Element> elements;
+    private final Map<String, Object> properties;
+
+    PartitionResult(List<Element> elements, Map<String, Object> properties) {
+        this.elements = elements;
+        this.properties = properties;
+    }
+
+    public List<Element> getElements() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * The extracted properties, empty when the response has none.
+     */
+    public Map<String, Object> getProperties() {
+        return properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Reads a partitioner response. {@code maxBytes} bounds the bytes read from {@code in}, negative means
+     * unlimited.
+     */
+    public static PartitionResult parse(ObjectMapper mapper, InputStream in, long maxBytes) throws IOException {
+        return parse(mapper, in, maxBytes, null);
+    }
+
+    /**
+     * Reads a partitioner response, handing the images of Picture elements to {@code images} as they stream
+     * by. Without a sink images are skipped.
+     */
+    public static PartitionResult parse(ObjectMapper mapper, InputStream in, long maxBytes, ImageSink images) throws IOException {
+        InputStream source = maxBytes < 0 ? in : new LimitedInputStream(in, maxBytes);
+        List<Element> elements = new ArrayList<>();
+        Map<String, Object> properties = null;
+        try (JsonParser parser = mapper.getFactory().createParser(source)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("partitioner response is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals("elements") && value == JsonToken.START_ARRAY) {
+                    readElements(parser, elements, images);
+                } else if (name.equals("properties") && value == JsonToken.START_OBJECT) {
+                    properties = parser.readValueAs(Map.class);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new PartitionResult(elements, properties);
+    }
+
+    private static void readElements(JsonParser parser, List<Element> elements, ImageSink images) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String type = null;
+            String text = null;
+            Integer page = null;
+            List<Double> bbox = null;
+            Map<String, Object> image = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals("type") && value == JsonToken.VALUE_STRING) {
+                    type = parser.getText();
+                } else if (name.equals("text_representation") && value == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                } else if (name.equals("bbox") && value == JsonToken.START_ARRAY) {
+                    bbox = readNumbers(parser);
+                } else if (name.equals("properties") && value == JsonToken.START_OBJECT) {
+                    page = readPageNumber(parser);
+                } else if (name.equals("binary_representation") && value == JsonToken.VALUE_STRING && images != null) {
+                    image = images.write(elements.size(), parser);
+                } else if (name.equals(IMAGE_REF) && value == JsonToken.START_OBJECT) {
+                    image = parser.readValueAs(Map.class);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            elements.add(new Element(type, text, page, bbox, image));
+        }
+    }
+
+    private static List<Double> readNumbers(JsonParser parser) throws IOException {
+        List<Double> numbers = new ArrayList<>(4);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                numbers.add(parser.getDoubleValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return numbers;
+    }
+
+    private static Integer readPageNumber(JsonParser parser) throws IOException {
+        Integer page = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("page_number") && value == JsonToken.VALUE_NUMBER_INT) {
+                page = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Concatenates the elements of results of consecutive page ranges. For properties present in more than one
+     * result, the value of the earliest range wins.
+     */
+    public static PartitionResult merge(List<PartitionResult> results) {
+        List<Element> elements = new ArrayList<>();
+        Map<String, Object> properties = null;
+        for (PartitionResult result : results) {
+            elements.addAll(result.elements);
+            if (result.properties != null) {
+                if (properties == null) {
+                    properties = new LinkedHashMap<>();
+                }
+                for (Map.Entry<String, Object> entry : result.properties.entrySet()) {
+                    properties.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return new PartitionResult(elements, properties);
+    }
+
+    /**
+     * Serializes the result in the shape of a partitioner response, so cached entries are read back by
+     * {@link #parse}.
+     */
+    public byte[] toJson(ObjectMapper mapper) throws IOException {
+        List<Map<String, Object>> serialized = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (element.type != null) {
+                map.put("type", element.type);
+            }
+            if (element.bbox != null) {
+                map.put("bbox", element.bbox);
+            }
+            if (element.page != null) {
+                map.put("properties", Map.of("page_number", element.page));
+            }
+            if (element.text != null) {
+                map.put("text_representation", element.text);
+            }
+            if (element.image != null) {
+                map.put(IMAGE_REF, element.image);
+            }
+            serialized.add(map);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("elements", serialized);
+        if (properties != null) {
+            response.put("properties", properties);
+        }
+        return mapper.writeValueAsBytes(response);
+    }
+
+    /**
+     * One partitioned element. Any of its parts may be null.
+     */
+    public static final class Element {
+        private final String type;
+        private final String text;
+        private final Integer page;
+        private final List<Double> bbox;
+        private final Map<String, Object> image;
+
+        Element(String type, String text, Integer page, List<Double> bbox) {
+            this(type, text, page, bbox, null);
+        }
+
+        Element(String type, String text, Integer page, List<Double> bbox, Map<String, Object> image) {
+            this.type = type;
+            this.text = text;
+            this.page = page;
+            this.bbox = bbox;
+            this.image = image;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Integer getPage() {
+            return page;
+        }
+
+        public List<Double> getBbox() {
+            return bbox;
+        }
+
+        /**
+         * Reference to the image written by an {@link ImageSink}, or null.
+         */
+        public Map<String, Object> getImage() {
+            return image;
+        }
+    }
+
+    /**
+     * Fails the read once more than {@code maxBytes} bytes were consumed.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            count += n;
+            if (count > maxBytes) {
+                throw new IllegalArgumentException("Aryn response is larger than max_response_bytes [" + maxBytes + "]");
+            }
+        }
+    }
+}
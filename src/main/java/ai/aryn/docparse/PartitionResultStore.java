@@ -0,0 +1,321 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.ExceptionsHelper;
+import org.opensearch.ResourceAlreadyExistsException;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.support.ContextPreservingActionListener;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.action.support.WriteRequest;
+import org.opensearch.cluster.LocalNodeClusterManagerListener;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.index.IndexNotFoundException;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.sort.SortOrder;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.client.Client;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Cluster wide store of serialized partition results in a system index, keyed like the {@link PartitionCache}
+ * by the hash of the endpoint, the options and the document bytes. It is looked up after a node cache miss and
+ * filled after every successful call, so a document seen by any node, before or after a restart, is not sent to
+ * Aryn again. The store is best effort: failures to read or write it are logged and the call goes ahead.
+ * <p>
+ * While the local node is the elected cluster manager it runs the cleanup job, which deletes results older than
+ * the ttl and then the oldest results beyond {@code max_entries}.
+ */
+@Log4j2
+public class PartitionResultStore implements LocalNodeClusterManagerListener {
+
+    public static final String INDEX = ".aryn-partition-results";
+    static final String MAPPING = "{\"dynamic\":\"strict\",\"properties\":{"
+            + "\"result\":{\"type\":\"binary\"},"
+            + "\"created_at\":{\"type\":\"date\",\"format\":\"epoch_millis\"},"
+            + "\"size\":{\"type\":\"long\"}}}";
+    private static final int CLEANUP_BATCH_SIZE = 1000;
+
+    private final Client client;
+    private final ThreadContext threadContext;
+    private final long ttlMillis;
+    private final long maxEntries;
+    private final TimeValue cleanupInterval;
+    private final TimeValue timeout;
+    private final LongSupplier clock;
+    private volatile boolean indexChecked;
+    private volatile ThreadPool threadPool;
+    private volatile Scheduler.Cancellable cleanup;
+    private final AtomicBoolean cleaning = new AtomicBoolean();
+
+    public PartitionResultStore(Settings settings, Client client, ThreadContext threadContext) {
+        this(client, threadContext, ArynSettings.RESULT_STORE_TTL.get(settings), ArynSettings.RESULT_STORE_MAX_ENTRIES.get(settings),
+                ArynSettings.RESULT_STORE_CLEANUP_INTERVAL.get(settings), ArynSettings.RESULT_STORE_TIMEOUT.get(settings),
+                System::currentTimeMillis);
+    }
+
+    PartitionResultStore(Client client, ThreadContext threadContext, TimeValue ttl, long maxEntries, TimeValue cleanupInterval,
+                         TimeValue timeout, LongSupplier clock) {
+        this.client = client;
+        this.threadContext = threadContext;
+        this.ttlMillis = ttl.millis();
+        this.maxEntries = maxEntries;
+        this.cleanupInterval = cleanupInterval;
+        this.timeout = timeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Passes the stored result or null to the listener, in the caller's thread context. {@code maxAge} may narrow
+     * the ttl for one processor. Failures to read the store are logged and pass null.
+     */
+    public void get(String key, TimeValue maxAge, ActionListener<byte[]> listener) {
+        long maxAgeMillis = maxAge == null ? ttlMillis : Math.min(ttlMillis, maxAge.millis());
+        ActionListener<byte[]> restoring = new ContextPreservingActionListener<>(threadContext.newRestorableContext(false), listener);
+        // the system index is read as the plugin, not as the user running the pipeline
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            client.prepareGet(INDEX, key).execute(new ActionListener<>() {
+                @Override
+                public void onResponse(GetResponse response) {
+                    byte[] result = null;
+                    try {
+                        result = response.isExists() ? decode(response.getSourceAsMap(), clock.getAsLong(), maxAgeMillis) : null;
+                    } catch (Exception e) {
+                        log.warn("Unable to read partition result [{}] from [{}]", key, INDEX, e);
+                    }
+                    restoring.onResponse(result);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (!(ExceptionsHelper.unwrapCause(e) instanceof IndexNotFoundException)) {
+                        log.warn("Unable to read partition result [{}] from [{}]", key, INDEX, e);
+                    }
+                    restoring.onResponse(null);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Unable to read partition result [{}] from [{}]", key, INDEX, e);
+            restoring.onResponse(null);
+        }
+    }
+
+    /**
+     * Returns the stored result or null, waiting for at most the store timeout. For callers on the partition
+     * executor, never on a transport or write thread.
+     */
+    public byte[] get(String key, TimeValue maxAge) {
+        PlainActionFuture<byte[]> future = PlainActionFuture.newFuture();
+        get(key, maxAge, future);
+        try {
+            return future.actionGet(timeout);
+        } catch (Exception e) {
+            log.warn("Unable to read partition result [{}] from [{}]", key, INDEX, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result without waiting for the write, or for the index to be created.
+     */
+    public void put(String key, byte[] data) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("result", data);
+        source.put("created_at", clock.getAsLong());
+        source.put("size", data.length);
+        IndexRequest request = new IndexRequest(INDEX).id(key).source(source);
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            ensureIndex(ActionListener.wrap(
+                    created -> client.index(request, ActionListener.wrap(
+                            r -> {},
+                            e -> log.warn("Unable to store partition result [{}] in [{}]", key, INDEX, e))),
+                    e -> log.warn("Unable to store partition result [{}] in [{}]", key, INDEX, e)));
+        } catch (Exception e) {
+            log.warn("Unable to store partition result [{}] in [{}]", key, INDEX, e);
+        }
+    }
+
+    /**
+     * Returns the result of a stored document, or null when it is older than {@code maxAgeMillis}.
+     */
+    static byte[] decode(Map<String, Object> source, long now, long maxAgeMillis) {
+        Object createdAt = source.get("created_at");
+        Object result = source.get("result");
+        if (!(createdAt instanceof Number) || result == null) {
+            return null;
+        }
+        if (now - ((Number) createdAt).longValue() > maxAgeMillis) {
+            return null;
+        }
+        // binary fields come back from _source as base64
+        return result instanceof byte[] ? (byte[]) result : Base64.getDecoder().decode(result.toString());
+    }
+
+    private void ensureIndex(ActionListener<Void> listener) {
+        if (indexChecked) {
+            listener.onResponse(null);
+            return;
+        }
+        client.admin().indices().prepareCreate(INDEX)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.auto_expand_replicas", "0-1")
+                        .put("index.hidden", true))
+                .setMapping(MAPPING)
+                .execute(ActionListener.wrap(
+                        response -> {
+                            log.info("Created the Aryn partition result store [{}]", INDEX);
+                            indexChecked = true;
+                            listener.onResponse(null);
+                        },
+                        e -> {
+                            if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                                // created by another node
+                                indexChecked = true;
+                                listener.onResponse(null);
+                            } else {
+                                listener.onFailure(e);
+                            }
+                        }));
+    }
+
+    /**
+     * Gives the store the thread pool its cleanup job runs on; called once the node components exist.
+     */
+    public void setThreadPool(ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    @Override
+    public synchronized void onClusterManager() {
+        if (threadPool != null && cleanup == null) {
+            cleanup = threadPool.scheduleWithFixedDelay(this::cleanup, cleanupInterval, ThreadPool.Names.GENERIC);
+        }
+    }
+
+    @Override
+    public synchronized void offClusterManager() {
+        if (cleanup != null) {
+            cleanup.cancel();
+            cleanup = null;
+        }
+    }
+
+    /**
+     * Deletes expired results, then the oldest results beyond max_entries. Runs in batches; whatever a run does
+     * not get to is left for the next one. The searches and deletes are asynchronous, so the run holds no thread
+     * while it waits, and a run is skipped while the previous one is still going.
+     */
+    void cleanup() {
+        if (!cleaning.compareAndSet(false, true)) {
+            return;
+        }
+        try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+            long now = clock.getAsLong();
+            deleteOldest(QueryBuilders.rangeQuery("created_at").lt(now - ttlMillis), Long.MAX_VALUE, 0, ActionListener.wrap(
+                    expired -> client.prepareSearch(INDEX).setSize(0).setTrackTotalHits(true).setTimeout(timeout)
+                            .execute(ActionListener.wrap(
+                                    count -> {
+                                        long excess = count.getHits().getTotalHits().value() - maxEntries;
+                                        if (excess <= 0) {
+                                            endCleanup(expired, 0);
+                                            return;
+                                        }
+                                        deleteOldest(QueryBuilders.matchAllQuery(), excess, 0, ActionListener.wrap(
+                                                evicted -> endCleanup(expired, evicted),
+                                                this::cleanupFailed));
+                                    },
+                                    this::cleanupFailed)),
+                    this::cleanupFailed));
+        } catch (Exception e) {
+            cleanupFailed(e);
+        }
+    }
+
+    private void endCleanup(long expired, long evicted) {
+        if (expired > 0 || evicted > 0) {
+            log.info("Removed {} expired and {} excess partition results from [{}]", expired, evicted, INDEX);
+        }
+        cleaning.set(false);
+    }
+
+    private void cleanupFailed(Exception e) {
+        // no index means nothing stored yet
+        if (!(ExceptionsHelper.unwrapCause(e) instanceof IndexNotFoundException)) {
+            log.warn("Cleanup of the partition result store [{}] failed", INDEX, e);
+        }
+        cleaning.set(false);
+    }
+
+    /**
+     * Deletes the oldest results matching the query, a batch at a time, until {@code limit} are gone or none are
+     * left, and passes on how many were deleted.
+     */
+    private void deleteOldest(QueryBuilder query, long limit, long deleted, ActionListener<Long> listener) {
+        if (deleted >= limit) {
+            listener.onResponse(deleted);
+            return;
+        }
+        client.prepareSearch(INDEX)
+                .setQuery(query)
+                .addSort("created_at", SortOrder.ASC)
+                .setSize((int) Math.min(CLEANUP_BATCH_SIZE, limit - deleted))
+                .setFetchSource(false)
+                .setTimeout(timeout)
+                .execute(ActionListener.wrap(
+                        response -> {
+                            SearchHit[] hits = response.getHits().getHits();
+                            if (hits.length == 0) {
+                                listener.onResponse(deleted);
+                                return;
+                            }
+                            BulkRequest bulk = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE)
+                                    .timeout(timeout);
+                            for (SearchHit hit : hits) {
+                                bulk.add(new DeleteRequest(INDEX, hit.getId()));
+                            }
+                            client.bulk(bulk, ActionListener.wrap(
+                                    result -> {
+                                        if (result.hasFailures()) {
+                                            log.warn("Some partition results could not be removed from [{}]: {}", INDEX,
+                                                    result.buildFailureMessage());
+                                            listener.onResponse(deleted);
+                                        } else {
+                                            deleteOldest(query, limit, deleted + hits.length, listener);
+                                        }
+                                    },
+                                    listener::onFailure));
+                        },
+                        listener::onFailure));
+    }
+}
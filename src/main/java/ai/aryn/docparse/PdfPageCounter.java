@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the page count of a PDF without a PDF library. The count comes from the page tree: the {@code /Count} of
+ * the {@code /Pages} object the trailer's {@code /Root} catalog points to, taking the last definition of each
+ * object so that incremental updates supersede earlier revisions. When the catalog or the page tree sits in a
+ * compressed object stream, the count falls back to scanning for page objects ({@code /Type /Page}), which
+ * counts pages replaced by incremental updates too and is only an upper bound. Page objects kept in object
+ * streams are not visible to the scan either; callers treat a count of 0 as unknown and send the document whole.
+ */
+public final class PdfPageCounter {
+
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    // one pass over the bytes, the group that matched tells which token was found
+    private static final Pattern TOKENS = Pattern.compile("(?<page>/Type\\s*/Page(?![A-Za-z]))"
+            + "|(?<obj>(?<![0-9])[0-9]+)\\s+[0-9]+\\s+obj(?![A-Za-z])"
+            + "|/Root\\s+(?<root>[0-9]+)\\s+[0-9]+\\s+R(?![A-Za-z])"
+            + "|/Pages\\s+(?<pages>[0-9]+)\\s+[0-9]+\\s+R(?![A-Za-z])"
+            + "|/Count\\s+(?<count>[0-9]+)(?![0-9])");
+    // long enough to hold any page marker cut at a buffer boundary
+    private static final int OVERLAP = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PdfPageCounter() {}
+
+    public static boolean isPdf(DocumentInput input) {
+        try (InputStream in = input.openStream()) {
+            byte[] head = in.readNBytes(PDF_MAGIC.length);
+            for (int i = 0; i < PDF_MAGIC.length; i++) {
+                if (head.length <= i || head[i] != PDF_MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the page count of the page tree, else the number of page objects found, or 0 when the document
+     * is not a PDF or neither was found.
+     */
+    public static int count(DocumentInput input) throws IOException {
+        if (!isPdf(input)) {
+            return 0;
+        }
+        int pageObjects = 0;
+        String object = null;
+        String root = null;
+        // last definition wins, later revisions of an object come later in the file
+        Map<String, String> pagesOf = new HashMap<>();
+        Map<String, Integer> countOf = new HashMap<>();
+        String carry = "";
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = input.openStream()) {
+            int n;
+            while ((n = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                boolean eof = n < buffer.length;
+                String window = carry + new String(buffer, 0, n, StandardCharsets.ISO_8859_1);
+                Matcher matcher = TOKENS.matcher(window);
+                while (matcher.find()) {
+                    // matches ending in the carried over part were seen in the previous window, and a
+                    // match at the very end is only taken once the next byte is known
+                    if (matcher.end() < carry.length() || (matcher.end() == window.length() && !eof)) {
+                        continue;
+                    }
+                    if (matcher.group("page") != null) {
+                        pageObjects++;
+                    } else if (matcher.group("obj") != null) {
+                        object = matcher.group("obj");
+                    } else if (matcher.group("root") != null) {
+                        root = matcher.group("root");
+                    } else if (matcher.group("pages") != null) {
+                        if (object != null) {
+                            pagesOf.put(object, matcher.group("pages"));
+                        }
+                    } else if (object != null) {
+                        try {
+                            countOf.put(object, Integer.parseInt(matcher.group("count")));
+                        } catch (NumberFormatException e) {
+                            // not a page count
+                        }
+                    }
+                }
+                if (eof) {
+                    break;
+                }
+                carry = window.substring(Math.max(0, window.length() - OVERLAP));
+            }
+        }
+        Integer treeCount = root == null || !pagesOf.containsKey(root) ? null : countOf.get(pagesOf.get(root));
+        if (treeCount != null && treeCount > 0) {
+            return treeCount;
+        }
+        return pageObjects;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.ingest.IngestDocument;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Counters and latency histograms of the Aryn processors with one tag on this node. A document is one run of
+ * the processor, a call is one request to the Aryn endpoint; a document can make several calls through
+ * retries, split page ranges or async polling.
+ */
+public class ProcessorStats {
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder documentFailures = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder callFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder bytesUploaded = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final LongAdder extractedLocally = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicLong documentsInFlight = new AtomicLong();
+    private final AtomicLong callsInFlight = new AtomicLong();
+    private final LatencyHistogram documentLatency = new LatencyHistogram();
+    private final LatencyHistogram callLatency = new LatencyHistogram();
+
+    /**
+     * Marks the start of a document and returns the start time to pass to {@link #onDocumentDone}.
+     */
+    public long onDocumentStart() {
+        documents.increment();
+        documentsInFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void onDocumentDone(long startNanos, boolean failed) {
+        documentsInFlight.decrementAndGet();
+        if (failed) {
+            documentFailures.increment();
+        }
+        documentLatency.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Wraps an async completion handler so the document is counted from now until the handler is called.
+     */
+    public BiConsumer<IngestDocument, Exception> track(BiConsumer<IngestDocument, Exception> handler) {
+        long start = onDocumentStart();
+        return (doc, e) -> {
+            onDocumentDone(start, e != null);
+            handler.accept(doc, e);
+        };
+    }
+
+    /**
+     * Marks the start of a call and returns the start time to pass to {@link #onCallDone}.
+     */
+    public long onCallStart() {
+        calls.increment();
+        callsInFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void onCallDone(long startNanos, boolean failed) {
+        callsInFlight.decrementAndGet();
+        if (failed) {
+            callFailures.increment();
+        }
+        callLatency.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public void onRetry() {
+        retries.increment();
+    }
+
+    public void onRejected() {
+        rejected.increment();
+    }
+
+    public void onHedge() {
+        hedges.increment();
+    }
+
+    public void onTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * Call latency in microseconds at {@code percentile}, or -1 while fewer than {@code minCalls} calls were timed.
+     */
+    public long callLatencyPercentile(double percentile, long minCalls) {
+        LatencyHistogram.Snapshot snapshot = callLatency.snapshot();
+        return snapshot.getCount() < minCalls ? -1 : snapshot.percentile(percentile);
+    }
+
+    public void onCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    public void addBytesUploaded(long bytes) {
+        bytesUploaded.add(bytes);
+    }
+
+    public void addBytesDownloaded(long bytes) {
+        bytesDownloaded.add(bytes);
+    }
+
+    /**
+     * Counts a document whose content type was handled without Aryn: its text extracted locally, or skipped.
+     */
+    public void onBypass(boolean extracted) {
+        (extracted ? extractedLocally : skipped).increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(documents.sum(), documentFailures.sum(), documentsInFlight.get(),
+                calls.sum(), callFailures.sum(), callsInFlight.get(), retries.sum(), rejected.sum(),
+                hedges.sum(), timeouts.sum(), cacheHits.sum(), cacheMisses.sum(), bytesUploaded.sum(), bytesDownloaded.sum(),
+                extractedLocally.sum(), skipped.sum(), documentLatency.snapshot(), callLatency.snapshot());
+    }
+
+    /**
+     * Point in time copy of the stats, sent between nodes and summed for the cluster wide view.
+     */
+    public static class Snapshot implements Writeable, ToXContentFragment {
+        private final long documents;
+        private final long documentFailures;
+        private final long documentsInFlight;
+        private final long calls;
+        private final long callFailures;
+        private final long callsInFlight;
+        private final long retries;
+        private final long rejected;
+        private final long hedges;
+        private final long timeouts;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long bytesUploaded;
+        private final long bytesDownloaded;
+        private final long extractedLocally;
+        private final long skipped;
+        private final LatencyHistogram.Snapshot documentLatency;
+        private final LatencyHistogram.Snapshot callLatency;
+
+        Snapshot(long documents, long documentFailures, long documentsInFlight, long calls, long callFailures,
+                 long callsInFlight, long retries, long rejected, long hedges, long timeouts, long cacheHits, long cacheMisses,
+                 long bytesUploaded, long bytesDownloaded, long extractedLocally, long skipped,
+                 LatencyHistogram.Snapshot documentLatency, LatencyHistogram.Snapshot callLatency) {
+            this.documents = documents;
+            this.documentFailures = documentFailures;
+            this.documentsInFlight = documentsInFlight;
+            this.calls = calls;
+            this.callFailures = callFailures;
+            this.callsInFlight = callsInFlight;
+            this.retries = retries;
+            this.rejected = rejected;
+            this.hedges = hedges;
+            this.timeouts = timeouts;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.bytesUploaded = bytesUploaded;
+            this.bytesDownloaded = bytesDownloaded;
+            this.extractedLocally = extractedLocally;
+            this.skipped = skipped;
+            this.documentLatency = documentLatency;
+            this.callLatency = callLatency;
+        }
+
+        public Snapshot(StreamInput in) throws IOException {
+            this(in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(),
+                    in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(),
+                    in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(),
+                    new LatencyHistogram.Snapshot(in), new LatencyHistogram.Snapshot(in));
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(documents);
+            out.writeVLong(documentFailures);
+            out.writeVLong(documentsInFlight);
+            out.writeVLong(calls);
+            out.writeVLong(callFailures);
+            out.writeVLong(callsInFlight);
+            out.writeVLong(retries);
+            out.writeVLong(rejected);
+            out.writeVLong(hedges);
+            out.writeVLong(timeouts);
+            out.writeVLong(cacheHits);
+            out.writeVLong(cacheMisses);
+            out.writeVLong(bytesUploaded);
+            out.writeVLong(bytesDownloaded);
+            out.writeVLong(extractedLocally);
+            out.writeVLong(skipped);
+            documentLatency.writeTo(out);
+            callLatency.writeTo(out);
+        }
+
+        public Snapshot merge(Snapshot other) {
+            return new Snapshot(documents + other.documents, documentFailures + other.documentFailures,
+                    documentsInFlight + other.documentsInFlight, calls + other.calls, callFailures + other.callFailures,
+                    callsInFlight + other.callsInFlight, retries + other.retries, rejected + other.rejected,
+                    hedges + other.hedges, timeouts + other.timeouts,
+                    cacheHits + other.cacheHits, cacheMisses + other.cacheMisses,
+                    bytesUploaded + other.bytesUploaded, bytesDownloaded + other.bytesDownloaded,
+                    extractedLocally + other.extractedLocally, skipped + other.skipped,
+                    documentLatency.merge(other.documentLatency), callLatency.merge(other.callLatency));
+        }
+
+        public long getDocuments() {
+            return documents;
+        }
+
+        public long getDocumentFailures() {
+            return documentFailures;
+        }
+
+        public long getDocumentsInFlight() {
+            return documentsInFlight;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getCallFailures() {
+            return callFailures;
+        }
+
+        public long getCallsInFlight() {
+            return callsInFlight;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getHedges() {
+            return hedges;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        public long getBytesUploaded() {
+            return bytesUploaded;
+        }
+
+        public long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        public long getExtractedLocally() {
+            return extractedLocally;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public LatencyHistogram.Snapshot getDocumentLatency() {
+            return documentLatency;
+        }
+
+        public LatencyHistogram.Snapshot getCallLatency() {
+            return callLatency;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject("documents");
+            builder.field("count", documents);
+            builder.field("failed", documentFailures);
+            builder.field("in_flight", documentsInFlight);
+            builder.field("extracted_locally", extractedLocally);
+            builder.field("skipped", skipped);
+            builder.startObject("latency");
+            documentLatency.toXContent(builder, params);
+            builder.endObject();
+            builder.endObject();
+            builder.startObject("calls");
+            builder.field("count", calls);
+            builder.field("failed", callFailures);
+            builder.field("in_flight", callsInFlight);
+            builder.field("retries", retries);
+            builder.field("rejected", rejected);
+            builder.field("hedges", hedges);
+            builder.field("timeouts", timeouts);
+            builder.startObject("latency");
+            callLatency.toXContent(builder, params);
+            builder.endObject();
+            builder.endObject();
+            builder.startObject("cache");
+            builder.field("hits", cacheHits);
+            builder.field("misses", cacheMisses);
+            builder.endObject();
+            builder.field("bytes_uploaded", bytesUploaded);
+            builder.field("bytes_downloaded", bytesDownloaded);
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a failed partition call is retried and how long to wait first. Waits grow exponentially from
+ * {@code initialBackoff} up to {@code maxBackoff} with full jitter. A Retry-After header sent with a 429 or 503
+ * is a lower bound for the wait; when it asks for more than {@code maxBackoff} the call is not retried.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy NONE = new RetryPolicy(0, TimeValue.ZERO, TimeValue.ZERO);
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final LongSupplier clock;
+
+    public RetryPolicy(int maxRetries, TimeValue initialBackoff, TimeValue maxBackoff) {
+        this(maxRetries, initialBackoff, maxBackoff, System::currentTimeMillis);
+    }
+
+    RetryPolicy(int maxRetries, TimeValue initialBackoff, TimeValue maxBackoff, LongSupplier clock) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoff.millis();
+        this.maxBackoffMillis = maxBackoff.millis();
+        this.clock = clock;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the wait in millis before retry number {@code attempt + 1}, or -1 if the call must not be retried.
+     */
+    public long delayMillis(int attempt, ApiException e) {
+        if (attempt >= maxRetries || !isRetryable(e)) {
+            return -1;
+        }
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 30));
+        long delay = ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        long retryAfter = retryAfterMillis(e.getResponseHeaders());
+        if (retryAfter > maxBackoffMillis) {
+            return -1;
+        }
+        return Math.max(delay, retryAfter);
+    }
+
+    /**
+     * Connection failures, throttling and transient server errors are worth retrying, other client errors are not.
+     */
+    public static boolean isRetryable(ApiException e) {
+        int code = e.getCode();
+        return code == 0 || code == 408 || code == 429 || isServerFailure(e);
+    }
+
+    /**
+     * Whether the failure says the endpoint itself is unhealthy, as opposed to rejecting this one request.
+     */
+    public static boolean isServerFailure(ApiException e) {
+        int code = e.getCode();
+        return code == 0 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    long retryAfterMillis(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        List<String> values = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (RETRY_AFTER.equalsIgnoreCase(header.getKey())) {
+                values = header.getValue();
+            }
+        }
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        String value = values.get(0).trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // not delta-seconds, try an http-date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.ofMillis(date.toInstant().toEpochMilli() - clock.getAsLong()).toMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ingest.SimulatePipelineAction;
+import org.opensearch.action.support.ActionFilter;
+import org.opensearch.action.support.ActionFilterChain;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.tasks.Task;
+
+/**
+ * Marks the thread context of {@code _simulate} requests, so deferred processors know that their documents are
+ * never indexed and store no job for them. Nothing on the ingest document itself tells a simulated document from
+ * an indexed one.
+ */
+public class SimulateActionFilter implements ActionFilter {
+
+    static final String SIMULATE = "_aryn_simulate";
+
+    private final ThreadContext threadContext;
+
+    public SimulateActionFilter(ThreadContext threadContext) {
+        this.threadContext = threadContext;
+    }
+
+    /**
+     * Whether the calling thread runs a {@code _simulate} request. Simulations run their pipelines on pools that
+     * carry the thread context of the request along.
+     */
+    static boolean isSimulating(ThreadContext threadContext) {
+        return threadContext != null && Boolean.TRUE.equals(threadContext.getTransient(SIMULATE));
+    }
+
+    @Override
+    public int order() {
+        return 0;
+    }
+
+    @Override
+    public <Request extends ActionRequest, Response extends ActionResponse> void apply(Task task, String action,
+            Request request, ActionListener<Response> listener, ActionFilterChain<Request, Response> chain) {
+        if (!SimulatePipelineAction.NAME.equals(action) || isSimulating(threadContext)) {
+            chain.proceed(task, action, request, listener);
+            return;
+        }
+        try (ThreadContext.StoredContext ignored = threadContext.newStoredContext(true)) {
+            threadContext.putTransient(SIMULATE, Boolean.TRUE);
+            chain.proceed(task, action, request, listener);
+        }
+    }
+}
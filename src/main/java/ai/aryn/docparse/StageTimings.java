@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the time of one document went inside the processor. Stages that run more than once, such as the calls of
+ * split page ranges, add up; page ranges run in parallel, so their stages can add up to more than the total.
+ */
+public class StageTimings {
+
+    enum Stage {
+        // waiting for a free slot of the partition executor
+        QUEUE,
+        // reading the input field, including the base64 decode unless stream_input is set
+        READ_INPUT,
+        // node cache and result store lookups and writes
+        CACHE,
+        // everything from the first call to the result, with retries, backoffs and async polling
+        PARTITION,
+        // from sending a request until Aryn's answer starts: the upload and Aryn's processing
+        REQUEST,
+        // reading and parsing the response body
+        RESPONSE,
+        // formatting the elements and setting the output fields
+        APPLY;
+
+        String fieldName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final long started;
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+    private final List<String> callIds = new ArrayList<>();
+    private volatile long inputBytes = -1;
+
+    public StageTimings() {
+        this(System.nanoTime());
+    }
+
+    StageTimings(long started) {
+        this.started = started;
+    }
+
+    /**
+     * Adds the time since {@code stageStarted}, a {@link System#nanoTime()} reading, to the stage.
+     */
+    void record(Stage stage, long stageStarted) {
+        add(stage, System.nanoTime() - stageStarted);
+    }
+
+    void add(Stage stage, long stageNanos) {
+        nanos.addAndGet(stage.ordinal(), Math.max(0, stageNanos));
+    }
+
+    /**
+     * Records the request and response time and the call id of a call whose result is used.
+     */
+    void onCall(PartitionClient.Result result, String callId) {
+        add(Stage.REQUEST, result.getRequestNanos());
+        add(Stage.RESPONSE, result.getResponseNanos());
+        if (callId != null) {
+            synchronized (callIds) {
+                callIds.add(callId);
+            }
+        }
+    }
+
+    void setInputBytes(long inputBytes) {
+        this.inputBytes = inputBytes;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    long getNanos(Stage stage) {
+        return nanos.get(stage.ordinal());
+    }
+
+    public long getTotalNanos() {
+        return System.nanoTime() - started;
+    }
+
+    public List<String> getCallIds() {
+        synchronized (callIds) {
+            return List.copyOf(callIds);
+        }
+    }
+
+    /**
+     * The breakdown in milliseconds, as written to {@code timings_field}.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            map.put(stage.fieldName() + "_ms", TimeUnit.NANOSECONDS.toMillis(getNanos(stage)));
+        }
+        map.put("total_ms", TimeUnit.NANOSECONDS.toMillis(getTotalNanos()));
+        List<String> ids = getCallIds();
+        if (!ids.isEmpty()) {
+            map.put("aryn_call_id", ids.size() == 1 ? ids.get(0) : ids);
+        }
+        return map;
+    }
+
+    /**
+     * The breakdown as {@code queue[0ms], read_input[3ms], ...} for the slow log.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stage.fieldName()).append('[').append(TimeUnit.NANOSECONDS.toMillis(getNanos(stage))).append("ms]");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TransportArynStatsAction extends TransportNodesAction<ArynStatsRequest, ArynStatsResponse,
+        ArynStatsNodeRequest, ArynStatsNodeResponse> {
+
+    private final ArynStats stats;
+
+    @Inject
+    public TransportArynStatsAction(ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
+                                    ActionFilters actionFilters, ArynStats stats) {
+        super(ArynStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                ArynStatsRequest::new, ArynStatsNodeRequest::new, ThreadPool.Names.MANAGEMENT, ArynStatsNodeResponse.class);
+        this.stats = stats;
+    }
+
+    @Override
+    protected ArynStatsResponse newResponse(ArynStatsRequest request, List<ArynStatsNodeResponse> responses,
+                                            List<FailedNodeException> failures) {
+        return new ArynStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected ArynStatsNodeRequest newNodeRequest(ArynStatsRequest request) {
+        return new ArynStatsNodeRequest();
+    }
+
+    @Override
+    protected ArynStatsNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new ArynStatsNodeResponse(in);
+    }
+
+    @Override
+    protected ArynStatsNodeResponse nodeOperation(ArynStatsNodeRequest request) {
+        return new ArynStatsNodeResponse(clusterService.localNode(), stats.snapshot());
+    }
+}
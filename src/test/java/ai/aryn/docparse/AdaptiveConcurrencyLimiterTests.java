@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class AdaptiveConcurrencyLimiterTests extends OpenSearchTestCase {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxLimit, TimeValue queueTimeout) {
+        return new AdaptiveConcurrencyLimiter("http://aryn", initialLimit, maxLimit, queueTimeout, 2.0);
+    }
+
+    private static void sample(AdaptiveConcurrencyLimiter limiter, long latencyNanos, AdaptiveConcurrencyLimiter.Outcome outcome,
+                               long nowNanos) {
+        limiter.acquire();
+        limiter.onSample(latencyNanos, outcome, nowNanos);
+    }
+
+    public void testAdditiveIncreaseUpToMax() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 3, TimeValue.ZERO);
+
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 1000 * MS);
+        assertEquals(2, limiter.getLimit());
+        // 2 + 1/2 + 1/2.5 + 1/2.9
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 1100 * MS);
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 1200 * MS);
+        assertEquals(3, limiter.getLimit());
+        for (int i = 0; i < 20; i++) {
+            sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, (1200 + i) * MS);
+        }
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    public void testOverloadHalvesOncePerRoundTrip() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 64, TimeValue.ZERO);
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 1000 * MS);
+
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD, 1010 * MS);
+        assertEquals(4, limiter.getLimit());
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD, 1020 * MS);
+        assertEquals(4, limiter.getLimit());
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD, 1200 * MS);
+        assertEquals(2, limiter.getLimit());
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.IGNORE, 1400 * MS);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    public void testLatencySpikeLowersLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 64, TimeValue.ZERO);
+        sample(limiter, 100 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 1000 * MS);
+
+        sample(limiter, 1000 * MS, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, 2000 * MS);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    public void testRejectsWhenSaturated() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, TimeValue.timeValueMillis(10));
+        limiter.acquire();
+
+        OpenSearchRejectedExecutionException e = expectThrows(OpenSearchRejectedExecutionException.class, limiter::acquire);
+        assertThat(e.getMessage(), containsString("1 calls in flight at concurrency limit 1"));
+        assertEquals(1, limiter.getRejected());
+    }
+
+    public void testQueuedCallGetsReleasedSlot() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, TimeValue.timeValueSeconds(10));
+        long started = limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            limiter.acquire();
+            acquired.countDown();
+        });
+        waiter.start();
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+
+        limiter.release(started, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, limiter.getInFlight());
+    }
+}
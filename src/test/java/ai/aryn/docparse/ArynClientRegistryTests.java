@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class ArynClientRegistryTests extends OpenSearchTestCase {
+
+    public void testClientsAreSharedPerConfiguration() throws Exception {
+        TimeValue connect = TimeValue.timeValueSeconds(10);
+        TimeValue read = TimeValue.timeValueMinutes(5);
+        try (ArynClientRegistry registry = new ArynClientRegistry(4, TimeValue.timeValueSeconds(30))) {
+            PartitionClient client = registry.get("https://api.aryn.ai", "key", connect, read);
+            assertSame(client, registry.get("https://api.aryn.ai", "key", TimeValue.timeValueMillis(10_000), read));
+            assertNotSame(client, registry.get("https://api.aryn.ai", "other-key", connect, read));
+            assertNotSame(client, registry.get("http://localhost:8000", "key", connect, read));
+            assertNotSame(client, registry.get("https://api.aryn.ai", "key", connect, TimeValue.timeValueMinutes(1)));
+            assertEquals(4, registry.size());
+        }
+    }
+
+    public void testUnreferencedClientsAreClosed() throws Exception {
+        TimeValue connect = TimeValue.timeValueSeconds(10);
+        TimeValue read = TimeValue.timeValueMinutes(5);
+        try (ArynClientRegistry registry = new ArynClientRegistry(4, TimeValue.timeValueSeconds(30))) {
+            PartitionClient kept = registry.get("https://api.aryn.ai", "key", connect, read);
+            // a pipeline replaced with a rotated key drops its client
+            registry.get("https://api.aryn.ai", "old-key", connect, read);
+            assertBusy(() -> {
+                System.gc();
+                assertEquals(1, registry.size());
+            });
+            assertSame(kept, registry.get("https://api.aryn.ai", "key", connect, read));
+        }
+    }
+}
@@ -87,6 +87,23 @@ public class ArynIngestPluginIT extends OpenSearchRestTestCase {
         assertThat(body, containsString("aryn-opensearch-plugin"));
     }
 
+    public void testStatsEndpoint() throws IOException, ParseException {
+        Response response = client().performRequest(new Request("GET", "/_plugins/_aryn/stats"));
+        Map<String, Object> stats = XContentHelper.convertToMap(
+                XContentType.JSON.xContent(),
+                EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8),
+                false
+        );
+        Map<String, Object> header = (Map<String, Object>) stats.get("_nodes");
+        assertEquals(0, header.get("failed"));
+        Map<String, Object> nodes = (Map<String, Object>) stats.get("nodes");
+        assertFalse(nodes.isEmpty());
+        for (Object node : nodes.values()) {
+            assertTrue(((Map<String, Object>) node).containsKey("executor"));
+        }
+        assertTrue(stats.containsKey("processors"));
+    }
+
     @SneakyThrows
     public void testArynIngestProcessor() {
         String pipelineName = "simple";
@@ -129,6 +146,49 @@ public class ArynIngestPluginIT extends OpenSearchRestTestCase {
         }
     }
 
+    @SneakyThrows
+    public void testDeferredSimulateStoresNoJob() {
+        String pipelineName = "deferred";
+        // no call to Aryn is awaited, the key is never used
+        String pipeline = "{\"processors\":[{\"aryn_ingest\":{\"tag\":\"deferred\",\"input_field\":\"data\","
+                + "\"output_field\":\"extracted\",\"aryn_api_key\":\"unused\",\"deferred\":true}}]}";
+        String document = "{\"data\":\"" + Base64.getEncoder().encodeToString("%PDF-1.7".getBytes(StandardCharsets.UTF_8)) + "\"}";
+        try {
+            createPipelineProcessor(pipeline, pipelineName, "", null);
+            long enqueued = deferredEnqueued();
+
+            Response simulated = makeRequest(client(), "POST", "/_ingest/pipeline/" + pipelineName + "/_simulate", null,
+                    toHttpEntity("{\"docs\":[{\"_index\":\"" + INDEX_NAME + "\",\"_id\":\"1\",\"_source\":" + document + "}]}"),
+                    ImmutableList.of(new BasicHeader(HttpHeaders.USER_AGENT, DEFAULT_USER_AGENT)));
+            assertThat(EntityUtils.toString(simulated.getEntity()), containsString("\"aryn_status\":\"pending\""));
+            assertEquals(enqueued, deferredEnqueued());
+
+            // an indexed document does get its job
+            makeRequest(client(), "PUT", "/" + INDEX_NAME + "/_doc/1", Map.of("pipeline", pipelineName),
+                    toHttpEntity(document), ImmutableList.of(new BasicHeader(HttpHeaders.USER_AGENT, DEFAULT_USER_AGENT)));
+            assertEquals(enqueued + 1, deferredEnqueued());
+        } finally {
+            wipeOffTestResources(INDEX_NAME, pipelineName);
+        }
+    }
+
+    private long deferredEnqueued() throws IOException, ParseException {
+        Response response = client().performRequest(new Request("GET", "/_plugins/_aryn/stats"));
+        Map<String, Object> stats = XContentHelper.convertToMap(
+                XContentType.JSON.xContent(),
+                EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8),
+                false
+        );
+        long enqueued = 0;
+        for (Object node : ((Map<String, Object>) stats.get("nodes")).values()) {
+            Map<String, Object> deferred = (Map<String, Object>) ((Map<String, Object>) node).get("deferred");
+            if (deferred != null) {
+                enqueued += ((Number) deferred.get("enqueued")).longValue();
+            }
+        }
+        return enqueued;
+    }
+
     /*********************************************************************************
      *   Borrowed from neural-search test fixtures
      ***********************************************************************************/
@@ -22,16 +22,22 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import org.opensearch.OpenSearchException;
+import org.opensearch.common.settings.Settings;
 import org.opensearch.test.OpenSearchTestCase;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static ai.aryn.docparse.ArynIngestProcessorFactory.readContentRules;
 import static ai.aryn.docparse.ArynIngestProcessorFactory.readStringOrDoubleProperty;
+import static ai.aryn.docparse.ArynIngestProcessorFactory.readStringOrListProperty;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 
 public class ArynIngestProcessorFactoryTests extends OpenSearchTestCase {
@@ -48,7 +54,7 @@ public class ArynIngestProcessorFactoryTests extends OpenSearchTestCase {
         Double threshold = 0.01;
         config.put("aryn_api_key", "key");
         config.put("threshold", threshold);
-        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory();
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
         ArynIngestProcessor processor = (ArynIngestProcessor) factory.create(Collections.emptyMap(), "tag", "desc", config);
         byte[] actual = processor.buildOptionJson("0.01", "auto", "standard", false, false, null);
         String fileContent = new String(actual);
@@ -56,4 +62,93 @@ public class ArynIngestProcessorFactoryTests extends OpenSearchTestCase {
         JsonObject json = gson.fromJson(fileContent, JsonElement.class).getAsJsonObject();
         assertThat(json.get("threshold").getAsDouble(), is(threshold));
     }
+
+    public void testCreateRejectsInvalidMaxConcurrency() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_api_key", "key");
+        config.put("max_concurrency", 0);
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        OpenSearchException e = expectThrows(OpenSearchException.class,
+                () -> factory.create(Collections.emptyMap(), "tag", "desc", config));
+        assertThat(e.getMessage(), containsString("max_concurrency"));
+    }
+
+    public void testCreateRejectsBothImageDestinations() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_api_key", "key");
+        config.put("extract_images", true);
+        config.put("image_index", "images");
+        config.put("image_path", "images");
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        OpenSearchException e = expectThrows(OpenSearchException.class,
+                () -> factory.create(Collections.emptyMap(), "tag", "desc", config));
+        assertThat(e.getMessage(), containsString("image_index"));
+    }
+
+    public void testCreateRejectsImagePathOutsideRepo() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_api_key", "key");
+        config.put("extract_images", true);
+        config.put("image_path", "/tmp/images");
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        OpenSearchException e = expectThrows(OpenSearchException.class,
+                () -> factory.create(Collections.emptyMap(), "tag", "desc", config));
+        assertThat(e.getMessage(), containsString("path.repo"));
+    }
+
+    public void testReadContentRules() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("content_rules", Map.of("html", "text", "EMPTY", "skip"));
+        ContentSniffer sniffer = readContentRules("type", "tag", config, "content_rules");
+        assertEquals(ContentSniffer.Action.TEXT, sniffer.actionFor(ContentSniffer.ContentType.HTML));
+        assertEquals(ContentSniffer.Action.SKIP, sniffer.actionFor(ContentSniffer.ContentType.EMPTY));
+        assertEquals(ContentSniffer.Action.ARYN, sniffer.actionFor(ContentSniffer.ContentType.PDF));
+
+        config.put("content_rules", Map.of("pdf", "aryn"));
+        assertNull(readContentRules("type", "tag", config, "content_rules"));
+        assertNull(readContentRules("type", "tag", config, "content_rules"));
+
+        config.put("content_rules", Map.of("docx", "text"));
+        OpenSearchException e = expectThrows(OpenSearchException.class,
+                () -> readContentRules("type", "tag", config, "content_rules"));
+        assertThat(e.getMessage(), containsString("content_rules"));
+        config.put("content_rules", Map.of("html", "ocr"));
+        expectThrows(OpenSearchException.class, () -> readContentRules("type", "tag", config, "content_rules"));
+    }
+
+    public void testCreateRejectsDeferredWithoutQueue() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_api_key", "key");
+        config.put("deferred", true);
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        OpenSearchException e = expectThrows(OpenSearchException.class,
+                () -> factory.create(Collections.emptyMap(), "tag", "desc", config));
+        assertThat(e.getMessage(), containsString("deferred"));
+    }
+
+    public void testReadStringOrListProperty() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_url", List.of("http://a:8000", "http://b:8000"));
+        assertEquals(List.of("http://a:8000", "http://b:8000"),
+                readStringOrListProperty("type", "", config, "aryn_url", "https://api.aryn.ai"));
+        config.put("aryn_url", "http://a:8000");
+        assertEquals(List.of("http://a:8000"), readStringOrListProperty("type", "", config, "aryn_url", "https://api.aryn.ai"));
+        assertEquals(List.of("https://api.aryn.ai"), readStringOrListProperty("type", "", config, "aryn_url", "https://api.aryn.ai"));
+        config.put("aryn_url", List.of());
+        expectThrows(OpenSearchException.class, () -> readStringOrListProperty("type", "", config, "aryn_url", "x"));
+    }
+
+    public void testCreateWithEndpointPool() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("aryn_api_key", "key");
+        config.put("aryn_url", List.of("http://a:8000", "http://b:8000"));
+        config.put("health_check_path", "/healthz");
+        ArynEndpoint.Registry endpoints = new ArynEndpoint.Registry(Settings.EMPTY);
+        ArynIngestProcessorFactory factory = new ArynIngestProcessorFactory(null, null, null, null, null, null, null, null, null, null, null,
+                endpoints, null, null);
+        factory.create(Collections.emptyMap(), "tag", "desc", config);
+        assertTrue(config.isEmpty());
+        assertEquals(2, endpoints.getEndpoints().size());
+        assertTrue(endpoints.get("http://a:8000").hasHealthCheck());
+    }
 }
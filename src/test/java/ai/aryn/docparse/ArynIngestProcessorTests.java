@@ -21,14 +21,60 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Ignore;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.ingest.SimulatePipelineAction;
+import org.opensearch.action.ingest.SimulatePipelineRequest;
+import org.opensearch.action.ingest.SimulatePipelineResponse;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.index.VersionType;
 import org.opensearch.ingest.IngestDocument;
+import org.opensearch.ingest.IngestDocumentWrapper;
 import org.opensearch.test.OpenSearchTestCase;
+import org.opensearch.test.client.NoOpClient;
 
 import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 
 public class ArynIngestProcessorTests extends OpenSearchTestCase {
@@ -57,6 +103,479 @@ public class ArynIngestProcessorTests extends OpenSearchTestCase {
         assertThat(json.get("threshold").getAsString(), is(threshold));
     }
 
+    public void testBatchExecuteKeepsSlotsAndFailures() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch overlapping = new CountDownLatch(2);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            calls.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                // the first calls wait for each other, so the batch really has two in flight
+                overlapping.countDown();
+                overlapping.await(5, TimeUnit.SECONDS);
+                byte[] body = "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"parsed\"}]}"
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+        try (PartitionExecutor executor = new PartitionExecutor(8, 100, null)) {
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard").maxConcurrency(2).partitionExecutor(executor)
+                    .partitionClient(new PartitionClient(apiClient, "apiKey", ArynIngestProcessor.USER_AGENT)).build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+
+            List<IngestDocumentWrapper> wrappers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                // '*' is outside the base64 alphabet, the document fails before any call
+                String input = i == 3 ? "not*base64" : encoded;
+                Map<String, Object> source = new HashMap<>(Map.of("input", input));
+                wrappers.add(new IngestDocumentWrapper(i + 10, new IngestDocument("test-index", String.valueOf(i), null, null, null, source), null));
+            }
+            CompletableFuture<List<IngestDocumentWrapper>> future = new CompletableFuture<>();
+            processor.batchExecute(wrappers, future::complete);
+            List<IngestDocumentWrapper> results = future.get(10, TimeUnit.SECONDS);
+
+            assertEquals(6, results.size());
+            assertEquals(5, calls.get());
+            assertEquals(2, maxInFlight.get());
+            for (int i = 0; i < 6; i++) {
+                IngestDocumentWrapper result = results.get(i);
+                assertEquals(i + 10, result.getSlot());
+                if (i == 3) {
+                    assertNull(result.getIngestDocument());
+                    assertThat(result.getException(), instanceOf(IllegalArgumentException.class));
+                } else {
+                    assertNull(result.getException());
+                    assertThat(result.getIngestDocument().getFieldValue("output", String.class), is("parsed" + System.lineSeparator()));
+                }
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testBatchExecuteWithInlineCompletionsDoesNotRecurse() throws Exception {
+        try (PartitionExecutor executor = new PartitionExecutor(1, 1, null)) {
+            ArynIngestProcessor processor = new ArynIngestProcessor(ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").maxConcurrency(1).partitionExecutor(executor)) {
+                @Override
+                public void execute(IngestDocument ingestDocument, BiConsumer<IngestDocument, Exception> handler) {
+                    // like a cache hit, completes on the calling thread
+                    handler.accept(ingestDocument, null);
+                }
+            };
+            int count = 100_000;
+            List<IngestDocumentWrapper> wrappers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                IngestDocument doc = i % 2 == 0
+                        ? new IngestDocument("test-index", String.valueOf(i), null, null, null, new HashMap<>())
+                        : null;
+                wrappers.add(new IngestDocumentWrapper(i, doc, doc == null ? new IllegalStateException("upstream") : null));
+            }
+            CompletableFuture<List<IngestDocumentWrapper>> future = new CompletableFuture<>();
+            processor.batchExecute(wrappers, future::complete);
+            List<IngestDocumentWrapper> results = future.get(10, TimeUnit.SECONDS);
+
+            assertEquals(count, results.size());
+            assertEquals(count - 1, results.get(count - 1).getSlot());
+        }
+    }
+
+    public void testMaxInputBytesRejectsBeforeDecoding() {
+        ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                .textMode("auto").tableMode("standard").maxConcurrency(1).streamInput(true).maxInputBytes(4).build();
+        String encoded = Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3, 4, 5 });
+        IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> processor.execute(doc));
+        assertThat(e.getMessage(), containsString("max_input_bytes [4]"));
+    }
+
+    public void testContentRulesBypassAryn() throws Exception {
+        ProcessorStats stats = new ProcessorStats();
+        ContentSniffer sniffer = new ContentSniffer(Map.of(ContentSniffer.ContentType.HTML, ContentSniffer.Action.TEXT,
+                ContentSniffer.ContentType.EMPTY, ContentSniffer.Action.SKIP));
+        // nothing listens on the url, a call to Aryn would fail the document
+        ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                .textMode("auto").tableMode("standard").arynUrl("http://localhost:1").maxConcurrency(1)
+                .stats(stats).contentSniffer(sniffer).build();
+        String html = "<html><body><p>Hello</p><p>World</p></body></html>";
+        IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input",
+                Base64.getEncoder().encodeToString(html.getBytes(StandardCharsets.UTF_8)))));
+        processor.execute(doc);
+        String separator = System.lineSeparator();
+        assertEquals("Hello" + separator + "World" + separator, doc.getFieldValue("output", String.class));
+
+        IngestDocument empty = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", "")));
+        processor.execute(empty);
+        assertFalse(empty.hasField("output"));
+        assertEquals(1, stats.snapshot().getExtractedLocally());
+        assertEquals(1, stats.snapshot().getSkipped());
+    }
+
+    public void testSplitPagesMergesRangesInPageOrder() throws Exception {
+        List<String> selectedPages = Collections.synchronizedList(new ArrayList<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+            Matcher range = Pattern.compile("\"selected_pages\":\\[\\[(\\d+),(\\d+)]]").matcher(request);
+            assertTrue(range.find());
+            int first = Integer.parseInt(range.group(1));
+            int last = Integer.parseInt(range.group(2));
+            selectedPages.add(first + "-" + last);
+            StringBuilder response = new StringBuilder("{\"elements\":[");
+            for (int page = first; page <= last; page++) {
+                response.append(page == first ? "" : ",").append("{\"type\":\"Text\",\"properties\":{\"page_number\":")
+                        .append(page).append("},\"text_representation\":\"page ").append(page).append("\"}");
+            }
+            response.append("],\"properties\":{\"first_page\":").append(first).append("}}");
+            try {
+                // later ranges answer first
+                Thread.sleep(50L / first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard").maxConcurrency(1)
+                    .partitionClient(new PartitionClient(apiClient, "apiKey", ArynIngestProcessor.USER_AGENT))
+                    .splitPages(2).splitMaxParallelism(3).timingsField("_ingest.aryn_timings").build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(5, 0));
+            IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+
+            processor.execute(doc);
+
+            String separator = System.lineSeparator();
+            assertEquals("page 1" + separator + "page 2" + separator + "page 3" + separator + "page 4" + separator
+                    + "page 5" + separator, doc.getFieldValue("output", String.class));
+            // properties are appended, and the first range wins
+            assertEquals(List.of(1), doc.getFieldValue("first_page", List.class));
+            assertEquals(Set.of("1-2", "3-4", "5-5"), new HashSet<>(selectedPages));
+            Map<?, ?> timings = doc.getFieldValue("_ingest.aryn_timings", Map.class);
+            assertTrue(timings.keySet().containsAll(List.of("read_input_ms", "partition_ms", "request_ms", "response_ms", "total_ms")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testSplitPagesSendsDocumentWholeWhenRangeIsRejected() throws Exception {
+        List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+            Matcher range = Pattern.compile("\"selected_pages\":\\[\\[(\\d+),(\\d+)]]").matcher(request);
+            String first = range.find() ? range.group(1) : null;
+            requests.add(first == null ? "whole" : first);
+            // the document really has 4 pages, the 5th page object was superseded by an update
+            int status = "5".equals(first) ? 400 : 200;
+            String text = first == null ? "whole" : "page " + first;
+            byte[] body = (status == 400 ? "{\"detail\":\"invalid selected_pages\"}"
+                    : "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"" + text + "\"}]}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard")
+                    .partitionClient(new PartitionClient(apiClient, "apiKey", ArynIngestProcessor.USER_AGENT))
+                    .splitPages(2).splitMaxParallelism(3).build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(5, 0));
+            IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+
+            processor.execute(doc);
+
+            assertEquals("whole" + System.lineSeparator(), doc.getFieldValue("output", String.class));
+            assertTrue(requests.contains("5"));
+            assertEquals("whole", requests.get(requests.size() - 1));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testProbeRejectedByLimiterKeepsBreakerUsable() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"probe\"}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            AtomicLong clock = new AtomicLong();
+            EndpointCircuitBreaker breaker = new EndpointCircuitBreaker.Registry(1, TimeValue.timeValueSeconds(10), clock::get).get(url);
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(url, 1, 1, TimeValue.ZERO, 2.0);
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard").arynUrl(url).circuitBreaker(breaker).limiter(limiter).build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+
+            breaker.onFailure();
+            clock.addAndGet(10_000);
+            // the breaker lets a probe out, but the endpoint's only slot is taken
+            long started = limiter.acquire();
+            IngestDocument rejected = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+            expectThrows(OpenSearchRejectedExecutionException.class, () -> processor.execute(rejected));
+            assertTrue(breaker.isAvailable());
+            limiter.release(started, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+
+            IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+            processor.execute(doc);
+            assertEquals("probe" + System.lineSeparator(), doc.getFieldValue("output", String.class));
+            assertEquals(EndpointCircuitBreaker.State.CLOSED, breaker.getState());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testAsyncModeAppliesDocumentTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.ASYNC_SUBMIT_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                // the upload never answers within the document timeout
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        PartitionExecutor executor = new PartitionExecutor(2, 10, null);
+        try {
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            AsyncPartitionPoller poller = new AsyncPartitionPoller((delay, task) -> {
+                scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+                return null;
+            }, executor);
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard")
+                    .partitionClient(new PartitionClient(apiClient, "apiKey", ArynIngestProcessor.USER_AGENT))
+                    .partitionExecutor(executor).asyncMode(true).asyncPoller(poller)
+                    .retryPolicy(new RetryPolicy(3, TimeValue.timeValueMillis(1), TimeValue.timeValueMillis(1)))
+                    .asyncPollInterval(TimeValue.timeValueMillis(10)).asyncTimeout(TimeValue.timeValueMinutes(1))
+                    .timeout(TimeValue.timeValueMillis(200)).build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+            IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+            CompletableFuture<Exception> failure = new CompletableFuture<>();
+
+            processor.execute(doc, (result, e) -> failure.complete(e));
+
+            assertThat(failure.get(5, TimeUnit.SECONDS), instanceOf(OpenSearchTimeoutException.class));
+        } finally {
+            release.countDown();
+            scheduler.shutdownNow();
+            executor.close();
+            server.stop(0);
+        }
+    }
+
+    public void testAsyncPollsGoThroughTheCircuitBreaker() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.ASYNC_SUBMIT_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"task_id\":\"t-1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        AtomicInteger polls = new AtomicInteger();
+        server.createContext(PartitionClient.ASYNC_RESULT_PATH, exchange -> {
+            polls.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        PartitionExecutor executor = new PartitionExecutor(2, 10, null);
+        try {
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            EndpointCircuitBreaker breaker = new EndpointCircuitBreaker.Registry(1, TimeValue.timeValueMinutes(1),
+                    System::currentTimeMillis).get(url);
+            AsyncPartitionPoller poller = new AsyncPartitionPoller((delay, task) -> {
+                scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+                return null;
+            }, executor);
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard").arynUrl(url).circuitBreaker(breaker)
+                    .partitionExecutor(executor).asyncMode(true).asyncPoller(poller)
+                    .retryPolicy(new RetryPolicy(3, TimeValue.timeValueMillis(1), TimeValue.timeValueMillis(1)))
+                    .asyncPollInterval(TimeValue.timeValueMillis(10)).asyncTimeout(TimeValue.timeValueMinutes(1)).build();
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+            IngestDocument doc = new IngestDocument("test-index", null, null, null, null, new HashMap<>(Map.of("input", encoded)));
+            CompletableFuture<Exception> failure = new CompletableFuture<>();
+
+            processor.execute(doc, (result, e) -> failure.complete(e));
+
+            // the failed poll opened the breaker, the retried poll was refused without calling the endpoint
+            Exception e = failure.get(5, TimeUnit.SECONDS);
+            assertTrue(e instanceof OpenSearchStatusException);
+            assertEquals(RestStatus.SERVICE_UNAVAILABLE, ((OpenSearchStatusException) e).status());
+            assertEquals(1, polls.get());
+            assertEquals(EndpointCircuitBreaker.State.OPEN, breaker.getState());
+        } finally {
+            scheduler.shutdownNow();
+            executor.close();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * A client that acknowledges every request and keeps the index requests, the jobs of a deferred queue.
+     */
+    private static NoOpClient jobRecorder(String testName, List<IndexRequest> jobs) {
+        return new NoOpClient(testName) {
+            @Override
+            protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(
+                    ActionType<Response> action, Request request, ActionListener<Response> listener) {
+                if (request instanceof IndexRequest) {
+                    jobs.add((IndexRequest) request);
+                }
+                listener.onResponse(null);
+            }
+        };
+    }
+
+    private static ArynIngestProcessor deferredProcessor(DeferredJobQueue queue) {
+        return ArynIngestProcessor.builder("tag", "desc")
+                .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                .textMode("auto").tableMode("standard").deferredQueue(queue).deferredConfig(Map.of("deferred", true))
+                .statusField("aryn_status").build();
+    }
+
+    private static IngestDocument executeAndWait(ArynIngestProcessor processor, IngestDocument doc) throws Exception {
+        CompletableFuture<IngestDocument> result = new CompletableFuture<>();
+        processor.execute(doc, (out, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(out);
+            }
+        });
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    public void testDeferredSimulateStoresNoJob() throws Exception {
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        List<IndexRequest> jobs = new CopyOnWriteArrayList<>();
+        try (NoOpClient client = jobRecorder(getTestName(), jobs)) {
+            DeferredJobQueue queue = new DeferredJobQueue(client, threadContext, 1, 0, TimeValue.timeValueSeconds(1), 5,
+                    TimeValue.timeValueSeconds(30), TimeValue.timeValueMinutes(10), TimeValue.timeValueSeconds(10), () -> 0L);
+            ArynIngestProcessor processor = deferredProcessor(queue);
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+            // a _version set in the simulate request must not make the document look indexed
+            IngestDocument doc = new IngestDocument("test-index", "1", null, 3L, VersionType.EXTERNAL,
+                    new HashMap<>(Map.of("input", encoded)));
+            AtomicReference<IngestDocument> result = new AtomicReference<>();
+            PlainActionFuture<SimulatePipelineResponse> listener = PlainActionFuture.newFuture();
+
+            new SimulateActionFilter(threadContext).apply(null, SimulatePipelineAction.NAME,
+                    new SimulatePipelineRequest(new BytesArray("{}"), XContentType.JSON), listener,
+                    (task, action, request, l) -> {
+                        try {
+                            result.set(executeAndWait(processor, doc));
+                        } catch (Exception e) {
+                            throw new AssertionError(e);
+                        }
+                    });
+
+            assertEquals(DeferredJobQueue.STATUS_PENDING, result.get().getFieldValue("aryn_status", String.class));
+            assertEquals(0, queue.getEnqueued());
+            assertTrue(jobs.isEmpty());
+        }
+    }
+
+    public void testDeferredDocumentWithoutVersionGetsJob() throws Exception {
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        List<IndexRequest> jobs = new CopyOnWriteArrayList<>();
+        try (NoOpClient client = jobRecorder(getTestName(), jobs)) {
+            DeferredJobQueue queue = new DeferredJobQueue(client, threadContext, 1, 0, TimeValue.timeValueSeconds(1), 5,
+                    TimeValue.timeValueSeconds(30), TimeValue.timeValueMinutes(10), TimeValue.timeValueSeconds(10), () -> 0L);
+            ArynIngestProcessor processor = deferredProcessor(queue);
+            String encoded = Base64.getEncoder().encodeToString(PdfPageCounterTests.pdf(1, 0));
+            // ingested outside of _simulate, with no _version in the document's metadata
+            IngestDocument doc = new IngestDocument("test-index", "1", null, null, null, new HashMap<>(Map.of("input", encoded)));
+
+            IngestDocument result = executeAndWait(processor, doc);
+
+            assertEquals(DeferredJobQueue.STATUS_PENDING, result.getFieldValue("aryn_status", String.class));
+            assertEquals(1, queue.getEnqueued());
+            assertEquals(1, jobs.size());
+            assertEquals(DeferredJobQueue.jobId("test-index", "1"), jobs.get(0).id());
+        }
+    }
+
+    public void testDeferredJobReadsItsInputFromTheDocument() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"later\"}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            ArynIngestProcessor processor = ArynIngestProcessor.builder("tag", "desc")
+                    .inputField("input").outputField("output").apiKey("apiKey").threshold("auto")
+                    .textMode("auto").tableMode("standard").arynUrl(url).optionsField("aryn_options")
+                    .statusField("aryn_status").build();
+            assertArrayEquals(new String[] {"input", "aryn_options"}, processor.getDeferredFields());
+            byte[] pdf = PdfPageCounterTests.pdf(1, 0);
+            Map<String, Object> source = Map.of("input", Base64.getEncoder().encodeToString(pdf),
+                    "aryn_options", Map.of("table_mode", "none"));
+            DeferredJobQueue.Job job = new DeferredJobQueue.Job("job", 0, 1, "tag", Map.of(), "test-index", "1", null,
+                    pdf.length, 0, 0L);
+            PlainActionFuture<Map<String, Object>> fields = PlainActionFuture.newFuture();
+
+            processor.partitionDeferred(job, source, fields);
+
+            // only what the partition added is written back, the input stays as it was indexed
+            assertEquals(Map.of("output", "later" + System.lineSeparator(), "aryn_status", DeferredJobQueue.STATUS_DONE),
+                    fields.get(5, TimeUnit.SECONDS));
+        } finally {
+            server.stop(0);
+        }
+    }
+
     @Ignore
     public void testExecute() throws Exception {
         String threshold = "0.01";
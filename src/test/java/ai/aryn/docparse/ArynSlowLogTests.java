@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.apache.logging.log4j.Level;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class ArynSlowLogTests extends OpenSearchTestCase {
+
+    public void testPicksHighestExceededLevel() {
+        ArynSlowLog slowLog = new ArynSlowLog(Settings.builder()
+                .put(ArynSettings.SLOWLOG_THRESHOLD_WARN.getKey(), "10s")
+                .put(ArynSettings.SLOWLOG_THRESHOLD_INFO.getKey(), "5s")
+                .put(ArynSettings.SLOWLOG_THRESHOLD_TRACE.getKey(), "0ms")
+                .build());
+        assertEquals(Level.WARN, slowLog.levelFor(TimeUnit.SECONDS.toNanos(11)));
+        assertEquals(Level.INFO, slowLog.levelFor(TimeUnit.SECONDS.toNanos(6)));
+        // debug is disabled
+        assertEquals(Level.TRACE, slowLog.levelFor(TimeUnit.SECONDS.toNanos(2)));
+        assertNull(slowLog.levelFor(0));
+
+        slowLog.setWarnThreshold(TimeValue.MINUS_ONE);
+        assertEquals(Level.INFO, slowLog.levelFor(TimeUnit.SECONDS.toNanos(11)));
+    }
+
+    public void testDisabledByDefault() {
+        ArynSlowLog slowLog = new ArynSlowLog(Settings.EMPTY);
+        assertNull(slowLog.levelFor(TimeUnit.HOURS.toNanos(1)));
+    }
+}
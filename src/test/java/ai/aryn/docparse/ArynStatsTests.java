@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ArynStatsTests extends OpenSearchTestCase {
+
+    public void testProcessorsWithTheSameTagShareStats() {
+        ArynStats stats = new ArynStats();
+        assertSame(stats.forProcessor("pdf"), stats.forProcessor("pdf"));
+        assertNotSame(stats.forProcessor("pdf"), stats.forProcessor("docx"));
+        assertSame(stats.forProcessor(null), stats.forProcessor(ArynStats.UNTAGGED));
+    }
+
+    public void testProcessorCounters() {
+        ProcessorStats stats = new ProcessorStats();
+        long document = stats.onDocumentStart();
+        long call = stats.onCallStart();
+        assertEquals(1, stats.snapshot().getDocumentsInFlight());
+        assertEquals(1, stats.snapshot().getCallsInFlight());
+        stats.onCallDone(call, true);
+        stats.onRetry();
+        stats.onCallDone(stats.onCallStart(), false);
+        stats.addBytesUploaded(100);
+        stats.addBytesUploaded(100);
+        stats.addBytesDownloaded(42);
+        stats.onCacheLookup(false);
+        stats.onDocumentDone(document, false);
+
+        ProcessorStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(1, snapshot.getDocuments());
+        assertEquals(0, snapshot.getDocumentFailures());
+        assertEquals(0, snapshot.getDocumentsInFlight());
+        assertEquals(2, snapshot.getCalls());
+        assertEquals(1, snapshot.getCallFailures());
+        assertEquals(0, snapshot.getCallsInFlight());
+        assertEquals(1, snapshot.getRetries());
+        assertEquals(200, snapshot.getBytesUploaded());
+        assertEquals(42, snapshot.getBytesDownloaded());
+        assertEquals(0, snapshot.getCacheHits());
+        assertEquals(1, snapshot.getCacheMisses());
+        assertEquals(1, snapshot.getDocumentLatency().getCount());
+        assertEquals(2, snapshot.getCallLatency().getCount());
+    }
+
+    public void testTrackedHandlerCountsFailures() {
+        ProcessorStats stats = new ProcessorStats();
+        AtomicReference<Exception> seen = new AtomicReference<>();
+        stats.track((doc, e) -> seen.set(e)).accept(null, new IllegalStateException("boom"));
+        assertNotNull(seen.get());
+        assertEquals(1, stats.snapshot().getDocumentFailures());
+        assertEquals(0, stats.snapshot().getDocumentsInFlight());
+    }
+
+    public void testNodeSnapshotIncludesRegisteredComponents() throws IOException {
+        ArynStats stats = new ArynStats();
+        AdaptiveConcurrencyLimiter.Registry limiters = new AdaptiveConcurrencyLimiter.Registry(4, 16, TimeValue.ZERO, 2.0);
+        limiters.get("http://aryn", "key");
+        PartitionCache cache = new PartitionCache(1024, TimeValue.timeValueHours(1), null, 0, System::currentTimeMillis);
+        cache.get("missing", null);
+        stats.register(null, cache, limiters, null, null);
+        stats.forProcessor("pdf").onDocumentDone(stats.forProcessor("pdf").onDocumentStart(), true);
+
+        ArynNodeStats nodeStats = stats.snapshot();
+        assertEquals(0, nodeStats.getExecutorActive());
+        assertEquals(1, nodeStats.getCache().getMisses());
+        assertEquals(1, nodeStats.getLimiters().size());
+        assertEquals("http://aryn", nodeStats.getLimiters().get(0).getEndpoint());
+        assertEquals(4, nodeStats.getLimiters().get(0).getLimit());
+        assertEquals(1, nodeStats.getProcessors().get("pdf").getDocumentFailures());
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            nodeStats.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                ArynNodeStats read = new ArynNodeStats(in);
+                assertEquals(1, read.getCache().getMisses());
+                assertEquals("http://aryn", read.getLimiters().get(0).getEndpoint());
+                assertEquals(1, read.getProcessors().get("pdf").getDocumentLatency().getCount());
+            }
+        }
+    }
+
+    public void testClusterViewMergesNodes() {
+        ProcessorStats first = new ProcessorStats();
+        ProcessorStats second = new ProcessorStats();
+        first.onCallDone(first.onCallStart(), false);
+        second.onCallDone(second.onCallStart(), true);
+        second.addBytesUploaded(7);
+
+        ProcessorStats.Snapshot merged = first.snapshot().merge(second.snapshot());
+        assertEquals(2, merged.getCalls());
+        assertEquals(1, merged.getCallFailures());
+        assertEquals(7, merged.getBytesUploaded());
+        assertEquals(2, merged.getCallLatency().getCount());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+
+public class AsyncPartitionPollerTests extends OpenSearchTestCase {
+
+    private ScheduledExecutorService scheduler;
+    private PartitionExecutor executor;
+    private AsyncPartitionPoller poller;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        executor = new PartitionExecutor(2, 10, null);
+        poller = new AsyncPartitionPoller((delay, task) -> {
+            scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        executor.close();
+        super.tearDown();
+    }
+
+    public void testPollsUntilTheJobIsDone() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        AsyncPartitionPoller.Poll poll = () -> polls.incrementAndGet() < 3 ? null
+                : new PartitionClient.Result(200, Map.of(), new PartitionResult(List.of(), null));
+
+        PartitionClient.Result result = poll(poll, TimeValue.timeValueMinutes(1), 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, result.getStatusCode());
+        assertEquals(3, polls.get());
+    }
+
+    public void testTimesOut() throws Exception {
+        ExecutionException e = expectThrows(ExecutionException.class,
+                () -> poll(() -> null, TimeValue.timeValueMillis(20), 0).get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(OpenSearchTimeoutException.class));
+    }
+
+    public void testRetriesTransientFailuresOnly() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        AsyncPartitionPoller.Poll poll = () -> {
+            if (polls.incrementAndGet() == 1) {
+                throw new ApiException("busy", 503, Map.of(), null);
+            }
+            throw new ApiException("bad task", 404, Map.of(), null);
+        };
+
+        ExecutionException e = expectThrows(ExecutionException.class,
+                () -> poll(poll, TimeValue.timeValueMinutes(1), 3).get(10, TimeUnit.SECONDS));
+        assertEquals(404, ((ApiException) e.getCause()).getCode());
+        assertEquals(2, polls.get());
+    }
+
+    public void testPostponesPollsTheLimiterRejects() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        AsyncPartitionPoller.Poll poll = () -> {
+            if (polls.incrementAndGet() < 3) {
+                throw new OpenSearchRejectedExecutionException("no slot");
+            }
+            return new PartitionClient.Result(200, Map.of(), new PartitionResult(List.of(), null));
+        };
+
+        // a saturated endpoint is not a failed poll, no retries are used up
+        PartitionClient.Result result = poll(poll, TimeValue.timeValueMinutes(1), 0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, result.getStatusCode());
+        assertEquals(3, polls.get());
+    }
+
+    private CompletableFuture<PartitionClient.Result> poll(AsyncPartitionPoller.Poll poll, TimeValue timeout, int maxRetries) {
+        CompletableFuture<PartitionClient.Result> future = new CompletableFuture<>();
+        poller.poll("t-1", TimeValue.timeValueMillis(1), timeout, maxRetries, poll, new ActionListener<>() {
+            @Override
+            public void onResponse(PartitionClient.Result result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.tasks.TaskCancelledException;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CallGroupTests extends OpenSearchTestCase {
+
+    private PartitionExecutor executor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        executor = new PartitionExecutor(2, 10, null);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        executor.close();
+        super.tearDown();
+    }
+
+    /**
+     * An attempt that hangs like a stuck request until its group aborts it.
+     */
+    private static CallGroup.Attempt<String> stuck(CountDownLatch aborted) {
+        return group -> {
+            CountDownLatch request = new CountDownLatch(1);
+            group.register(() -> {
+                request.countDown();
+                aborted.countDown();
+                return true;
+            });
+            try {
+                request.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ApiException("aborted");
+        };
+    }
+
+    public void testTimesOutAndAbortsAStuckCall() throws Exception {
+        CountDownLatch aborted = new CountDownLatch(1);
+        CallGroup calls = CallGroup.withTimeout(TimeUnit.MILLISECONDS.toNanos(50), executor);
+
+        expectThrows(OpenSearchTimeoutException.class, () -> calls.call(stuck(aborted), null, -1, () -> {}));
+        assertTrue(aborted.await(10, TimeUnit.SECONDS));
+        expectThrows(TaskCancelledException.class, calls::ensureActive);
+    }
+
+    public void testHedgeAnswersWhenThePrimaryIsSlow() throws Exception {
+        CountDownLatch aborted = new CountDownLatch(1);
+        AtomicInteger hedges = new AtomicInteger();
+        CallGroup calls = CallGroup.withTimeout(TimeUnit.SECONDS.toNanos(30), executor);
+
+        String result = calls.call(stuck(aborted), group -> "hedge", TimeUnit.MILLISECONDS.toNanos(10), hedges::incrementAndGet);
+
+        assertEquals("hedge", result);
+        assertEquals(1, hedges.get());
+        assertTrue("the slow primary is aborted", aborted.await(10, TimeUnit.SECONDS));
+        calls.ensureActive();
+    }
+
+    public void testHedgeNeedsAnAdmissionPermit() throws Exception {
+        PartitionExecutor full = new PartitionExecutor(1, 0, null);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            full.execute(() -> {
+                running.countDown();
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            AtomicInteger hedges = new AtomicInteger();
+            CallGroup calls = CallGroup.withTimeout(TimeUnit.SECONDS.toNanos(30), full);
+
+            String result = calls.call(group -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "primary";
+            }, group -> "hedge", TimeUnit.MILLISECONDS.toNanos(10), hedges::incrementAndGet);
+
+            assertEquals("primary", result);
+            assertEquals("the pool and its queue are full, so no hedge is sent", 0, hedges.get());
+        } finally {
+            release.countDown();
+            full.close();
+        }
+    }
+
+    public void testHedgeGivesItsPermitBack() throws Exception {
+        PartitionExecutor single = new PartitionExecutor(1, 0, null);
+        try {
+            CallGroup calls = CallGroup.withTimeout(TimeUnit.SECONDS.toNanos(30), single);
+
+            assertEquals("hedge", calls.call(stuck(new CountDownLatch(1)), group -> "hedge",
+                    TimeUnit.MILLISECONDS.toNanos(10), () -> {}));
+
+            assertBusy(() -> {
+                Releasable permit = single.tryAdmitAttempt();
+                assertNotNull(permit);
+                permit.close();
+            });
+        } finally {
+            single.close();
+        }
+    }
+
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        AtomicInteger hedges = new AtomicInteger();
+        CallGroup calls = CallGroup.withTimeout(-1, executor);
+
+        assertEquals("primary", calls.call(group -> "primary", group -> "hedge", TimeUnit.SECONDS.toNanos(30),
+                hedges::incrementAndGet));
+        assertEquals(0, hedges.get());
+    }
+
+    public void testFailsOnlyWhenEveryAttemptFailed() throws Exception {
+        CallGroup calls = CallGroup.withTimeout(-1, executor);
+
+        ApiException e = expectThrows(ApiException.class, () -> calls.call(group -> {
+            throw new ApiException("primary failed");
+        }, group -> {
+            throw new ApiException("hedge failed");
+        }, 0, () -> {}));
+        assertNotNull(e.getMessage());
+    }
+
+    public void testCancellingTheGroupAbortsItsChildren() throws Exception {
+        CountDownLatch aborted = new CountDownLatch(1);
+        CallGroup calls = CallGroup.withTimeout(-1, executor);
+        CallGroup range = calls.child();
+        range.register(() -> {
+            aborted.countDown();
+            return true;
+        });
+
+        calls.cancel("failed in another page range");
+
+        assertTrue(aborted.await(10, TimeUnit.SECONDS));
+        assertTrue(range.isCancelled());
+        expectThrows(TaskCancelledException.class, range::ensureActive);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static ai.aryn.docparse.ContentSniffer.ContentType;
+
+public class ContentSnifferTests extends OpenSearchTestCase {
+
+    private static ContentType sniff(byte[] bytes) throws Exception {
+        return ContentSniffer.sniff(DocumentInput.of(bytes));
+    }
+
+    private static ContentType sniff(String text) throws Exception {
+        return sniff(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testMagicBytes() throws Exception {
+        assertEquals(ContentType.PDF, sniff(PdfPageCounterTests.pdf(1, 0)));
+        assertEquals(ContentType.OFFICE, sniff(new byte[] { 'P', 'K', 3, 4, 20, 0 }));
+        assertEquals(ContentType.OFFICE, sniff(new byte[] { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1,
+                (byte) 0xB1, 0x1A, (byte) 0xE1, 0 }));
+        assertEquals(ContentType.IMAGE, sniff(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' }));
+        assertEquals(ContentType.IMAGE, sniff(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 }));
+        assertEquals(ContentType.IMAGE, sniff("RIFF\0\0\0\0WEBPVP8 "));
+        assertEquals(ContentType.BINARY, sniff(new byte[] { 0, 1, 2, 3, (byte) 0xFE }));
+    }
+
+    public void testTextFormats() throws Exception {
+        assertEquals(ContentType.HTML, sniff("\uFEFF  <!DOCTYPE html><html><body>hi</body></html>"));
+        assertEquals(ContentType.HTML, sniff("<!-- generated --><html lang=\"en\">"));
+        assertEquals(ContentType.XML, sniff("<?xml version=\"1.0\"?><doc/>"));
+        assertEquals(ContentType.JSON, sniff("\n{\"a\": 1}"));
+        assertEquals(ContentType.TEXT, sniff("Grüße, plain text\nsecond line"));
+        assertEquals(ContentType.EMPTY, sniff(""));
+        assertEquals(ContentType.EMPTY, sniff(" \n\t "));
+        assertEquals(ContentType.BINARY, sniff("text with a \u0001 control character"));
+    }
+
+    public void testMultiByteCharacterCutAtSniffLimit() throws Exception {
+        String text = "a".repeat(ContentSniffer.SNIFF_BYTES - 1) + "é and more";
+        assertEquals(ContentType.TEXT, sniff(text));
+        String encoded = Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(ContentType.TEXT, ContentSniffer.sniff(DocumentInput.base64(encoded)));
+    }
+
+    public void testExtractsParagraphsFromHtml() throws Exception {
+        String html = "<html><head><title>ignored</title><style>p { color: red }</style></head><body>"
+                + "<h1>Title</h1><p>First   paragraph &amp; more</p><!-- hidden --><script>var x = '<p>';</script>"
+                + "<p>Second<br>line</p></body></html>";
+        PartitionResult result = ContentSniffer.extractText(DocumentInput.of(html.getBytes(StandardCharsets.UTF_8)),
+                ContentType.HTML);
+        List<String> texts = result.getElements().stream().map(PartitionResult.Element::getText).collect(Collectors.toList());
+        assertEquals(List.of("Title", "First paragraph & more", "Second", "line"), texts);
+        assertEquals("Text", result.getElements().get(0).getType());
+        assertEquals(Integer.valueOf(1), result.getElements().get(0).getPage());
+    }
+
+    public void testExtractsParagraphsFromText() throws Exception {
+        PartitionResult result = ContentSniffer.extractText(
+                DocumentInput.of("one\ntwo\n\n\n  three  \n".getBytes(StandardCharsets.UTF_8)), ContentType.TEXT);
+        assertEquals(List.of("one\ntwo", "three"),
+                result.getElements().stream().map(PartitionResult.Element::getText).collect(Collectors.toList()));
+        assertTrue(ContentSniffer.extractText(DocumentInput.of(new byte[0]), ContentType.EMPTY).getElements().isEmpty());
+    }
+
+    public void testRules() {
+        ContentSniffer sniffer = new ContentSniffer(Map.of(ContentType.HTML, ContentSniffer.Action.TEXT,
+                ContentType.EMPTY, ContentSniffer.Action.SKIP));
+        assertEquals(ContentSniffer.Action.TEXT, sniffer.actionFor(ContentType.HTML));
+        assertEquals(ContentSniffer.Action.SKIP, sniffer.actionFor(ContentType.EMPTY));
+        assertEquals(ContentSniffer.Action.ARYN, sniffer.actionFor(ContentType.PDF));
+        assertFalse(sniffer.isPassThrough());
+        assertTrue(new ContentSniffer(Map.of(ContentType.PDF, ContentSniffer.Action.ARYN)).isPassThrough());
+        expectThrows(IllegalArgumentException.class, () -> ContentType.fromString("docx"));
+        expectThrows(IllegalArgumentException.class, () -> ContentSniffer.Action.fromString("ocr"));
+    }
+}
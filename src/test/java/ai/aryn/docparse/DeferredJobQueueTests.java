@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DeferredJobQueueTests extends OpenSearchTestCase {
+
+    private static DeferredJobQueue queue(double maxRate, AtomicLong clock) {
+        return new DeferredJobQueue(null, null, 4, maxRate, TimeValue.timeValueSeconds(1), 5,
+                TimeValue.timeValueSeconds(30), TimeValue.timeValueMinutes(10), TimeValue.timeValueSeconds(10), clock::get);
+    }
+
+    public void testOneJobPerDocument() {
+        assertEquals(DeferredJobQueue.jobId("docs", "1"), DeferredJobQueue.jobId("docs", "1"));
+        assertNotEquals(DeferredJobQueue.jobId("docs", "1"), DeferredJobQueue.jobId("docs", "2"));
+        // the separator keeps index and id apart
+        assertNotEquals(DeferredJobQueue.jobId("docs1", "2"), DeferredJobQueue.jobId("docs", "12"));
+    }
+
+    public void testJobRoundTripsThroughItsSource() {
+        Map<String, Object> source = new HashMap<>(DeferredJobQueue.jobSource("tag", Map.of("deferred", true), "docs", "1",
+                "r1", 8L, 1_000L));
+        assertEquals(DeferredJobQueue.PENDING, source.get("state"));
+        assertEquals(1_000L, source.get("next_attempt_at"));
+        // the job refers to its document, the input stays there
+        assertFalse(source.containsKey("input"));
+        assertFalse(source.containsKey("options"));
+        source.put("attempts", 2);
+
+        DeferredJobQueue.Job job = DeferredJobQueue.Job.fromSource("id", 7, 1, source);
+        assertEquals("tag", job.processor);
+        assertEquals(Map.of("deferred", true), job.config);
+        assertEquals("docs", job.index);
+        assertEquals("1", job.docId);
+        assertEquals("r1", job.routing);
+        assertEquals(8L, job.size);
+        assertEquals(2, job.attempts);
+        assertEquals(1_000L, job.createdAt);
+        assertEquals(7, job.seqNo);
+    }
+
+    public void testJobWithoutRouting() {
+        Map<String, Object> source = DeferredJobQueue.jobSource(null, Map.of(), "docs", "1", null, 8L, 1_000L);
+        assertFalse(source.containsKey("processor"));
+        assertFalse(source.containsKey("routing"));
+        DeferredJobQueue.Job job = DeferredJobQueue.Job.fromSource("id", 0, 1, source);
+        assertNull(job.processor);
+        assertNull(job.routing);
+        assertEquals(0, job.attempts);
+    }
+
+    public void testConfigKeyIgnoresKeyOrder() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("deferred", true);
+        first.put("content_rules", Map.of("text", "extract", "image", "skip"));
+        first.put("aryn_url", List.of("http://a", "http://b"));
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("aryn_url", List.of("http://a", "http://b"));
+        second.put("content_rules", new TreeMap<>(Map.of("image", "skip", "text", "extract")));
+        second.put("deferred", true);
+        assertEquals(DeferredJobQueue.configKey("tag", first), DeferredJobQueue.configKey("tag", second));
+
+        // pipelines sharing a tag but not their settings get processors of their own
+        second.put("deferred", false);
+        assertNotEquals(DeferredJobQueue.configKey("tag", first), DeferredJobQueue.configKey("tag", second));
+        assertNotEquals(DeferredJobQueue.configKey("tag", first), DeferredJobQueue.configKey("other", first));
+        assertNotEquals(DeferredJobQueue.configKey(null, Map.of("aryn_url", List.of("http://b", "http://a"))),
+                DeferredJobQueue.configKey(null, Map.of("aryn_url", List.of("http://a", "http://b"))));
+    }
+
+    public void testStoredConfigHasNoApiKey() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("deferred", true);
+        config.put("aryn_api_key", "secret");
+        Map<String, Object> stored = DeferredJobQueue.storedConfig(config);
+        assertEquals(Map.of("deferred", true), stored);
+        assertEquals("secret", config.get("aryn_api_key"));
+    }
+
+    public void testRetryDelayDoublesUpToAnHour() {
+        TimeValue backoff = TimeValue.timeValueSeconds(30);
+        assertEquals(30_000L, DeferredJobQueue.retryDelay(backoff, 1));
+        assertEquals(60_000L, DeferredJobQueue.retryDelay(backoff, 2));
+        assertEquals(240_000L, DeferredJobQueue.retryDelay(backoff, 4));
+        assertEquals(3_600_000L, DeferredJobQueue.retryDelay(backoff, 50));
+    }
+
+    public void testMaxRateHandsOutPermits() {
+        AtomicLong clock = new AtomicLong(10_000);
+        DeferredJobQueue queue = queue(2.0, clock);
+        assertEquals(2, queue.takePermits(4));
+        assertEquals(0, queue.takePermits(4));
+        clock.addAndGet(500);
+        assertEquals(1, queue.takePermits(4));
+        queue.returnPermits(1);
+        assertEquals(1, queue.takePermits(4));
+        // idle time does not add up beyond one second's worth
+        clock.addAndGet(60_000);
+        assertEquals(2, queue.takePermits(4));
+    }
+
+    public void testNoMaxRate() {
+        DeferredJobQueue queue = queue(0, new AtomicLong());
+        assertEquals(4, queue.takePermits(4));
+        assertEquals(4, queue.takePermits(4));
+    }
+}
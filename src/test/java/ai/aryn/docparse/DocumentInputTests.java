@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+public class DocumentInputTests extends OpenSearchTestCase {
+
+    public void testDecodedLengthMatchesDecoder() {
+        for (int size = 0; size < 64; size++) {
+            byte[] bytes = randomByteArrayOfLength(size);
+            String padded = Base64.getEncoder().encodeToString(bytes);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(bytes);
+            assertEquals(size, DocumentInput.decodedLength(padded));
+            assertEquals(size, DocumentInput.decodedLength(unpadded));
+        }
+    }
+
+    public void testBase64StreamsDecodedBytes() throws Exception {
+        byte[] bytes = randomByteArrayOfLength(randomIntBetween(1, 100_000));
+        DocumentInput input = DocumentInput.base64(Base64.getEncoder().encodeToString(bytes));
+        assertEquals(bytes.length, input.length());
+        try (InputStream in = input.openStream()) {
+            assertArrayEquals(bytes, in.readAllBytes());
+        }
+        // every stream starts from the beginning again
+        assertArrayEquals(bytes, input.toBytes());
+    }
+
+    public void testBase64RejectsMalformedInputUpFront() {
+        for (int size = 0; size < 16; size++) {
+            byte[] bytes = randomByteArrayOfLength(size);
+            DocumentInput.base64(Base64.getEncoder().encodeToString(bytes));
+            DocumentInput.base64(Base64.getEncoder().withoutPadding().encodeToString(bytes));
+        }
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> DocumentInput.base64("cGRm\ncGRm"));
+        assertEquals("illegal base64 character [\\u000a] at position [4]", e.getMessage());
+        expectThrows(IllegalArgumentException.class, () -> DocumentInput.base64("cG=m"));
+        expectThrows(IllegalArgumentException.class, () -> DocumentInput.base64("cGRmc"));
+        expectThrows(IllegalArgumentException.class, () -> DocumentInput.base64("cGR=="));
+        expectThrows(IllegalArgumentException.class, () -> DocumentInput.base64("cG="));
+    }
+}
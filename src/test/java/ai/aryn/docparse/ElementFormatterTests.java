@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class ElementFormatterTests extends OpenSearchTestCase {
+
+    private static final List<PartitionResult.Element> ELEMENTS = List.of(
+            new PartitionResult.Element("Page-header", "ACME confidential", 1, null),
+            new PartitionResult.Element("Title", "Quarterly report", 1, List.of(0.1, 0.1, 0.9, 0.2)),
+            new PartitionResult.Element("Text", "Revenue grew.", 1, null),
+            new PartitionResult.Element("Table", "q1 | q2", 2, null),
+            new PartitionResult.Element("Picture", null, 2, null),
+            new PartitionResult.Element("Page-footer", "page 2", 2, null));
+
+    public void testTextModeJoinsTexts() {
+        Object text = ElementFormatter.TEXT.format(ELEMENTS);
+
+        String separator = System.lineSeparator();
+        assertEquals("ACME confidential" + separator + "Quarterly report" + separator + "Revenue grew." + separator
+                + "q1 | q2" + separator + "page 2" + separator, text);
+        assertNull(ElementFormatter.TEXT.format(List.of()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testElementsModeKeepsStructure() {
+        ElementFormatter formatter = new ElementFormatter(ElementFormatter.OutputMode.ELEMENTS, null,
+                List.of("page-header", "PAGE-FOOTER"), ElementFormatter.DEFAULT_CHUNK_SIZE);
+
+        List<Map<String, Object>> elements = (List<Map<String, Object>>) formatter.format(ELEMENTS);
+
+        assertEquals(4, elements.size());
+        assertEquals(Map.of("type", "Title", "page", 1, "text", "Quarterly report", "bbox", List.of(0.1, 0.1, 0.9, 0.2)),
+                elements.get(0));
+        assertEquals(Map.of("type", "Picture", "page", 2), elements.get(3));
+    }
+
+    public void testIncludeFilter() {
+        ElementFormatter formatter = new ElementFormatter(ElementFormatter.OutputMode.TEXT, List.of("Table"), null,
+                ElementFormatter.DEFAULT_CHUNK_SIZE);
+
+        assertEquals("q1 | q2" + System.lineSeparator(), formatter.format(ELEMENTS));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testChunksAreSizeBounded() {
+        ElementFormatter formatter = new ElementFormatter(ElementFormatter.OutputMode.CHUNKS, null,
+                List.of("Page-header", "Page-footer"), 30);
+
+        List<Map<String, Object>> chunks = (List<Map<String, Object>>) formatter.format(ELEMENTS);
+
+        assertEquals(2, chunks.size());
+        assertEquals(Map.of("text", "Quarterly report\nRevenue grew.", "page_start", 1, "page_end", 1, "element_count", 2),
+                chunks.get(0));
+        assertEquals(Map.of("text", "q1 | q2", "page_start", 2, "page_end", 2, "element_count", 1), chunks.get(1));
+    }
+
+    public void testRejectsUnknownOutputMode() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> ElementFormatter.OutputMode.fromString("html"));
+        assertThat(e.getMessage(), containsString("output_mode [html]"));
+    }
+}
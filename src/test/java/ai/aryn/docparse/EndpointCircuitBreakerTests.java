@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EndpointCircuitBreakerTests extends OpenSearchTestCase {
+
+    public void testOpensAfterConsecutiveFailuresAndProbes() {
+        AtomicLong clock = new AtomicLong();
+        EndpointCircuitBreaker.Registry registry = new EndpointCircuitBreaker.Registry(2, TimeValue.timeValueSeconds(10), clock::get);
+        EndpointCircuitBreaker breaker = registry.get("https://api.aryn.ai");
+        assertSame(breaker, registry.get("https://api.aryn.ai"));
+
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(EndpointCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        clock.addAndGet(10_000);
+        assertTrue(breaker.allowRequest());
+        // only one probe at a time
+        assertFalse(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(EndpointCircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.addAndGet(10_000);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(EndpointCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    public void testAbandonedProbeIsGivenBack() {
+        AtomicLong clock = new AtomicLong();
+        EndpointCircuitBreaker breaker = new EndpointCircuitBreaker.Registry(1, TimeValue.timeValueSeconds(10), clock::get)
+                .get("https://api.aryn.ai");
+        breaker.onFailure();
+        clock.addAndGet(10_000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isAvailable());
+
+        breaker.onAbandoned();
+        assertEquals(EndpointCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isAvailable());
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(EndpointCircuitBreaker.State.CLOSED, breaker.getState());
+        // a closed breaker has no probe to give back
+        breaker.onAbandoned();
+        assertEquals(EndpointCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EndpointPoolTests extends OpenSearchTestCase {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ArynEndpoint.Registry registry = new ArynEndpoint.Registry(TimeValue.timeValueSeconds(30), 3.0,
+            TimeValue.timeValueSeconds(2), clock::get);
+
+    private EndpointPool.Member member(String url, EndpointCircuitBreaker breaker) {
+        return new EndpointPool.Member(registry.get(url), null, breaker, null);
+    }
+
+    private EndpointPool pool(EndpointPool.Member... members) {
+        return new EndpointPool(List.of(members), registry.getEjectionDuration(), registry.getSlowFactor());
+    }
+
+    public void testRoutesToLeastOutstanding() {
+        EndpointPool.Member a = member("http://a", null);
+        EndpointPool.Member b = member("http://b", null);
+        EndpointPool pool = pool(a, b);
+        a.endpoint.onCallStart();
+        a.endpoint.onCallStart();
+        b.endpoint.onCallStart();
+        assertSame(b, pool.choose());
+        assertSame(a, pool.choose(b));
+
+        long started = a.endpoint.onCallStart();
+        b.endpoint.onCallStart();
+        b.endpoint.onCallStart();
+        b.endpoint.onCallStart();
+        assertSame(a, pool.choose());
+        a.endpoint.onCallDone(started, true, 1024);
+        assertEquals(1, a.endpoint.getFailures());
+        assertEquals(3, a.endpoint.getCalls());
+        assertSame(registry.get("http://a"), a.endpoint);
+    }
+
+    public void testSkipsOpenCircuitBreakers() {
+        EndpointCircuitBreaker breaker = new EndpointCircuitBreaker("http://a", 1, TimeValue.timeValueSeconds(10), clock::get);
+        EndpointPool.Member a = member("http://a", breaker);
+        EndpointPool.Member b = member("http://b", null);
+        EndpointPool pool = pool(a, b);
+        b.endpoint.onCallStart();
+        assertSame(a, pool.choose());
+        breaker.onFailure();
+        assertSame(b, pool.choose());
+        assertNull(pool.choose(b));
+
+        EndpointPool single = pool(a);
+        assertNull(single.choose());
+        clock.addAndGet(10_000);
+        assertSame(a, single.choose());
+    }
+
+    public void testEjectsSlowEndpoints() {
+        EndpointPool.Member fast = member("http://fast", null);
+        EndpointPool.Member slow = member("http://slow", null);
+        EndpointPool pool = pool(fast, slow);
+        for (int i = 0; i < EndpointPool.SLOW_MIN_SAMPLES; i++) {
+            fast.endpoint.recordLatency(100_000, 1024);
+            slow.endpoint.recordLatency(400_000, 1024);
+        }
+        fast.endpoint.onCallStart();
+        fast.endpoint.onCallStart();
+        assertSame(fast, pool.choose());
+        assertTrue(slow.endpoint.isEjected());
+        assertFalse(fast.endpoint.isEjected());
+        assertEquals(1, slow.endpoint.getEjections());
+        // judged again on fresh calls once it is back
+        assertEquals(-1, slow.endpoint.getLatencyMicros(1));
+
+        clock.addAndGet(30_000);
+        assertFalse(slow.endpoint.isEjected());
+        assertSame(slow, pool.choose());
+    }
+
+    public void testComparesLatencyWithinUploadSizes() {
+        EndpointPool.Member small = member("http://small", null);
+        EndpointPool.Member large = member("http://large", null);
+        EndpointPool pool = pool(small, large);
+        for (int i = 0; i < EndpointPool.SLOW_MIN_SAMPLES; i++) {
+            // the large documents happened to go to one endpoint, it is not slower for their size
+            small.endpoint.recordLatency(100_000, 10 << 10);
+            large.endpoint.recordLatency(2_000_000, 20 << 20);
+            small.endpoint.recordLatency(2_500_000, 30 << 20);
+        }
+        pool.choose();
+        assertFalse(small.endpoint.isEjected());
+        assertFalse(large.endpoint.isEjected());
+
+        for (int i = 0; i < EndpointPool.SLOW_MIN_SAMPLES; i++) {
+            large.endpoint.recordLatency(400_000, 10 << 10);
+        }
+        pool.choose();
+        assertTrue(large.endpoint.isEjected());
+        assertFalse(small.endpoint.isEjected());
+    }
+
+    public void testUploadsWithoutSizeDoNotCount() {
+        EndpointPool.Member a = member("http://a", null);
+        EndpointPool.Member b = member("http://b", null);
+        EndpointPool pool = pool(a, b);
+        for (int i = 0; i < EndpointPool.SLOW_MIN_SAMPLES; i++) {
+            // polls of asynchronous jobs answer in no time
+            a.endpoint.recordLatency(1_000, -1);
+            b.endpoint.recordLatency(1_000_000, 1024);
+        }
+        pool.choose();
+        assertFalse(b.endpoint.isEjected());
+        assertTrue(a.endpoint.getLatencyMicros(1) >= 0);
+    }
+
+    public void testNeverEjectsTheLastEndpointInRotation() {
+        EndpointPool.Member a = member("http://a", null);
+        EndpointPool.Member b = member("http://b", null);
+        EndpointPool pool = pool(a, b);
+        a.endpoint.onHealthCheck("health check returned status 503");
+        assertTrue(a.endpoint.isEjected());
+        for (int i = 0; i < EndpointPool.SLOW_MIN_SAMPLES; i++) {
+            b.endpoint.recordLatency(1_000_000, 1024);
+        }
+        assertSame(b, pool.choose());
+        assertFalse(b.endpoint.isEjected());
+
+        b.endpoint.onHealthCheck("health check returned status 503");
+        // every endpoint is ejected, the calls still go out
+        assertNotNull(pool.choose());
+    }
+
+    public void testHealthCheckEjectsUntilHealthy() {
+        ArynEndpoint endpoint = registry.get("http://a");
+        endpoint.onHealthCheck("health check failed: connection refused");
+        endpoint.onHealthCheck("health check failed: connection refused");
+        assertTrue(endpoint.isEjected());
+        assertEquals(1, endpoint.getEjections());
+        clock.addAndGet(60_000);
+        assertTrue(endpoint.isEjected());
+        endpoint.onHealthCheck(null);
+        assertFalse(endpoint.isEjected());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+
+public class ImageStoreTests extends OpenSearchTestCase {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3 };
+
+    private static JsonParser base64String(byte[] bytes) throws Exception {
+        JsonParser parser = new ObjectMapper().createParser("\"" + Base64.getEncoder().encodeToString(bytes) + "\"");
+        parser.nextToken();
+        return parser;
+    }
+
+    public void testPathStoreDecodesTheImageIntoAFile() throws Exception {
+        Path repo = createTempDir();
+        Path root = repo.resolve("images");
+        Map<String, Object> ref = ImageStore.path(repo, root).batch().sink("doc-1").write(3, base64String(PNG));
+
+        Path file = root.resolve("doc-1").resolve("3.png");
+        // relative to path.repo, not a node local absolute path
+        assertEquals(Path.of("images", "doc-1", "3.png").toString(), ref.get("path"));
+        assertEquals((long) PNG.length, ref.get("size"));
+        assertEquals("image/png", ref.get("content_type"));
+        assertArrayEquals(PNG, Files.readAllBytes(file));
+        try (var files = Files.list(root.resolve("doc-1"))) {
+            assertEquals("no temp file is left behind", 1, files.count());
+        }
+    }
+
+    public void testPathStoreKeepsUnknownFormatsAsBinary() throws Exception {
+        Path root = createTempDir();
+        Map<String, Object> ref = ImageStore.path(root, root).batch().sink("doc-1").write(0, base64String(new byte[] { 1, 2 }));
+
+        assertEquals("application/octet-stream", ref.get("content_type"));
+        assertTrue(Files.exists(root.resolve("doc-1").resolve("0.bin")));
+    }
+
+    public void testPathStoreKeepsIdsInOneDirectory() throws Exception {
+        Path root = createTempDir();
+        Map<String, Object> ref = ImageStore.path(root, root).batch().sink("../x/..").write(0, base64String(PNG));
+
+        Path file = root.resolve((String) ref.get("path"));
+        assertEquals(root, file.getParent().getParent());
+        assertTrue(Files.exists(file));
+    }
+}
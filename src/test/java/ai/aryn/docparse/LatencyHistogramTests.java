@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.IOException;
+
+public class LatencyHistogramTests extends OpenSearchTestCase {
+
+    public void testBucketsCoverEveryValue() {
+        long previous = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long highest = LatencyHistogram.highestValue(bucket);
+            assertTrue(highest > previous);
+            assertEquals(bucket, LatencyHistogram.bucket(highest));
+            assertEquals(bucket, LatencyHistogram.bucket(previous + 1));
+            previous = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    public void testSmallValuesAreExact() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.highestValue(LatencyHistogram.bucket(value)));
+        }
+    }
+
+    public void testRelativeErrorIsBounded() {
+        for (int i = 0; i < 1000; i++) {
+            long value = randomLongBetween(64, Long.MAX_VALUE / 2);
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertTrue(highest >= value);
+            assertTrue((highest - value) <= value / 32);
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.percentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMicros(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertWithin(500_000, snapshot.percentile(50));
+        assertWithin(990_000, snapshot.percentile(99));
+        assertWithin(1_000_000, snapshot.getMax());
+    }
+
+    public void testMergeAndSerialization() throws IOException {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            fast.recordMicros(10_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.recordMicros(5_000_000);
+        }
+        LatencyHistogram.Snapshot merged = fast.snapshot().merge(slow.snapshot());
+        assertEquals(100, merged.getCount());
+        assertWithin(10_000, merged.percentile(90));
+        assertWithin(5_000_000, merged.percentile(91));
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            merged.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                LatencyHistogram.Snapshot read = new LatencyHistogram.Snapshot(in);
+                assertEquals(merged.getCount(), read.getCount());
+                assertEquals(merged.percentile(90), read.percentile(90));
+                assertEquals(merged.getMax(), read.getMax());
+            }
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PartitionCacheTests extends OpenSearchTestCase {
+
+    private static final byte[] OPTIONS = "{\"threshold\":\"auto\"}".getBytes(StandardCharsets.UTF_8);
+
+    public void testKeyDependsOnInputOptionsAndUrl() {
+        DocumentInput input = DocumentInput.of("pdf".getBytes(StandardCharsets.UTF_8));
+        String key = PartitionCache.key("https://api.aryn.ai", OPTIONS, input);
+        assertEquals(key, PartitionCache.key("https://api.aryn.ai", OPTIONS, input));
+        assertEquals(key, PartitionCache.key("https://api.aryn.ai", OPTIONS, DocumentInput.base64("cGRm")));
+        assertNotEquals(key, PartitionCache.key("https://other", OPTIONS, input));
+        assertNotEquals(key, PartitionCache.key("https://api.aryn.ai", "{}".getBytes(StandardCharsets.UTF_8), input));
+        assertNotEquals(key, PartitionCache.key("https://api.aryn.ai", OPTIONS, DocumentInput.of("doc".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    public void testMemoryHitsAndTtl() {
+        AtomicLong clock = new AtomicLong(1000);
+        PartitionCache cache = new PartitionCache(1024, TimeValue.timeValueSeconds(10), null, 0, clock::get);
+        byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(cache.get("a", null));
+        cache.put("a", data);
+        assertArrayEquals(data, cache.get("a", null));
+
+        clock.addAndGet(5000);
+        assertNull(cache.get("a", TimeValue.timeValueSeconds(1)));
+        assertArrayEquals(data, cache.get("a", null));
+
+        assertEquals(2, cache.getMemoryHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testDiskTierSurvivesRestart() {
+        Path dir = createTempDir().resolve(PartitionCache.DISK_DIRECTORY);
+        byte[] data = "{\"elements\":[]}".getBytes(StandardCharsets.UTF_8);
+        PartitionCache cache = new PartitionCache(1024, TimeValue.timeValueHours(1), dir, 1024, System::currentTimeMillis);
+        cache.put("a", data);
+        assertEquals(data.length, cache.getDiskBytes());
+
+        PartitionCache restarted = new PartitionCache(1024, TimeValue.timeValueHours(1), dir, 1024, System::currentTimeMillis);
+        assertArrayEquals(data, restarted.get("a", null));
+        assertEquals(1, restarted.getDiskHits());
+        assertArrayEquals(data, restarted.get("a", null));
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    public void testDiskTierEvictsOldestEntries() {
+        Path dir = createTempDir().resolve(PartitionCache.DISK_DIRECTORY);
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        PartitionCache cache = new PartitionCache(0, TimeValue.timeValueHours(1), dir, 10, clock::get);
+        cache.put("a", new byte[6]);
+        clock.incrementAndGet();
+        cache.put("b", new byte[6]);
+        assertEquals(6, cache.getDiskBytes());
+        assertNull(cache.get("a", null));
+        assertEquals(6, cache.get("b", null).length);
+    }
+}
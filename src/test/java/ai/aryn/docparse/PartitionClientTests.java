@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.sun.net.httpserver.HttpServer;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class PartitionClientTests extends OpenSearchTestCase {
+
+    private HttpServer server;
+
+    @Override
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop(0);
+        }
+        super.tearDown();
+    }
+
+    private String startServer(int status, String body, AtomicReference<String> requestBody) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.PARTITION_PATH, exchange -> {
+            requestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1)
+                    + exchange.getRequestHeaders().getFirst("Authorization"));
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add(ArynIngestProcessor.ARYN_CALL_ID, "call-1");
+            exchange.sendResponseHeaders(status, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public void testUploadsBytesWithoutTempFile() throws Exception {
+        AtomicReference<String> request = new AtomicReference<>();
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath(startServer(200, "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"hello\"}]}", request));
+        PartitionClient client = new PartitionClient(apiClient, "key", ArynIngestProcessor.USER_AGENT);
+
+        PartitionClient.Result result = client.partition(DocumentInput.of("%PDF-1.7".getBytes(StandardCharsets.UTF_8)),
+                "{\"threshold\":\"auto\"}".getBytes(StandardCharsets.UTF_8), -1);
+
+        assertEquals("hello", result.getResponse().getElements().get(0).getText());
+        assertEquals("call-1", result.getHeader(ArynIngestProcessor.ARYN_CALL_ID));
+        assertThat(request.get(), containsString("name=\"file\"; filename=\"document\""));
+        assertThat(request.get(), containsString("%PDF-1.7"));
+        assertThat(request.get(), containsString("{\"threshold\":\"auto\"}"));
+        assertThat(request.get(), containsString("Bearer key"));
+    }
+
+    public void testStreamsBase64Input() throws Exception {
+        AtomicReference<String> request = new AtomicReference<>();
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath(startServer(200, "{\"elements\":[]}", request));
+        PartitionClient client = new PartitionClient(apiClient, "key", ArynIngestProcessor.USER_AGENT);
+
+        String encoded = Base64.getEncoder().encodeToString("%PDF-1.7 streamed".getBytes(StandardCharsets.UTF_8));
+        client.partition(DocumentInput.base64(encoded), "{}".getBytes(StandardCharsets.UTF_8), -1);
+
+        assertThat(request.get(), containsString("%PDF-1.7 streamed"));
+    }
+
+    public void testErrorStatusBecomesApiException() throws Exception {
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath(startServer(503, "{\"detail\":\"busy\"}", new AtomicReference<>()));
+        PartitionClient client = new PartitionClient(apiClient, "key", ArynIngestProcessor.USER_AGENT);
+
+        ApiException e = expectThrows(ApiException.class, () -> client.partition(DocumentInput.of(new byte[] { 1 }), new byte[] { 2 }, -1));
+        assertEquals(503, e.getCode());
+        assertThat(e.getResponseBody(), containsString("busy"));
+    }
+
+    public void testSubmitsAndPollsAsyncJob() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PartitionClient.ASYNC_SUBMIT_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] response = "{\"task_id\":\"aryn:t-1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(202, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.createContext(PartitionClient.ASYNC_RESULT_PATH, exchange -> {
+            assertTrue(exchange.getRequestURI().getPath().endsWith("/aryn:t-1"));
+            if (polls.incrementAndGet() == 1) {
+                exchange.sendResponseHeaders(202, -1);
+            } else {
+                byte[] response = "{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"done\"}]}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            }
+            exchange.close();
+        });
+        server.start();
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        PartitionClient client = new PartitionClient(apiClient, "key", ArynIngestProcessor.USER_AGENT);
+
+        String taskId = client.submitAsync(DocumentInput.of(new byte[] { 1 }), "{}".getBytes(StandardCharsets.UTF_8));
+        assertEquals("aryn:t-1", taskId);
+        assertNull(client.pollAsync(taskId, -1));
+        assertEquals("done", client.pollAsync(taskId, -1).getResponse().getElements().get(0).getText());
+    }
+
+    public void testRejectsResponsesLargerThanMaxResponseBytes() throws Exception {
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath(startServer(200, "{\"elements\":[{\"text_representation\":\"" + "x".repeat(1000) + "\"}]}",
+                new AtomicReference<>()));
+        PartitionClient client = new PartitionClient(apiClient, "key", ArynIngestProcessor.USER_AGENT);
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> client.partition(DocumentInput.of(new byte[] { 1 }), new byte[] { 2 }, 100));
+        assertThat(e.getMessage(), containsString("max_response_bytes [100]"));
+    }
+}
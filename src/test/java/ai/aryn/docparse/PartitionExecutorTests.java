@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PartitionExecutorTests extends OpenSearchTestCase {
+
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try (PartitionExecutor executor = new PartitionExecutor(1, 1, null)) {
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            CountDownLatch queuedRan = new CountDownLatch(1);
+            executor.execute(queuedRan::countDown);
+            assertEquals(1, executor.getActiveCount());
+            expectThrows(OpenSearchRejectedExecutionException.class, () -> executor.execute(() -> {}));
+
+            release.countDown();
+            assertTrue(queuedRan.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Runnable await(CountDownLatch started, CountDownLatch release) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    public void testLargeDocumentsHoldTheirShareOfSlots() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch releaseLarge = new CountDownLatch(1);
+        CountDownLatch releaseSmall = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        try (PartitionExecutor executor = new PartitionExecutor(2, 10, 100, 0.5, 4, null)) {
+            executor.execute(await(started, releaseLarge), 1000);
+            executor.execute(() -> order.add("large"), 1000);
+            // the second slot is not taken by the waiting large document
+            executor.execute(await(started, releaseSmall), 10);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            CountDownLatch smallRan = new CountDownLatch(2);
+            executor.execute(() -> {
+                order.add("small");
+                smallRan.countDown();
+            }, 10);
+            executor.execute(() -> {
+                order.add("small");
+                smallRan.countDown();
+            });
+
+            List<ArynNodeStats.LaneStats> lanes = executor.getLaneStats();
+            assertEquals("small", lanes.get(0).getLane());
+            assertEquals(1, lanes.get(0).getActive());
+            assertEquals(2, lanes.get(0).getQueued());
+            assertEquals("large", lanes.get(1).getLane());
+            assertEquals(1, lanes.get(1).getActive());
+            assertEquals(1, lanes.get(1).getQueued());
+            assertEquals(3, executor.getQueueCount());
+
+            releaseSmall.countDown();
+            assertTrue(smallRan.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of("small", "small"), order);
+            releaseLarge.countDown();
+            assertBusy(() -> assertEquals(3, order.size()));
+            assertEquals("large", order.get(2));
+            assertEquals(3, executor.getLaneStats().get(0).getStarted());
+            assertEquals(2, executor.getLaneStats().get(1).getWaitTime().getCount());
+        }
+    }
+
+    public void testSmallLaneIsWeighted() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        try (PartitionExecutor executor = new PartitionExecutor(1, 10, 100, 1.0, 2, null)) {
+            executor.execute(await(started, release), 10);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (String name : List.of("L1", "L2", "S1", "S2", "S3", "S4")) {
+                executor.execute(() -> {
+                    order.add(name);
+                    done.countDown();
+                }, name.startsWith("L") ? 1000 : 10);
+            }
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            // the blocking task took the first small turn
+            assertEquals(List.of("S1", "L1", "S2", "S3", "L2", "S4"), order);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.indices.breaker.BreakerSettings;
+import org.opensearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.List;
+
+public class PartitionMemoryBreakerTests extends OpenSearchTestCase {
+
+    private static CircuitBreaker breaker(long limit) {
+        BreakerSettings settings = new BreakerSettings(PartitionMemoryBreaker.NAME, limit, 1.0,
+                CircuitBreaker.Type.MEMORY, CircuitBreaker.Durability.TRANSIENT);
+        return new HierarchyCircuitBreakerService(Settings.EMPTY, List.of(settings),
+                new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)).getBreaker(PartitionMemoryBreaker.NAME);
+    }
+
+    public void testRejectsReservationsOverTheLimit() {
+        CircuitBreaker breaker = breaker(100);
+        PartitionMemoryBreaker memoryBreaker = new PartitionMemoryBreaker();
+        memoryBreaker.setBreaker(breaker);
+
+        Releasable first = memoryBreaker.reserve(60, "doc-1");
+        expectThrows(CircuitBreakingException.class, () -> memoryBreaker.reserve(60, "doc-2"));
+        assertEquals(60, breaker.getUsed());
+
+        first.close();
+        first.close();
+        assertEquals(0, breaker.getUsed());
+        memoryBreaker.reserve(60, "doc-2").close();
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testReservationsAreFreeWithoutABreaker() {
+        PartitionMemoryBreaker memoryBreaker = new PartitionMemoryBreaker();
+
+        memoryBreaker.reserve(Long.MAX_VALUE, "doc").close();
+    }
+
+    public void testEstimate() {
+        assertEquals(200, PartitionMemoryBreaker.estimate(100, false, -1));
+        assertEquals(100, PartitionMemoryBreaker.estimate(100, true, -1));
+        assertEquals(130, PartitionMemoryBreaker.estimate(100, false, 30));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+public class PartitionOptionsTests extends OpenSearchTestCase {
+
+    public void testStaticOptionsAreSerializedOnce() {
+        PartitionOptions options = new PartitionOptions("0.4", "auto", null, false, false, null);
+
+        assertSame(options.toJson(), options.toJson());
+        assertSame(options.toJson(), options.resolve(null));
+        assertSame(options.toJson(), options.resolve(Map.of()));
+        String json = new String(options.toJson(), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"threshold\":0.4"));
+        assertThat(json, not(containsString("table_mode")));
+    }
+
+    public void testOverridesAreCachedPerTuple() {
+        PartitionOptions options = new PartitionOptions("auto", "auto", null, false, false, null);
+
+        byte[] spreadsheet = options.resolve(new HashMap<>(Map.of("table_mode", "standard")));
+        assertSame(spreadsheet, options.resolve(new HashMap<>(Map.of("table_mode", "standard"))));
+        assertThat(new String(spreadsheet, StandardCharsets.UTF_8), containsString("\"table_mode\":\"standard\""));
+
+        byte[] withSchema = options.resolve(Map.of("schema", "{\"title\":\"string\"}", "extract_images", "true"));
+        String json = new String(withSchema, StandardCharsets.UTF_8);
+        assertThat(json, containsString("property_extraction_options"));
+        assertThat(json, containsString("\"extract_images\":true"));
+        assertEquals(2, options.variantCount());
+    }
+
+    public void testRejectsUnknownOverrides() {
+        PartitionOptions options = new PartitionOptions("auto", null, null, false, false, null);
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> options.resolve(Map.of("aryn_api_key", "other")));
+        assertThat(e.getMessage(), containsString("[aryn_api_key] cannot be overridden"));
+        expectThrows(IllegalArgumentException.class, () -> options.resolve(Map.of("extract_images", "maybe")));
+    }
+
+    public void testVariantsAreBounded() {
+        PartitionOptions options = new PartitionOptions("auto", null, null, false, false, null);
+
+        for (int i = 0; i < PartitionOptions.MAX_VARIANTS + 10; i++) {
+            options.resolve(Map.of("threshold", i));
+        }
+        assertEquals(PartitionOptions.MAX_VARIANTS, options.variantCount());
+    }
+}
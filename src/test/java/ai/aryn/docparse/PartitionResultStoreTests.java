@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.ResourceAlreadyExistsException;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.admin.indices.create.CreateIndexRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.test.OpenSearchTestCase;
+import org.opensearch.test.client.NoOpClient;
+import org.opensearch.transport.RemoteTransportException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class PartitionResultStoreTests extends OpenSearchTestCase {
+
+    private static final byte[] RESULT = "{\"elements\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    public void testDecodesTheBase64Source() {
+        Map<String, Object> source = Map.of("result", Base64.getEncoder().encodeToString(RESULT), "created_at", 1_000L);
+
+        assertArrayEquals(RESULT, PartitionResultStore.decode(source, 2_000L, 5_000L));
+    }
+
+    public void testIgnoresResultsOlderThanTheMaxAge() {
+        Map<String, Object> source = Map.of("result", Base64.getEncoder().encodeToString(RESULT), "created_at", 1_000L);
+
+        assertNull(PartitionResultStore.decode(source, 7_000L, 5_000L));
+        assertNotNull(PartitionResultStore.decode(source, 6_000L, 5_000L));
+    }
+
+    public void testIgnoresIncompleteSources() {
+        assertNull(PartitionResultStore.decode(Map.of("created_at", 1_000L), 1_000L, 5_000L));
+        assertNull(PartitionResultStore.decode(Map.of("result", "e30="), 1_000L, 5_000L));
+    }
+
+    /**
+     * A client that keeps the requests it gets and answers them right away, failing index creation as another
+     * node that created the index first would.
+     */
+    private static NoOpClient recorder(String testName, List<ActionRequest> requests, boolean indexExists) {
+        return new NoOpClient(testName) {
+            @Override
+            protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(
+                    ActionType<Response> action, Request request, ActionListener<Response> listener) {
+                requests.add(request);
+                if (request instanceof CreateIndexRequest && indexExists) {
+                    listener.onFailure(new RemoteTransportException("node", new ResourceAlreadyExistsException(PartitionResultStore.INDEX)));
+                } else {
+                    listener.onResponse(null);
+                }
+            }
+        };
+    }
+
+    private static PartitionResultStore store(NoOpClient client) {
+        return new PartitionResultStore(client, new ThreadContext(Settings.EMPTY), TimeValue.timeValueDays(7), 100,
+                TimeValue.timeValueHours(1), TimeValue.timeValueSeconds(5), () -> 1_000L);
+    }
+
+    public void testPutCreatesTheIndexOnce() {
+        List<ActionRequest> requests = new CopyOnWriteArrayList<>();
+        try (NoOpClient client = recorder(getTestName(), requests, false)) {
+            PartitionResultStore store = store(client);
+            store.put("a", RESULT);
+            store.put("b", RESULT);
+
+            assertEquals(3, requests.size());
+            assertTrue(requests.get(0) instanceof CreateIndexRequest);
+            assertEquals("a", ((IndexRequest) requests.get(1)).id());
+            assertEquals("b", ((IndexRequest) requests.get(2)).id());
+        }
+    }
+
+    public void testPutStoresWhenAnotherNodeCreatedTheIndex() {
+        List<ActionRequest> requests = new CopyOnWriteArrayList<>();
+        try (NoOpClient client = recorder(getTestName(), requests, true)) {
+            PartitionResultStore store = store(client);
+            store.put("a", RESULT);
+            store.put("b", RESULT);
+
+            // the wrapped ResourceAlreadyExistsException counts as an existing index, it is not asked again
+            assertEquals(3, requests.size());
+            assertEquals("a", ((IndexRequest) requests.get(1)).id());
+            assertEquals("b", ((IndexRequest) requests.get(2)).id());
+        }
+    }
+}
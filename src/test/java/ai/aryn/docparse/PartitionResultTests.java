@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class PartitionResultTests extends OpenSearchTestCase {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static PartitionResult parse(String json, long maxBytes) throws Exception {
+        return PartitionResult.parse(MAPPER, new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), maxBytes);
+    }
+
+    public void testKeepsElementPartsAndPropertiesOnly() throws Exception {
+        PartitionResult result = parse("{\"status\":[\"ok\"],\"elements\":["
+                + "{\"type\":\"Title\",\"bbox\":[0.1,0.2,0.3,0.4],\"properties\":{\"score\":0.9,\"page_number\":1},"
+                + "\"text_representation\":\"Title\"},"
+                + "{\"type\":\"Image\",\"binary_representation\":\"iVBORw0KGgo=\",\"text_representation\":\"\"},"
+                + "{\"type\":\"Text\",\"properties\":{\"page_number\":2},\"text_representation\":\"body\"}],"
+                + "\"properties\":{\"title\":\"Report\",\"pages\":3}}", -1);
+
+        assertEquals(List.of("Title", "", "body"), texts(result));
+        PartitionResult.Element title = result.getElements().get(0);
+        assertEquals("Title", title.getType());
+        assertEquals(Integer.valueOf(1), title.getPage());
+        assertEquals(List.of(0.1, 0.2, 0.3, 0.4), title.getBbox());
+        assertNull(result.getElements().get(1).getPage());
+        assertEquals(Map.of("title", "Report", "pages", 3), result.getProperties());
+    }
+
+    public void testMissingPropertiesAreEmpty() throws Exception {
+        PartitionResult result = parse("{\"elements\":[]}", -1);
+
+        assertTrue(result.getElements().isEmpty());
+        assertTrue(result.getProperties().isEmpty());
+    }
+
+    public void testRoundTripsThroughTheCacheFormat() throws Exception {
+        PartitionResult result = parse("{\"elements\":[{\"type\":\"Text\",\"text_representation\":\"a\","
+                + "\"properties\":{\"page_number\":4},\"bbox\":[0,0,1,1]},{\"text_representation\":\"b\"}],"
+                + "\"properties\":{\"k\":\"v\"}}", -1);
+
+        PartitionResult cached = parse(new String(result.toJson(MAPPER), StandardCharsets.UTF_8), -1);
+        assertEquals(texts(result), texts(cached));
+        assertEquals("Text", cached.getElements().get(0).getType());
+        assertEquals(Integer.valueOf(4), cached.getElements().get(0).getPage());
+        assertEquals(List.of(0.0, 0.0, 1.0, 1.0), cached.getElements().get(0).getBbox());
+        assertEquals(result.getProperties(), cached.getProperties());
+    }
+
+    public void testHandsImagesToTheSinkAndCachesTheirReference() throws Exception {
+        List<byte[]> written = new ArrayList<>();
+        ImageSink sink = (element, parser) -> {
+            written.add(parser.getBinaryValue());
+            return Map.of("id", "doc_" + element);
+        };
+        PartitionResult result = PartitionResult.parse(MAPPER, new ByteArrayInputStream(("{\"elements\":["
+                + "{\"type\":\"Text\",\"text_representation\":\"a\"},"
+                + "{\"type\":\"Picture\",\"binary_representation\":\"iVBORw0KGgo=\"}]}").getBytes(StandardCharsets.UTF_8)),
+                -1, sink);
+
+        assertEquals(1, written.size());
+        assertArrayEquals(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' }, written.get(0));
+        assertNull(result.getElements().get(0).getImage());
+        assertEquals(Map.of("id", "doc_1"), result.getElements().get(1).getImage());
+        PartitionResult cached = parse(new String(result.toJson(MAPPER), StandardCharsets.UTF_8), -1);
+        assertEquals(Map.of("id", "doc_1"), cached.getElements().get(1).getImage());
+    }
+
+    private static List<String> texts(PartitionResult result) {
+        List<String> texts = new ArrayList<>();
+        for (PartitionResult.Element element : result.getElements()) {
+            texts.add(element.getText());
+        }
+        return texts;
+    }
+
+    public void testEnforcesMaxBytes() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> parse("{\"elements\":[{\"binary_representation\":\"" + "A".repeat(10_000) + "\"}]}", 1024));
+        assertThat(e.getMessage(), containsString("max_response_bytes [1024]"));
+    }
+}
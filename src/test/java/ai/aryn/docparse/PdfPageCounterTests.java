@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class PdfPageCounterTests extends OpenSearchTestCase {
+
+    static byte[] pdf(int pages, int padding) {
+        StringBuilder builder = new StringBuilder("%PDF-1.4\n1 0 obj << /Type /Pages /Count ").append(pages).append(" >> endobj\n");
+        for (int i = 0; i < pages; i++) {
+            builder.append(i + 2).append(" 0 obj << /Type /Page /Parent 1 0 R >> endobj\n");
+            builder.append("x".repeat(padding)).append('\n');
+        }
+        return builder.append("%%EOF\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public void testCountsPageObjects() throws Exception {
+        assertEquals(3, PdfPageCounter.count(DocumentInput.of(pdf(3, 0))));
+        assertEquals(1, PdfPageCounter.count(DocumentInput.of("%PDF-1.7 /Type/Page>>".getBytes(StandardCharsets.ISO_8859_1))));
+    }
+
+    public void testCountsAcrossBufferBoundaries() throws Exception {
+        byte[] bytes = pdf(40, 7001);
+        assertEquals(40, PdfPageCounter.count(DocumentInput.of(bytes)));
+        assertEquals(40, PdfPageCounter.count(DocumentInput.base64(Base64.getEncoder().encodeToString(bytes))));
+    }
+
+    public void testCountsPageTreeOfLatestRevision() throws Exception {
+        StringBuilder builder = new StringBuilder("%PDF-1.4\n1 0 obj << /Type /Catalog /Pages 2 0 R >> endobj\n")
+                .append("2 0 obj << /Type /Pages /Kids [3 0 R 4 0 R] /Count 2 >> endobj\n")
+                .append("3 0 obj << /Type /Page /Parent 2 0 R >> endobj\n")
+                .append("4 0 obj << /Type /Page /Parent 2 0 R >> endobj\n")
+                .append("trailer << /Size 5 /Root 1 0 R >>\n%%EOF\n");
+        assertEquals(2, PdfPageCounter.count(DocumentInput.of(builder.toString().getBytes(StandardCharsets.ISO_8859_1))));
+        // an incremental update replaces page 4 and drops page 3, the old page objects stay in the file
+        builder.append("4 0 obj << /Type /Page /Parent 2 0 R /Rotate 90 >> endobj\n")
+                .append("2 0 obj << /Type /Pages /Kids [4 0 R] /Count 1 >> endobj\n")
+                .append("trailer << /Size 5 /Root 1 0 R /Prev 0 >>\n%%EOF\n");
+        assertEquals(1, PdfPageCounter.count(DocumentInput.of(builder.toString().getBytes(StandardCharsets.ISO_8859_1))));
+    }
+
+    public void testNotAPdf() throws Exception {
+        assertFalse(PdfPageCounter.isPdf(DocumentInput.of("<html>/Type /Page</html>".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(0, PdfPageCounter.count(DocumentInput.of(new byte[0])));
+    }
+}
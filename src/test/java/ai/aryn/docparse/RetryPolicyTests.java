@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.List;
+import java.util.Map;
+
+public class RetryPolicyTests extends OpenSearchTestCase {
+
+    private final RetryPolicy policy = new RetryPolicy(3, TimeValue.timeValueMillis(100), TimeValue.timeValueSeconds(5), () -> 0L);
+
+    public void testRetriesTransientFailures() {
+        assertTrue(RetryPolicy.isRetryable(new ApiException(new java.io.IOException("reset"))));
+        assertTrue(RetryPolicy.isRetryable(new ApiException(429, "slow down")));
+        assertTrue(RetryPolicy.isRetryable(new ApiException(503, "busy")));
+        assertFalse(RetryPolicy.isRetryable(new ApiException(400, "bad request")));
+        assertFalse(RetryPolicy.isRetryable(new ApiException(401, "bad key")));
+        assertFalse(RetryPolicy.isServerFailure(new ApiException(429, "slow down")));
+    }
+
+    public void testBackoffIsBoundedAndStopsAfterMaxRetries() {
+        ApiException e = new ApiException(502, "bad gateway");
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long delay = policy.delayMillis(attempt, e);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= 100L << attempt);
+        }
+        assertEquals(-1, policy.delayMillis(3, e));
+        assertEquals(-1, policy.delayMillis(0, new ApiException(400, "bad request")));
+    }
+
+    public void testHonorsRetryAfter() {
+        ApiException e = new ApiException(429, "slow down", Map.of("Retry-After", List.of("2")), null);
+        assertEquals(2000, policy.delayMillis(0, e));
+
+        ApiException tooLong = new ApiException(429, "slow down", Map.of("retry-after", List.of("60")), null);
+        assertEquals(-1, policy.delayMillis(0, tooLong));
+
+        ApiException date = new ApiException(503, "busy", Map.of("Retry-After", List.of("Thu, 01 Jan 1970 00:00:03 GMT")), null);
+        assertEquals(3000, policy.delayMillis(0, date));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.action.ingest.SimulatePipelineAction;
+import org.opensearch.action.ingest.SimulatePipelineRequest;
+import org.opensearch.action.ingest.SimulatePipelineResponse;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SimulateActionFilterTests extends OpenSearchTestCase {
+
+    private static boolean simulating(ThreadContext threadContext, String action) {
+        SimulateActionFilter filter = new SimulateActionFilter(threadContext);
+        AtomicBoolean simulating = new AtomicBoolean();
+        PlainActionFuture<SimulatePipelineResponse> listener = PlainActionFuture.newFuture();
+        filter.apply(null, action, new SimulatePipelineRequest(new BytesArray("{}"), XContentType.JSON), listener,
+                (task, name, request, l) -> simulating.set(SimulateActionFilter.isSimulating(threadContext)));
+        return simulating.get();
+    }
+
+    public void testMarksSimulateRequests() {
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        assertTrue(simulating(threadContext, SimulatePipelineAction.NAME));
+        // the mark ends with the request
+        assertFalse(SimulateActionFilter.isSimulating(threadContext));
+    }
+
+    public void testLeavesOtherRequestsAlone() {
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        assertFalse(simulating(threadContext, "indices:data/write/bulk"));
+        assertFalse(SimulateActionFilter.isSimulating(null));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Aryn
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.aryn.docparse;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class StageTimingsTests extends OpenSearchTestCase {
+
+    public void testStagesAddUp() {
+        StageTimings timings = new StageTimings(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(500));
+        timings.add(StageTimings.Stage.READ_INPUT, TimeUnit.MILLISECONDS.toNanos(3));
+        timings.add(StageTimings.Stage.CACHE, TimeUnit.MILLISECONDS.toNanos(1));
+        timings.add(StageTimings.Stage.CACHE, TimeUnit.MILLISECONDS.toNanos(2));
+        timings.add(StageTimings.Stage.APPLY, -5);
+        timings.onCall(new PartitionClient.Result(200, Collections.emptyMap(), null, 10,
+                TimeUnit.MILLISECONDS.toNanos(400), TimeUnit.MILLISECONDS.toNanos(20)), "call-1");
+        timings.onCall(new PartitionClient.Result(200, Collections.emptyMap(), null, 10,
+                TimeUnit.MILLISECONDS.toNanos(100), 0), "call-2");
+        timings.setInputBytes(1024);
+
+        Map<String, Object> map = timings.toMap();
+        assertEquals(List.of("queue_ms", "read_input_ms", "cache_ms", "partition_ms", "request_ms", "response_ms",
+                "apply_ms", "total_ms", "aryn_call_id"), List.copyOf(map.keySet()));
+        assertEquals(3L, map.get("read_input_ms"));
+        assertEquals(3L, map.get("cache_ms"));
+        assertEquals(500L, map.get("request_ms"));
+        assertEquals(20L, map.get("response_ms"));
+        assertEquals(0L, map.get("apply_ms"));
+        assertTrue((Long) map.get("total_ms") >= 500);
+        assertEquals(List.of("call-1", "call-2"), map.get("aryn_call_id"));
+        assertEquals(1024, timings.getInputBytes());
+        assertTrue(timings.toString().startsWith("queue[0ms], read_input[3ms], cache[3ms]"));
+    }
+
+    public void testSingleCallIdIsAString() {
+        StageTimings timings = new StageTimings();
+        assertFalse(timings.toMap().containsKey("aryn_call_id"));
+        timings.onCall(new PartitionClient.Result(200, Collections.emptyMap(), null), "call-1");
+        assertEquals("call-1", timings.toMap().get("aryn_call_id"));
+    }
+}